@@ -0,0 +1,109 @@
+package benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import matrix.ColumnMajorMatrix;
+import matrix.MatrixHelper;
+import matrix.VectorKernels;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the SCALAR, UNROLLED and VECTOR VectorKernels on the measurement matrix dimensions
+ * Signal uses, 240 x 1024, and on larger problems. Each vector kernel runs over one column of
+ * phi, each matrix vector product over the whole matrix. The forked JVMs are started with the
+ * jdk.incubator.vector module, so VECTOR runs the Vector API kernels whenever the vector
+ * source folder is on the class path, see the README.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class KernelBenchmark {
+
+	@Param({"SCALAR", "UNROLLED", "VECTOR"})
+	public String kernels;
+
+	@Param({"240x1024", "960x4096", "1024x16384"})
+	public String shape;
+
+	private VectorKernels selected;
+	private int numRows;
+	private int numColumns;
+	private double[] phi;
+	private double[] x;
+	private double[] r;
+	private double[] product;
+	private double[] proxy;
+
+	@Setup
+	public void setUp(){
+
+		selected = VectorKernels.valueOf(kernels);
+		if(selected == VectorKernels.VECTOR && !VectorKernels.isVectorApiAvailable()){
+			throw new IllegalStateException("The Vector API kernels aren't on the class path");
+		}
+		String[] dimensions = shape.split("x");
+		numRows = Integer.parseInt(dimensions[0]);
+		numColumns = Integer.parseInt(dimensions[1]);
+
+		Random rand = new Random(1);
+		phi = MatrixHelper.randN(new ColumnMajorMatrix(numRows, numColumns), rand).getValues();
+		x = MatrixHelper.randN(new ColumnMajorMatrix(numColumns, 1), rand).getValues();
+		r = MatrixHelper.randN(new ColumnMajorMatrix(numRows, 1), rand).getValues();
+		product = new double[numRows];
+		proxy = new double[numColumns];
+	}
+
+	@Benchmark
+	public double dot(){
+		return selected.dot(phi, 0, r, 0, numRows);
+	}
+
+	@Benchmark
+	public double axpy(){
+		selected.axpy(1e-9, phi, 0, product, 0, numRows);
+		return product[0];
+	}
+
+	@Benchmark
+	public double scaledAdd(){
+		selected.scaledAdd(r, 0, 0.5, product, 0, numRows);
+		return product[0];
+	}
+
+	@Benchmark
+	public double squaredNorm(){
+		return selected.squaredNorm(r, 0, numRows);
+	}
+
+	@Benchmark
+	public double absMax(){
+		return selected.absMax(r, 0, numRows);
+	}
+
+	@Benchmark
+	public double gemv(){
+		selected.gemv(phi, numRows, numColumns, x, product);
+		return product[0];
+	}
+
+	@Benchmark
+	public double gemvTranspose(){
+		selected.gemvTranspose(phi, numRows, numColumns, r, proxy);
+		return proxy[0];
+	}
+}
@@ -0,0 +1,178 @@
+package benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import matrix.ColumnMajorMatrix;
+import matrix.MatrixHelper;
+import matrix.SparseVector;
+import matrix.SupportSet;
+import matrix.TopSelector;
+
+import org.apache.mahout.math.Matrix;
+import org.apache.mahout.math.SparseMatrix;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the Mahout SparseMatrix path against the dense column major matrix for the
+ * products used in every iteration of the cosamp algorithm, using the same 240 x 1024
+ * measurement matrix dimensions as Signal. Each pair of benchmarks does the same work, the
+ * sparse one first.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class MatrixBenchmark {
+
+	private static final int NUM_MEASUREMENTS = 240;
+	private static final int SIGNAL_LENGTH = 1024;
+	private static final int SPARSITY = 30;
+
+	private Random rand;
+	private ColumnMajorMatrix densePhi;
+	private ColumnMajorMatrix denseX;
+	private ColumnMajorMatrix denseR;
+	private Matrix sparsePhi;
+	private Matrix sparseX;
+	private Matrix sparseR;
+
+	//an estimate with SPARSITY nonzero rows, as dense and sparse vectors
+	private SparseVector sparseS;
+	private double[] denseS;
+	private double[] product;
+
+	//the proxy phi' * r and the working space for the backprojection
+	private Matrix sparseProxy;
+	private ColumnMajorMatrix denseProxy;
+	private double[] proxy;
+	private int[] order;
+	private TopSelector selector;
+
+	@Setup
+	public void setUp(){
+
+		rand = new Random(1);
+		densePhi = MatrixHelper.randN(new ColumnMajorMatrix(NUM_MEASUREMENTS, SIGNAL_LENGTH), rand);
+		denseX = MatrixHelper.randN(new ColumnMajorMatrix(SIGNAL_LENGTH, 1), rand);
+		denseR = MatrixHelper.randN(new ColumnMajorMatrix(NUM_MEASUREMENTS, 1), rand);
+		sparsePhi = densePhi.toMatrix();
+		sparseX = denseX.toMatrix();
+		sparseR = denseR.toMatrix();
+
+		SupportSet support = SupportSet.fromRows(SIGNAL_LENGTH,
+				MatrixHelper.topIndices(denseX.getValues(), SPARSITY));
+		sparseS = new SparseVector(SIGNAL_LENGTH, SPARSITY);
+		sparseS.set(support, support.gather(denseX.getValues()));
+		denseS = sparseS.toColumnMajorMatrix().getValues();
+		product = new double[NUM_MEASUREMENTS];
+
+		sparseProxy = sparsePhi.transpose().times(sparseR);
+		denseProxy = densePhi.transposeTimes(denseR);
+		proxy = new double[SIGNAL_LENGTH];
+		order = new int[SIGNAL_LENGTH];
+		selector = new TopSelector(2 * SPARSITY);
+	}
+
+	@Benchmark
+	public double sparseRandN(){
+		return MatrixHelper.randN(new SparseMatrix(NUM_MEASUREMENTS, SIGNAL_LENGTH)).get(0, 0);
+	}
+
+	@Benchmark
+	public double denseRandN(){
+		return MatrixHelper.randN(new ColumnMajorMatrix(NUM_MEASUREMENTS, SIGNAL_LENGTH), rand)
+				.get(0, 0);
+	}
+
+	@Benchmark
+	public double sparseTimes(){
+		return sparsePhi.times(sparseX).get(0, 0);
+	}
+
+	@Benchmark
+	public double denseTimes(){
+		return densePhi.times(denseX).get(0, 0);
+	}
+
+	@Benchmark
+	public double denseTimesDenseEstimate(){
+		densePhi.times(denseS, product);
+		return product[0];
+	}
+
+	@Benchmark
+	public double denseTimesSparseVector(){
+		densePhi.times(sparseS, product);
+		return product[0];
+	}
+
+	@Benchmark
+	public double sparseTransposeTimes(){
+		return sparsePhi.transpose().times(sparseR).get(0, 0);
+	}
+
+	@Benchmark
+	public double denseTransposeTimes(){
+		return densePhi.transposeTimes(denseR).get(0, 0);
+	}
+
+	@Benchmark
+	public double sparseNorm(){
+		return MatrixHelper.norm(sparseX);
+	}
+
+	@Benchmark
+	public double denseNorm(){
+		return MatrixHelper.norm(denseX);
+	}
+
+	/**
+	 * The top 2K of 1024 with the sort the algorithm used to use.
+	 */
+	@Benchmark
+	public double sortDescending(){
+		Matrix indexMatrix = MatrixHelper.sortDescending(
+				MatrixHelper.getAbsMatrix(MatrixHelper.copyMatrix(sparseProxy))).get(1);
+		return indexMatrix.get(0, 0);
+	}
+
+	@Benchmark
+	public int topIndices(){
+		return MatrixHelper.topIndices(MatrixHelper.getAbsMatrix(denseProxy.copy()).getValues(),
+				2 * SPARSITY)[0];
+	}
+
+	/**
+	 * The whole backprojection, storing the proxy before its largest values are picked.
+	 */
+	@Benchmark
+	public int backprojectionStored(){
+		densePhi.transposeTimes(denseR.getValues(), proxy);
+		for(int row = 0; row < SIGNAL_LENGTH; row++){
+			proxy[row] = Math.abs(proxy[row]);
+		}
+		return MatrixHelper.topIndices(proxy, SIGNAL_LENGTH, 2 * SPARSITY, order);
+	}
+
+	/**
+	 * The whole backprojection, offering the proxy to a TopSelector as it is worked out.
+	 */
+	@Benchmark
+	public int backprojectionFused(){
+		selector.reset(2 * SPARSITY);
+		densePhi.transposeTimes(denseR.getValues(), selector);
+		return selector.size();
+	}
+}
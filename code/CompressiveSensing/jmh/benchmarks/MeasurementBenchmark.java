@@ -0,0 +1,117 @@
+package benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import matrix.ColumnMajorMatrix;
+import matrix.DctMeasurement;
+import matrix.HadamardMeasurement;
+import matrix.MatrixHelper;
+import matrix.MeasurementOperator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares phi * x followed by phi' * r for the dense Gaussian measurement matrix against
+ * the structured Walsh-Hadamard and DCT measurement matrices, for signal lengths from
+ * 2^10 to 2^20 with a quarter as many measurements. The dense matrix only goes up to 2^13,
+ * past that it would take more than 256 MB to store.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class MeasurementBenchmark {
+
+	/**
+	 * The vectors a measurement matrix of a given size is multiplied with.
+	 */
+	@State(Scope.Thread)
+	public abstract static class Shape {
+
+		Random rand;
+		double[] x;
+		double[] r;
+		double[] product;
+		double[] transposeProduct;
+
+		void setUp(int power){
+
+			int signalLength = 1 << power;
+			int numMeasurements = signalLength / 4;
+			rand = new Random(power);
+			x = new double[signalLength];
+			r = new double[numMeasurements];
+			for(int index = 0; index < signalLength; index++){
+				x[index] = rand.nextGaussian();
+			}
+			for(int index = 0; index < numMeasurements; index++){
+				r[index] = rand.nextGaussian();
+			}
+			product = new double[numMeasurements];
+			transposeProduct = new double[signalLength];
+		}
+
+		double run(MeasurementOperator phiMatrix){
+			phiMatrix.times(x, product);
+			phiMatrix.transposeTimes(r, transposeProduct);
+			return product[0] + transposeProduct[0];
+		}
+	}
+
+	public static class Dense extends Shape {
+
+		@Param({"10", "11", "12", "13"})
+		public int power;
+
+		ColumnMajorMatrix phiMatrix;
+
+		@Setup
+		public void setUp(){
+			setUp(power);
+			phiMatrix = MatrixHelper.randN(new ColumnMajorMatrix(r.length, x.length), rand);
+		}
+	}
+
+	public static class Structured extends Shape {
+
+		@Param({"10", "12", "14", "16", "18", "20"})
+		public int power;
+
+		HadamardMeasurement hadamard;
+		DctMeasurement dct;
+
+		@Setup
+		public void setUp(){
+			setUp(power);
+			hadamard = new HadamardMeasurement(r.length, x.length, power);
+			dct = new DctMeasurement(r.length, x.length, power);
+		}
+	}
+
+	@Benchmark
+	public double denseGaussian(Dense shape){
+		return shape.run(shape.phiMatrix);
+	}
+
+	@Benchmark
+	public double walshHadamard(Structured shape){
+		return shape.run(shape.hadamard);
+	}
+
+	@Benchmark
+	public double dct(Structured shape){
+		return shape.run(shape.dct);
+	}
+}
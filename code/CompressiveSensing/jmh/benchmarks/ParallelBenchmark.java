@@ -0,0 +1,92 @@
+package benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import matrix.ColumnMajorMatrix;
+import matrix.MatrixHelper;
+import matrix.ParallelMeasurement;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The matrix vector products on one thread against ParallelMeasurement splitting them over
+ * every processor, on large measurement matrices.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class ParallelBenchmark {
+
+	@Param({"960x4096", "1024x16384"})
+	public String shape;
+
+	private ForkJoinPool pool;
+	private ColumnMajorMatrix phiMatrix;
+	private ParallelMeasurement parallel;
+	private double[] x;
+	private double[] r;
+	private double[] product;
+	private double[] proxy;
+
+	@Setup
+	public void setUp(){
+
+		String[] dimensions = shape.split("x");
+		int numRows = Integer.parseInt(dimensions[0]);
+		int numColumns = Integer.parseInt(dimensions[1]);
+
+		Random rand = new Random(1);
+		pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+		phiMatrix = MatrixHelper.randN(new ColumnMajorMatrix(numRows, numColumns), rand);
+		parallel = new ParallelMeasurement(phiMatrix, pool);
+		x = MatrixHelper.randN(new ColumnMajorMatrix(numColumns, 1), rand).getValues();
+		r = MatrixHelper.randN(new ColumnMajorMatrix(numRows, 1), rand).getValues();
+		product = new double[numRows];
+		proxy = new double[numColumns];
+	}
+
+	@TearDown
+	public void tearDown(){
+		pool.shutdown();
+	}
+
+	@Benchmark
+	public double times(){
+		phiMatrix.times(x, product);
+		return product[0];
+	}
+
+	@Benchmark
+	public double timesParallel(){
+		parallel.times(x, product);
+		return product[0];
+	}
+
+	@Benchmark
+	public double transposeTimes(){
+		phiMatrix.transposeTimes(r, proxy);
+		return proxy[0];
+	}
+
+	@Benchmark
+	public double transposeTimesParallel(){
+		parallel.transposeTimes(r, proxy);
+		return proxy[0];
+	}
+}
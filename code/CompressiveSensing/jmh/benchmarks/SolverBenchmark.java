@@ -0,0 +1,151 @@
+package benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import matrix.ColumnMajorMatrix;
+import matrix.GramStore;
+import matrix.IncrementalCholesky;
+import matrix.MatrixHelper;
+import matrix.NormalEquations;
+import matrix.SignalHelper;
+import matrix.SupportSet;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import signals.algorithm.ProcessSignals;
+
+/**
+ * Compares the time per cosamp iteration spent solving the least squares problem on the
+ * merged support, with cgSolve on the Gram matrix, cgSolve on the NormalEquations operator,
+ * cgSolve on a Gram matrix gathered from a GramStore and the incrementally updated Cholesky
+ * factorization, and times building the GramStore itself. The supports are 3 * sparsity rows
+ * and a few of them are swapped out at every step, the way the merged support drifts between
+ * iterations. Every call solves on the next support of the walk.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class SolverBenchmark {
+
+	private static final int NUM_MEASUREMENTS = 240;
+	private static final int SIGNAL_LENGTH = 1024;
+	private static final int SPARSITY = 30;
+	private static final int NUM_STEPS = 64;
+	private static final int SWAPS_PER_STEP = 6;
+
+	private ColumnMajorMatrix phiMatrix;
+	private ColumnMajorMatrix yMatrix;
+	private SupportSet[] supports;
+	private int step;
+
+	private ForkJoinPool pool;
+	private GramStore gramStore;
+	private double[] correlation;
+	private IncrementalCholesky solver;
+
+	@Setup
+	public void setUp(){
+
+		Random rand = new Random(1);
+		phiMatrix = MatrixHelper.gaussianMeasurements(NUM_MEASUREMENTS, SIGNAL_LENGTH, 1);
+		yMatrix = MatrixHelper.randN(new ColumnMajorMatrix(NUM_MEASUREMENTS, 1), rand);
+		supports = randomWalk(rand);
+
+		pool = new ForkJoinPool(ProcessSignals.getNumThreads());
+		gramStore = new GramStore(phiMatrix, pool);
+		correlation = new double[SIGNAL_LENGTH];
+		phiMatrix.transposeTimes(yMatrix.getValues(), correlation);
+		solver = new IncrementalCholesky(phiMatrix);
+	}
+
+	@TearDown
+	public void tearDown(){
+		pool.shutdown();
+	}
+
+	private SupportSet nextSupport(){
+		return supports[step++ % NUM_STEPS];
+	}
+
+	@Benchmark
+	public double cgSolveGram(){
+		ColumnMajorMatrix slicedMatrix = phiMatrix.gatherColumns(nextSupport());
+		return SignalHelper.cgSolve(slicedMatrix.transposeTimes(slicedMatrix),
+				slicedMatrix.transposeTimes(yMatrix), 0.001,
+				ProcessSignals.getMaxIterations(), 0).get(0, 0);
+	}
+
+	@Benchmark
+	public double cgSolveNormalEquations(){
+		ColumnMajorMatrix slicedMatrix = phiMatrix.gatherColumns(nextSupport());
+		return SignalHelper.cgSolve(new NormalEquations(slicedMatrix),
+				slicedMatrix.transposeTimes(yMatrix), 0.001,
+				ProcessSignals.getMaxIterations(), 0).get(0, 0);
+	}
+
+	@Benchmark
+	public double gramStoreBuild(){
+		return new GramStore(phiMatrix, pool).get(0, 0);
+	}
+
+	@Benchmark
+	public double cgSolveGramStore(){
+		SupportSet support = nextSupport();
+		return SignalHelper.cgSolve(gramStore.gather(support),
+				new ColumnMajorMatrix(support.size(), 1, support.gather(correlation)), 0.001,
+				ProcessSignals.getMaxIterations(), 0).get(0, 0);
+	}
+
+	@Benchmark
+	public double incrementalCholesky(){
+		return solver.solve(nextSupport(), yMatrix).get(0, 0);
+	}
+
+	/**
+	 * @return supports of 3 * SPARSITY rows, each a few rows different from the one before
+	 */
+	private static SupportSet[] randomWalk(Random rand){
+
+		int[] rows = new int[3 * SPARSITY];
+		boolean[] used = new boolean[SIGNAL_LENGTH];
+		for (int index = 0; index < rows.length; index++) {
+			rows[index] = pickUnused(rand, used);
+		}
+
+		SupportSet[] supports = new SupportSet[NUM_STEPS];
+		for (int step = 0; step < NUM_STEPS; step++) {
+			for (int swap = 0; swap < SWAPS_PER_STEP; swap++) {
+				int index = rand.nextInt(rows.length);
+				used[rows[index]] = false;
+				rows[index] = pickUnused(rand, used);
+			}
+			supports[step] = SupportSet.fromRows(SIGNAL_LENGTH, rows);
+		}
+		return supports;
+	}
+
+	private static int pickUnused(Random rand, boolean[] used){
+
+		int row;
+		do{
+			row = rand.nextInt(SIGNAL_LENGTH);
+		} while(used[row]);
+		used[row] = true;
+		return row;
+	}
+}
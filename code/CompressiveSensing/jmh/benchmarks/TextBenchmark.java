@@ -0,0 +1,172 @@
+package benchmarks;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import matrix.MatrixReader;
+import matrix.MatrixWriter;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares reading and writing a matrix as text with String.split(), Double.parseDouble() and
+ * string concatenation, the way Signal and MatrixHelper used to, against MatrixReader and
+ * MatrixWriter. Two 65536 x 10 matrices are used: one like the signal files in tests/input,
+ * mostly zeros with a few short values, and one of full precision values like a reconstructed
+ * signal. Everything is read from and written to memory, so only the text handling is timed.
+ * Every pass over the matrix is one operation, and the bytes counter gives the throughput in
+ * bytes of text per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TextBenchmark {
+
+	private static final int NUM_ROWS = 65536;
+	private static final int NUM_COLUMNS = 10;
+
+	@Param({"signal", "full"})
+	public String values;
+
+	private double[][] matrix;
+	private byte[] text;
+
+	/**
+	 * The bytes of text read or written, reported per second next to the passes.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Bytes {
+
+		public long bytes;
+
+		@Setup(Level.Iteration)
+		public void reset(){
+			bytes = 0;
+		}
+	}
+
+	@Setup
+	public void setUp() throws IOException{
+
+		Random rand = new Random(1);
+		matrix = new double[NUM_ROWS][NUM_COLUMNS];
+		for(int row = 0; row < NUM_ROWS; row++){
+			for(int column = 0; column < NUM_COLUMNS; column++){
+				if(values.equals("full")){
+					matrix[row][column] = rand.nextGaussian();
+				}
+				else if(rand.nextInt(30) == 0){
+					matrix[row][column] = Math.round(rand.nextGaussian() * 1e4) / 1e4;
+				}
+			}
+		}
+		text = writeTabs(matrix);
+	}
+
+	@Benchmark
+	public double readSplit(Bytes counter) throws IOException{
+
+		double sum = 0;
+		BufferedReader br = new BufferedReader(new InputStreamReader(
+				new ByteArrayInputStream(text), "US-ASCII"));
+		String currentLine;
+		while((currentLine = br.readLine()) != null){
+			String[] columnValues = currentLine.split("\t");
+			for(int i = 0; i < columnValues.length; i++){
+				sum += Double.parseDouble(columnValues[i]);
+			}
+		}
+		counter.bytes += text.length;
+		return sum;
+	}
+
+	@Benchmark
+	public double readMatrixReader(Bytes counter) throws IOException{
+
+		double sum = 0;
+		MatrixReader reader = new MatrixReader(new ByteArrayInputStream(text));
+		while(reader.nextLine()){
+			while(reader.hasNextValue()){
+				sum += reader.nextValue();
+			}
+		}
+		counter.bytes += text.length;
+		return sum;
+	}
+
+	@Benchmark
+	public int writeConcatenation(Bytes counter) throws IOException{
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream(text.length);
+		BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(out, "US-ASCII"));
+		for(int row = 0; row < matrix.length; row++){
+			for(int column = 0; column < matrix[row].length; column++){
+				bw.write(matrix[row][column] + " ");
+			}
+			bw.newLine();
+		}
+		bw.close();
+		counter.bytes += out.size();
+		return out.size();
+	}
+
+	@Benchmark
+	public int writeMatrixWriter(Bytes counter) throws IOException{
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream(text.length);
+		MatrixWriter writer = new MatrixWriter(out);
+		for(int row = 0; row < matrix.length; row++){
+			for(int column = 0; column < matrix[row].length; column++){
+				writer.write(matrix[row][column]);
+				writer.write(' ');
+			}
+			writer.newLine();
+		}
+		writer.close();
+		counter.bytes += out.size();
+		return out.size();
+	}
+
+	/**
+	 * The matrix laid out like the files in tests/input.
+	 */
+	private static byte[] writeTabs(double[][] values) throws IOException{
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		MatrixWriter writer = new MatrixWriter(out);
+		for(int row = 0; row < values.length; row++){
+			for(int column = 0; column < values[row].length; column++){
+				if(column > 0){
+					writer.write('\t');
+				}
+				writer.write(values[row][column]);
+			}
+			writer.newLine();
+		}
+		writer.close();
+		return out.toByteArray();
+	}
+}
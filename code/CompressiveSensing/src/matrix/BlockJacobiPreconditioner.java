@@ -0,0 +1,84 @@
+package matrix;
+
+/**
+ * The blocks along the diagonal of phi_T' * phi_T, each covering a few neighbouring columns
+ * of the support. Every block is factored once with Cholesky, so applying the preconditioner
+ * is a forward and back substitution per block. With a block size of 1 this is the same as
+ * JacobiPreconditioner.
+ */
+public class BlockJacobiPreconditioner implements Preconditioner {
+
+	private final int length;
+	private final int blockSize;
+	//the Cholesky factor of each block, stored row by row with blockSize values per row
+	private final double[] lower;
+
+	/**
+	 * @param slicedPhiMatrix - the columns of phi on the support
+	 * @param blockSize - the number of columns in each block
+	 */
+	public BlockJacobiPreconditioner(ColumnMajorMatrix slicedPhiMatrix, int blockSize){
+
+		if(blockSize < 1){
+			throw new IllegalArgumentException("The block size has to be at least 1: " + blockSize);
+		}
+
+		this.length = slicedPhiMatrix.columnSize();
+		this.blockSize = blockSize;
+		this.lower = new double[length * blockSize];
+
+		int numRows = slicedPhiMatrix.rowSize();
+		double[] values = slicedPhiMatrix.getValues();
+		for (int start = 0; start < length; start += blockSize) {
+			int end = Math.min(start + blockSize, length);
+			for (int row = start; row < end; row++) {
+				int rowOffset = row * blockSize - start;
+				for (int column = start; column <= row; column++) {
+					double sum = 0;
+					for (int inner = 0; inner < numRows; inner++) {
+						sum += values[row * numRows + inner] * values[column * numRows + inner];
+					}
+					//on the diagonal this is the squared length of the column
+					double squaredLength = sum;
+					for (int inner = start; inner < column; inner++) {
+						sum -= lower[rowOffset + inner] * lower[column * blockSize - start + inner];
+					}
+					if(column < row){
+						lower[rowOffset + column] = sum / lower[column * blockSize - start + column];
+					}
+					else{
+						//columns that (almost) depend on the others in the block get their pivot
+						//clamped the same way as IncrementalCholesky, and zero columns a unit pivot
+						sum = Math.max(sum, IncrementalCholesky.MIN_PIVOT * squaredLength);
+						lower[rowOffset + column] = sum > 0 ? Math.sqrt(sum) : 1;
+					}
+				}
+			}
+		}
+	}
+
+	@Override
+	public void solve(double[] r, double[] result){
+
+		for (int start = 0; start < length; start += blockSize) {
+			int end = Math.min(start + blockSize, length);
+			//L * z = r
+			for (int row = start; row < end; row++) {
+				int rowOffset = row * blockSize - start;
+				double sum = r[row];
+				for (int column = start; column < row; column++) {
+					sum -= lower[rowOffset + column] * result[column];
+				}
+				result[row] = sum / lower[rowOffset + row];
+			}
+			//L' * result = z
+			for (int row = end - 1; row >= start; row--) {
+				double sum = result[row];
+				for (int below = row + 1; below < end; below++) {
+					sum -= lower[below * blockSize - start + row] * result[below];
+				}
+				result[row] = sum / lower[row * blockSize - start + row];
+			}
+		}
+	}
+}
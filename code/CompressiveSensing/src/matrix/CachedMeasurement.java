@@ -0,0 +1,124 @@
+package matrix;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.FutureTask;
+
+/**
+ * A measurement matrix held by a MeasurementCache. The entry goes into the cache before its
+ * matrix is built, so the thread that missed builds it without holding the lock on the cache,
+ * and any other thread asking for the same matrix waits for that one instead of building it
+ * again.
+ *
+ * The Gram matrix phi' * phi is kept with the matrix as well once it has been asked for, and 
+ * the memory it uses is counted against the budget of the cache. The transpose and column 
+ * norms are not kept, since every product and solve works without them.
+ */
+public class CachedMeasurement {
+
+	private final MeasurementCache cache;
+	private final MeasurementCache.Key key;
+	private final FutureTask<MeasurementOperator> operator;
+	//only read and written while holding the lock on this entry
+	private GramStore gramStore;
+
+	//only read and written while holding the lock on the cache
+	long chargedBytes;
+
+	/**
+	 * @param cache - the cache this entry belongs to
+	 * @param key - the key of this entry in the cache
+	 * @param numRows - the number of measurements
+	 * @param numColumns - the length of the signal
+	 * @param seed - seed for the random parts of the matrix
+	 * @param ensemble - the kind of measurement matrix
+	 */
+	CachedMeasurement(MeasurementCache cache, MeasurementCache.Key key, final int numRows, 
+			final int numColumns, final long seed, final MeasurementEnsemble ensemble){
+
+		this.cache = cache;
+		this.key = key;
+		this.operator = new FutureTask<MeasurementOperator>(new Callable<MeasurementOperator>() {
+			@Override
+			public MeasurementOperator call(){
+				return ensemble.createOperator(numRows, numColumns, seed);
+			}
+		});
+	}
+
+	MeasurementCache.Key getKey(){
+		return key;
+	}
+
+	/**
+	 * Build the matrix in this thread, called once by the thread that added the entry.
+	 */
+	void build(){
+		operator.run();
+	}
+
+	/**
+	 * @return the measurement matrix, waiting for it if another thread is still building it
+	 */
+	public MeasurementOperator getOperator(){
+
+		boolean interrupted = false;
+		try{
+			while(true){
+				try{
+					return operator.get();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof RuntimeException){
+				throw (RuntimeException) cause;
+			}
+			if(cause instanceof Error){
+				throw (Error) cause;
+			}
+			throw new IllegalStateException("The measurement matrix could not be created", cause);
+		}
+		finally{
+			if(interrupted){
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * The Gram matrix of the measurement matrix, worked out the first time it is asked for 
+	 * and kept with the matrix if the cache has room for both. Threads asking for it at the
+	 * same time wait for the first one rather than working it out again.
+	 *
+	 * @param maxBytes - the most memory the Gram matrix is allowed to take
+	 * @param numThreads - the number of threads the Gram matrix is worked out on
+	 * @return the Gram matrix, or null if it doesn't fit in maxBytes
+	 */
+	public synchronized GramStore getGramStore(long maxBytes, int numThreads){
+
+		MeasurementOperator phiMatrix = getOperator();
+		if(!GramStore.fits(phiMatrix.columnSize(), maxBytes)){
+			return null;
+		}
+		if(gramStore != null){
+			return gramStore;
+		}
+
+		GramStore result;
+		ForkJoinPool pool = new ForkJoinPool(numThreads);
+		try{
+			result = new GramStore(phiMatrix, pool);
+		}
+		finally{
+			pool.shutdown();
+		}
+		if(cache.charge(this, result.getSizeInBytes())){
+			gramStore = result;
+		}
+		return result;
+	}
+}
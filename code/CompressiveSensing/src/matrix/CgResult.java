@@ -0,0 +1,44 @@
+package matrix;
+
+/**
+ * What conjugateGradient hands back, the same three things cgsolve.m returns: the best
+ * solution it found, the relative residual of that solution and how many iterations it took.
+ */
+public class CgResult {
+
+	private final ColumnMajorMatrix solution;
+	private final double relativeResidual;
+	private final int iterations;
+
+	/**
+	 * @param solution - the solution with the smallest residual
+	 * @param relativeResidual - ||b - A * x|| / ||b|| for that solution
+	 * @param iterations - the number of iterations that were run
+	 */
+	public CgResult(ColumnMajorMatrix solution, double relativeResidual, int iterations){
+		this.solution = solution;
+		this.relativeResidual = relativeResidual;
+		this.iterations = iterations;
+	}
+
+	/**
+	 * @return the solution with the smallest residual, a column vector
+	 */
+	public ColumnMajorMatrix getSolution(){
+		return solution;
+	}
+
+	/**
+	 * @return ||b - A * x|| / ||b|| for the solution
+	 */
+	public double getRelativeResidual(){
+		return relativeResidual;
+	}
+
+	/**
+	 * @return the number of iterations that were run
+	 */
+	public int getIterations(){
+		return iterations;
+	}
+}
@@ -0,0 +1,404 @@
+package matrix;
+
+import java.util.Arrays;
+
+import org.apache.mahout.math.Matrix;
+import org.apache.mahout.math.SparseMatrix;
+
+/**
+ * A dense matrix whose values are stored column by column in a single primitive array,
+ * the same layout Matlab uses. Column vectors are simply matrices with one column.
+ * The measurement matrix and all of the working vectors in the cosamp algorithm are
+ * completely dense, so storing them this way avoids the hash lookups of a SparseMatrix
+ * on every get and set.
+ */
+public class ColumnMajorMatrix implements MeasurementOperator {
+
+	//number of columns of the right hand side that a product works on at once
+	private static final int BLOCK_SIZE = 8;
+
+	private final int numRows;
+	private final int numColumns;
+	private final double[] values;
+
+	/**
+	 * Create a matrix with the given dimensions, all cells start at zero.
+	 *
+	 * @param numRows - number of rows in the matrix
+	 * @param numColumns - number of columns in the matrix
+	 */
+	public ColumnMajorMatrix(int numRows, int numColumns){
+		this(numRows, numColumns, new double[numRows * numColumns]);
+	}
+
+	/**
+	 * Create a matrix that wraps the given array, the array is not copied.
+	 *
+	 * @param numRows - number of rows in the matrix
+	 * @param numColumns - number of columns in the matrix
+	 * @param values - the cells of the matrix, stored column by column
+	 */
+	public ColumnMajorMatrix(int numRows, int numColumns, double[] values){
+
+		if(values.length != numRows * numColumns){
+			throw new IllegalArgumentException("Expected " + (numRows * numColumns)
+					+ " values but got " + values.length);
+		}
+
+		this.numRows = numRows;
+		this.numColumns = numColumns;
+		this.values = values;
+	}
+
+	/**
+	 * Create a dense copy of a Mahout matrix.
+	 *
+	 * @param mtrx - the matrix to be copied
+	 * @return the new column major matrix
+	 */
+	public static ColumnMajorMatrix fromMatrix(Matrix mtrx){
+
+		ColumnMajorMatrix denseMatrix = new ColumnMajorMatrix(mtrx.rowSize(), mtrx.columnSize());
+		int index = 0;
+		for (int column = 0; column < mtrx.columnSize(); column++) {
+			for (int row = 0; row < mtrx.rowSize(); row++) {
+				denseMatrix.values[index++] = mtrx.get(row, column);
+			}
+		}
+		return denseMatrix;
+	}
+
+	/**
+	 * Create a Mahout matrix with the same values as this matrix.
+	 *
+	 * @return the Mahout matrix
+	 */
+	public Matrix toMatrix(){
+
+		Matrix mtrx = new SparseMatrix(numRows, numColumns);
+		int index = 0;
+		for (int column = 0; column < numColumns; column++) {
+			for (int row = 0; row < numRows; row++) {
+				mtrx.set(row, column, values[index++]);
+			}
+		}
+		return mtrx;
+	}
+
+	/**
+	 * @return the number of rows in the matrix
+	 */
+	@Override
+	public int rowSize(){
+		return numRows;
+	}
+
+	/**
+	 * @return the number of columns in the matrix
+	 */
+	@Override
+	public int columnSize(){
+		return numColumns;
+	}
+
+	/**
+	 * The backing array of this matrix, stored column by column.
+	 * Changes to the array are reflected in the matrix.
+	 *
+	 * @return the values of the matrix
+	 */
+	public double[] getValues(){
+		return values;
+	}
+
+	/**
+	 * @param row
+	 * @param column
+	 * @return the value at the given cell
+	 */
+	public double get(int row, int column){
+		return values[column * numRows + row];
+	}
+
+	/**
+	 * Set the value of the given cell.
+	 *
+	 * @param row
+	 * @param column
+	 * @param value
+	 */
+	public void set(int row, int column, double value){
+		values[column * numRows + row] = value;
+	}
+
+	/**
+	 * Set every cell in the matrix to the given value.
+	 *
+	 * @param value
+	 * @return this matrix
+	 */
+	public ColumnMajorMatrix fill(double value){
+		Arrays.fill(values, value);
+		return this;
+	}
+
+	/**
+	 * Matrix multiplication, this * other.
+	 * The columns of the product are worked out a block at a time. Each column of this matrix
+	 * is read once per block and added into every column of the block while it is still in
+	 * the cache, and the inner loop walks down a column so all memory access is sequential.
+	 *
+	 * @param other - the matrix on the right side of the product
+	 * @return the product of the two matrices
+	 */
+	@Override
+	public ColumnMajorMatrix times(ColumnMajorMatrix other){
+
+		if(numColumns != other.numRows){
+			throw new IllegalArgumentException("Cannot multiply " + numRows + "x" + numColumns
+					+ " by " + other.numRows + "x" + other.numColumns);
+		}
+
+		ColumnMajorMatrix product = new ColumnMajorMatrix(numRows, other.numColumns);
+		times(other.values, other.numColumns, product.values);
+		return product;
+	}
+
+	/**
+	 * Worked out a block at a time, the same as times(ColumnMajorMatrix).
+	 */
+	@Override
+	public void times(double[] x, int numVectors, double[] result){
+
+		Arrays.fill(result, 0, numVectors * numRows, 0);
+		for (int blockStart = 0; blockStart < numVectors; blockStart += BLOCK_SIZE) {
+			int blockEnd = Math.min(blockStart + BLOCK_SIZE, numVectors);
+			for (int inner = 0; inner < numColumns; inner++) {
+				int offset = inner * numRows;
+				for (int column = blockStart; column < blockEnd; column++) {
+					double scale = x[column * numColumns + inner];
+					if(scale == 0){
+						continue;
+					}
+					int resultOffset = column * numRows;
+					for (int row = 0; row < numRows; row++) {
+						result[resultOffset + row] += scale * values[offset + row];
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Multiply the transpose of this matrix by another matrix, this' * other,
+	 * without ever forming the transpose.
+	 * Each cell of the result is a dot product of two columns. The columns of this matrix are
+	 * taken TopSelector.BLOCK_SIZE at a time and multiplied with every column of the other 
+	 * matrix while they are still in the cache, through the same kernel as 
+	 * transposeTimes(double[], double[]), so each column of the product comes out exactly 
+	 * the same as multiplying by that column on its own.
+	 *
+	 * @param other - the matrix on the right side of the product
+	 * @return the product of the transpose of this matrix and the other matrix
+	 */
+	@Override
+	public ColumnMajorMatrix transposeTimes(ColumnMajorMatrix other){
+
+		if(numRows != other.numRows){
+			throw new IllegalArgumentException("Cannot multiply transpose of " + numRows + "x"
+					+ numColumns + " by " + other.numRows + "x" + other.numColumns);
+		}
+
+		ColumnMajorMatrix product = new ColumnMajorMatrix(numColumns, other.numColumns);
+		transposeTimes(other.values, other.numColumns, product.values);
+		return product;
+	}
+
+	/**
+	 * Worked out a block at a time, the same as transposeTimes(ColumnMajorMatrix).
+	 */
+	@Override
+	public void transposeTimes(double[] r, int numVectors, double[] result){
+
+		VectorKernels kernels = VectorKernels.get();
+		for (int start = 0; start < numColumns; start += TopSelector.BLOCK_SIZE) {
+			int blockColumns = Math.min(TopSelector.BLOCK_SIZE, numColumns - start);
+			for (int otherColumn = 0; otherColumn < numVectors; otherColumn++) {
+				kernels.gemvTranspose(values, start * numRows, numRows, blockColumns, r, 
+						otherColumn * numRows, result, otherColumn * numColumns + start);
+			}
+		}
+	}
+
+	/**
+	 * Matrix vector multiplication on plain arrays, result = this * x.
+	 * 
+	 * @param x - a vector with columnSize() values
+	 * @param result - filled with the rowSize() values of the product
+	 */
+	@Override
+	public void times(double[] x, double[] result){
+		VectorKernels.get().gemv(values, numRows, numColumns, x, result);
+	}
+
+	/**
+	 * Matrix vector multiplication with a sparse vector, only the columns stored in x are read.
+	 * The columns are added in the same order as times(double[], double[]) does, so both give
+	 * exactly the same result.
+	 * 
+	 * @param x - a vector of length columnSize()
+	 * @param result - filled with the rowSize() values of the product
+	 */
+	@Override
+	public void times(SparseVector x, double[] result){
+
+		VectorKernels kernels = VectorKernels.get();
+		Arrays.fill(result, 0, numRows, 0);
+		for (int position = 0; position < x.size(); position++) {
+			double scale = x.getValue(position);
+			if(scale != 0){
+				kernels.axpy(scale, values, x.getIndex(position) * numRows, result, 0, numRows);
+			}
+		}
+	}
+
+	/**
+	 * Transpose matrix vector multiplication on plain arrays, result = this' * r.
+	 * 
+	 * @param r - a vector with rowSize() values
+	 * @param result - filled with the columnSize() values of the product
+	 */
+	@Override
+	public void transposeTimes(double[] r, double[] result){
+		VectorKernels.get().gemvTranspose(values, numRows, numColumns, r, result);
+	}
+
+	/**
+	 * The proxy is worked out TopSelector.BLOCK_SIZE columns at a time, exactly the way 
+	 * transposeTimes(double[], double[]) does, and each block is offered while it is still 
+	 * in the cache.
+	 */
+	@Override
+	public void transposeTimes(double[] r, TopSelector selector){
+
+		VectorKernels kernels = VectorKernels.get();
+		double[] block = selector.block;
+		for (int start = 0; start < numColumns; start += TopSelector.BLOCK_SIZE) {
+			int blockColumns = Math.min(TopSelector.BLOCK_SIZE, numColumns - start);
+			kernels.gemvTranspose(values, start * numRows, numRows, blockColumns, r, 0, block, 0);
+			for (int column = 0; column < blockColumns; column++) {
+				selector.offer(start + column, Math.abs(block[column]));
+			}
+		}
+	}
+
+	@Override
+	public ColumnMajorMatrix gatherColumns(SupportSet support){
+		return support.gatherColumns(this);
+	}
+
+	@Override
+	public void gatherColumns(SupportSet support, double[] result){
+
+		for (int index = 0; index < support.size(); index++) {
+			System.arraycopy(values, support.getRow(index) * numRows, result, index * numRows, numRows);
+		}
+	}
+
+	@Override
+	public long getSizeInBytes(){
+		return 8L * values.length;
+	}
+
+	/**
+	 * Multiply every cell by a scalar.
+	 *
+	 * @param scalar
+	 * @return a new matrix with the scaled values
+	 */
+	public ColumnMajorMatrix times(double scalar){
+
+		ColumnMajorMatrix product = new ColumnMajorMatrix(numRows, numColumns);
+		for (int index = 0; index < values.length; index++) {
+			product.values[index] = values[index] * scalar;
+		}
+		return product;
+	}
+
+	/**
+	 * Cell by cell addition, this + other.
+	 *
+	 * @param other
+	 * @return a new matrix with the sum
+	 */
+	public ColumnMajorMatrix plus(ColumnMajorMatrix other){
+
+		checkSameSize(other);
+		ColumnMajorMatrix sum = new ColumnMajorMatrix(numRows, numColumns);
+		for (int index = 0; index < values.length; index++) {
+			sum.values[index] = values[index] + other.values[index];
+		}
+		return sum;
+	}
+
+	/**
+	 * Cell by cell subtraction, this - other.
+	 *
+	 * @param other
+	 * @return a new matrix with the difference
+	 */
+	public ColumnMajorMatrix minus(ColumnMajorMatrix other){
+
+		checkSameSize(other);
+		ColumnMajorMatrix difference = new ColumnMajorMatrix(numRows, numColumns);
+		for (int index = 0; index < values.length; index++) {
+			difference.values[index] = values[index] - other.values[index];
+		}
+		return difference;
+	}
+
+	/**
+	 * The sum of the products of corresponding cells. For two column vectors
+	 * this is the same as x' * y.
+	 *
+	 * @param other
+	 * @return the dot product of the two matrices
+	 */
+	public double dot(ColumnMajorMatrix other){
+
+		checkSameSize(other);
+		return VectorKernels.get().dot(values, 0, other.values, 0, values.length);
+	}
+
+	/**
+	 * Create the transpose of this matrix.
+	 *
+	 * @return a new matrix that is the transpose
+	 */
+	public ColumnMajorMatrix transpose(){
+
+		ColumnMajorMatrix transposeMatrix = new ColumnMajorMatrix(numColumns, numRows);
+		for (int column = 0; column < numColumns; column++) {
+			for (int row = 0; row < numRows; row++) {
+				transposeMatrix.values[row * numColumns + column] = values[column * numRows + row];
+			}
+		}
+		return transposeMatrix;
+	}
+
+	/**
+	 * Create a copy of this matrix.
+	 *
+	 * @return the new matrix that is identical to this one
+	 */
+	public ColumnMajorMatrix copy(){
+		return new ColumnMajorMatrix(numRows, numColumns, values.clone());
+	}
+
+	private void checkSameSize(ColumnMajorMatrix other){
+		if(numRows != other.numRows || numColumns != other.numColumns){
+			throw new IllegalArgumentException("Dimensions do not match: " + numRows + "x"
+					+ numColumns + " and " + other.numRows + "x" + other.numColumns);
+		}
+	}
+}
@@ -0,0 +1,121 @@
+package matrix;
+
+/**
+ * The loop behind SignalHelper.conjugateGradient, with its vectors kept from one solve to the
+ * next. The vectors have room for capacity values and each solve only uses as many as its
+ * right hand side has, so a CosampWorkspace can solve on supports of any size up to that
+ * without creating anything.
+ */
+class ConjugateGradient {
+
+	//how much a warm started solve has to shrink the residual it starts with
+	static final double MIN_RESIDUAL_REDUCTION = 0.01;
+
+	private final double[] r;
+	private final double[] q;
+	private final double[] z;
+	private final double[] d;
+	private final double[] bestX;
+	private int iterations;
+	private double relativeResidual;
+
+	/**
+	 * @param capacity - the largest system that will be solved
+	 */
+	ConjugateGradient(int capacity){
+
+		this.r = new double[capacity];
+		this.q = new double[capacity];
+		this.z = new double[capacity];
+		this.d = new double[capacity];
+		this.bestX = new double[capacity];
+	}
+
+	/**
+	 * Solve A * x = b, see SignalHelper.conjugateGradient.
+	 *
+	 * @param firstMatrix - the symmetric positive definite matrix A
+	 * @param b - the right hand side, the first length values are used
+	 * @param x - holds the first guess, overwritten with the best solution
+	 * @param length - the size of the system
+	 * @param preconditioner - approximates A, or null for none
+	 * @param tolerance
+	 * @param maxIterations
+	 */
+	void solve(LinearOperator firstMatrix, double[] b, double[] x, int length,
+			Preconditioner preconditioner, double tolerance, int maxIterations){
+
+		VectorKernels kernels = VectorKernels.get();
+		//without a preconditioner z is just r
+		double[] z = preconditioner == null ? r : this.z;
+
+		//r = b - A * x, which is just b when starting from zero
+		firstMatrix.times(x, r);
+		for (int index = 0; index < length; index++) {
+			r[index] = b[index] - r[index];
+		}
+		if(preconditioner != null){
+			preconditioner.solve(r, z);
+		}
+		System.arraycopy(z, 0, d, 0, length);
+
+		double delta = kernels.squaredNorm(r, 0, length);
+		double deltaZero = kernels.squaredNorm(b, 0, length);
+		double deltaStart = delta;
+		double rho = kernels.dot(r, 0, z, 0, length);
+
+		int numIters = 0;
+
+		System.arraycopy(x, 0, bestX, 0, length);
+		double bestRes = Math.sqrt(delta/deltaZero);
+		while((numIters < maxIterations) && ((delta > (Math.pow(tolerance, 2) * deltaZero)) 
+				|| (delta > (Math.pow(MIN_RESIDUAL_REDUCTION, 2) * deltaStart)))){
+			firstMatrix.times(d, q);
+			double alpha = rho/kernels.dot(d, 0, q, 0, length);
+			kernels.axpy(alpha, d, 0, x, 0, length);
+
+			if(((numIters+1) % 50) == 0){
+				//recompute the residual from scratch so rounding errors don't build up
+				firstMatrix.times(x, r);
+				for (int index = 0; index < length; index++) {
+					r[index] = b[index] - r[index];
+				}
+			}
+			else{
+				kernels.axpy(-alpha, q, 0, r, 0, length);
+			}
+			if(preconditioner != null){
+				preconditioner.solve(r, z);
+			}
+			delta = kernels.squaredNorm(r, 0, length);
+			double rhoOld = rho;
+			rho = kernels.dot(r, 0, z, 0, length);
+			double beta = rho/rhoOld;
+			kernels.scaledAdd(z, 0, beta, d, 0, length);
+			numIters++;
+			if(Math.sqrt(delta/deltaZero) < bestRes){
+				System.arraycopy(x, 0, bestX, 0, length);
+				bestRes = Math.sqrt(delta/deltaZero) ;
+			}
+
+		}
+
+		System.arraycopy(bestX, 0, x, 0, length);
+		this.iterations = numIters;
+		this.relativeResidual = bestRes;
+	}
+
+	/**
+	 * @return the number of iterations the last solve ran
+	 */
+	int getIterations(){
+		return iterations;
+	}
+
+	/**
+	 * @return ||b - A * x|| / ||b|| for the solution of the last solve
+	 */
+	double getRelativeResidual(){
+		return relativeResidual;
+	}
+}
@@ -0,0 +1,137 @@
+package matrix;
+
+/**
+ * Where the cosamp algorithm is on one column: the running norms a StoppingPolicy looks at
+ * after each iteration and, once it is done, why it stopped. The algorithm fills the same
+ * object in every iteration, so one can be reused for every column a thread reconstructs.
+ */
+public class CosampProgress {
+
+	private int iteration;
+	private long startTime;
+	private double changeNorm;
+	private double estimateNorm;
+	private double residualNorm;
+	private double measurementNorm;
+	private int stableIterations;
+	private StopReason stopReason;
+	private IterateTrace trace;
+
+	/**
+	 * Start a new column.
+	 * 
+	 * @param measurementNorm - ||y||
+	 */
+	void start(double measurementNorm){
+		this.iteration = 0;
+		this.startTime = System.nanoTime();
+		this.changeNorm = 0;
+		this.estimateNorm = 0;
+		this.residualNorm = measurementNorm;
+		this.measurementNorm = measurementNorm;
+		this.stableIterations = 0;
+		this.stopReason = null;
+	}
+
+	/**
+	 * Record the latest iteration.
+	 * 
+	 * @param iteration - the number of iterations done so far
+	 * @param changeNorm - ||x_k - x_k-1||
+	 * @param estimateNorm - ||x_k||
+	 * @param residualNorm - ||y - phi * x_k||
+	 * @param supportStable - true if x_k has the same support as x_k-1
+	 */
+	void update(int iteration, double changeNorm, double estimateNorm, double residualNorm, 
+			boolean supportStable){
+		this.iteration = iteration;
+		this.changeNorm = changeNorm;
+		this.estimateNorm = estimateNorm;
+		this.residualNorm = residualNorm;
+		this.stableIterations = supportStable ? stableIterations + 1 : 0;
+	}
+
+	/**
+	 * @param stopReason - why the column stopped
+	 */
+	void stop(StopReason stopReason){
+		this.stopReason = stopReason;
+	}
+
+	/**
+	 * @return the number of iterations done so far
+	 */
+	public int getIteration(){
+		return iteration;
+	}
+
+	/**
+	 * @return the time since the column was started, in nanoseconds
+	 */
+	public long getElapsedNanos(){
+		return System.nanoTime() - startTime;
+	}
+
+	/**
+	 * @return ||x_k - x_k-1||, how much the estimate changed in the latest iteration
+	 */
+	public double getChangeNorm(){
+		return changeNorm;
+	}
+
+	/**
+	 * @return ||x_k||, the length of the latest estimate
+	 */
+	public double getEstimateNorm(){
+		return estimateNorm;
+	}
+
+	/**
+	 * @return ||y - phi * x_k|| for the latest estimate
+	 */
+	public double getResidualNorm(){
+		return residualNorm;
+	}
+
+	/**
+	 * @return ||y||, the length of the measurements
+	 */
+	public double getMeasurementNorm(){
+		return measurementNorm;
+	}
+
+	/**
+	 * @return ||y - phi * x_k|| / ||y||
+	 */
+	public double getRelativeResidual(){
+		return residualNorm / measurementNorm;
+	}
+
+	/**
+	 * @return the number of iterations in a row that the support of the estimate hasn't changed
+	 */
+	public int getStableIterations(){
+		return stableIterations;
+	}
+
+	/**
+	 * @return why the column stopped, null while it is still running
+	 */
+	public StopReason getStopReason(){
+		return stopReason;
+	}
+
+	/**
+	 * @return where every estimate of the column is written, null if it isn't traced
+	 */
+	public IterateTrace getTrace(){
+		return trace;
+	}
+
+	/**
+	 * @param trace - where every estimate of the column is written, null to not trace it
+	 */
+	public void setTrace(IterateTrace trace){
+		this.trace = trace;
+	}
+}
@@ -0,0 +1,187 @@
+package matrix;
+
+import java.util.Arrays;
+
+/**
+ * Working space for the cosamp algorithm, sized once from the number of measurements m, the 
+ * signal length n and the sparsity K so an iteration doesn't have to create anything: the 
+ * selector the largest values of the projection phi' * r are picked with, the supports that 
+ * are merged in the backprojection, and the vectors and operators the least squares problem 
+ * on the merged support (at most 3K rows) is solved with. Every column a thread reconstructs
+ * uses the same workspace, so it is never shared between threads; acquire() hands each 
+ * thread its own. A thread that is waiting for the pieces of a ParallelMeasurement product
+ * can pick up another column and reconstruct it before going back to the first, so the 
+ * workspace is only handed out again once release() says the column is done with it, and
+ * a column started in the middle of another gets a workspace of its own.
+ * 
+ * When a block of columns is reconstructed together, the residuals, estimates and products
+ * of the block are kept here as well, so the columns still running are packed into the same
+ * arrays on every iteration.
+ * 
+ * A dense measurement matrix, the Gram store and conjugate gradient without a preconditioner
+ * run entirely in the workspace. The implicit and structured measurement matrices, the
+ * preconditioners and IncrementalCholesky still create their own working space.
+ */
+public class CosampWorkspace {
+
+	private static final ThreadLocal<Nest> NESTS = new ThreadLocal<Nest>();
+
+	private final int numRows;
+	private final int length;
+	private final int sparsity;
+	//the most rows a merged support can have
+	private final int capacity;
+
+	//the rows of the 2K largest values of |phi' * r|
+	final TopSelector selector;
+	//the rows of the least squares solution while its largest values are found
+	final int[] order;
+	//rows being put in order before they become a support
+	final int[] rowBuffer;
+	//where the current estimate is nonzero, the largest rows of the proxy and their union
+	final SupportSet estimateSupport;
+	final SupportSet proxySupport;
+	final SupportSet unionSupport;
+
+	//the least squares problem on the merged support
+	final double[] rightHandSide;
+	final double[] solution;
+	final double[] absValues;
+	final double[] prunedValues;
+	final ConjugateGradient conjugateGradient;
+	final NormalEquations normalEquations;
+	final GramStore.Slice gramSlice;
+
+	//a block of columns reconstructed together, created by the first block that needs it:
+	//m values for every column, the residuals and then phi * the estimates
+	double[] measurementBlock;
+	//n values for every column, phi' * the residuals and then the estimates
+	double[] signalBlock;
+
+	/**
+	 * @param numRows - the number of measurements
+	 * @param length - the length of the signal
+	 * @param sparsity - the largest sparsity of a column that will be reconstructed
+	 */
+	public CosampWorkspace(int numRows, int length, int sparsity){
+
+		this.numRows = numRows;
+		this.length = length;
+		this.sparsity = sparsity;
+		this.capacity = Math.min(3 * sparsity, length);
+
+		this.selector = new TopSelector(Math.min(2 * sparsity, length));
+		this.order = new int[capacity];
+		this.rowBuffer = new int[capacity];
+		this.estimateSupport = new SupportSet(length, Math.min(sparsity, length));
+		this.proxySupport = new SupportSet(length, Math.min(2 * sparsity, length));
+		this.unionSupport = new SupportSet(length, capacity);
+
+		this.rightHandSide = new double[capacity];
+		this.solution = new double[capacity];
+		this.absValues = new double[capacity];
+		this.prunedValues = new double[capacity];
+		this.conjugateGradient = new ConjugateGradient(capacity);
+		this.normalEquations = new NormalEquations(numRows, capacity);
+		this.gramSlice = new GramStore.Slice(capacity);
+	}
+
+	/**
+	 * A workspace of the calling thread that no column it is in the middle of is using, which 
+	 * is only created again when it is too small. Every workspace acquired has to be released
+	 * by the same thread once the column is done with it.
+	 * 
+	 * @param numRows - the number of measurements
+	 * @param length - the length of the signal
+	 * @param sparsity - the sparsity of the column about to be reconstructed
+	 * @return a workspace that fits
+	 */
+	public static CosampWorkspace acquire(int numRows, int length, int sparsity){
+
+		Nest nest = NESTS.get();
+		if(nest == null){
+			nest = new Nest();
+			NESTS.set(nest);
+		}
+		if(nest.depth == nest.workspaces.length){
+			nest.workspaces = Arrays.copyOf(nest.workspaces, 2 * nest.depth);
+		}
+		CosampWorkspace workspace = nest.workspaces[nest.depth];
+		if(workspace == null || !workspace.fits(numRows, length, sparsity)){
+			workspace = new CosampWorkspace(numRows, length, sparsity);
+			nest.workspaces[nest.depth] = workspace;
+		}
+		nest.depth++;
+		return workspace;
+	}
+
+	/**
+	 * Hand a workspace back once its column is done, so the thread's next column can use it.
+	 * Workspaces are released in the opposite order they were acquired in.
+	 * 
+	 * @param workspace - the workspace the calling thread acquired last
+	 */
+	public static void release(CosampWorkspace workspace){
+
+		Nest nest = NESTS.get();
+		if(nest == null || nest.depth == 0 || nest.workspaces[nest.depth - 1] != workspace){
+			throw new IllegalStateException("The workspace is not the last one this thread acquired");
+		}
+		nest.depth--;
+	}
+
+	/**
+	 * @param numRows - the number of measurements
+	 * @param length - the length of the signal
+	 * @param sparsity - the sparsity of a column
+	 * @return true if the column can be reconstructed in this workspace
+	 */
+	public boolean fits(int numRows, int length, int sparsity){
+		return this.numRows == numRows && this.length == length && this.sparsity >= sparsity;
+	}
+
+	/**
+	 * Make sure the block arrays can hold a number of columns. They are only created again 
+	 * when they are too small.
+	 * 
+	 * @param numColumns - the number of columns in the block
+	 */
+	void ensureBlock(int numColumns){
+
+		if(measurementBlock == null || measurementBlock.length < numRows * numColumns){
+			measurementBlock = new double[numRows * numColumns];
+		}
+		if(signalBlock == null || signalBlock.length < length * numColumns){
+			signalBlock = new double[length * numColumns];
+		}
+	}
+
+	/**
+	 * @return the memory the workspace takes, in bytes
+	 */
+	public long getSizeInBytes(){
+
+		long doubles = TopSelector.BLOCK_SIZE + Math.min(2 * sparsity, length) + 9L * capacity 
+				+ (long) numRows * (capacity + 1) + (long) capacity * capacity;
+		long ints = 2L * capacity + Math.min(sparsity, length) + 2L * Math.min(2 * sparsity, length) 
+				+ capacity;
+		long words = 3L * ((length + 63) >>> 6);
+		if(measurementBlock != null){
+			doubles += measurementBlock.length + signalBlock.length;
+		}
+		if(selector.proxy != null){
+			doubles += selector.proxy.length;
+		}
+		return 8L * doubles + 4L * ints + 8L * words;
+	}
+
+	/**
+	 * The workspaces of one thread, the first depth of them belong to columns that aren't 
+	 * done yet.
+	 */
+	private static class Nest {
+
+		CosampWorkspace[] workspaces = new CosampWorkspace[1];
+		int depth;
+	}
+}
@@ -0,0 +1,174 @@
+package matrix;
+
+/**
+ * A randomly subsampled discrete cosine transform measurement matrix with random sign flips.
+ * Uses the orthonormal DCT-II, which Matlab's dct() computes, and its transpose the DCT-III. 
+ * Both are computed with a single complex FFT of the same length (Makhoul's algorithm).
+ */
+public class DctMeasurement extends StructuredMeasurement {
+
+	private final int length;
+	//cos and sin of -2 pi k / n for the FFT
+	private final double[] fftCos;
+	private final double[] fftSin;
+	//cos and sin of -pi k / 2n to rotate between the FFT and the DCT
+	private final double[] shiftCos;
+	private final double[] shiftSin;
+
+	/**
+	 * @param numRows - the number of measurements
+	 * @param numColumns - the length of the signal
+	 * @param seed - the signs and kept rows are determined by this seed
+	 */
+	public DctMeasurement(int numRows, int numColumns, long seed){
+
+		super(numRows, numColumns, seed);
+		length = getTransformLength();
+
+		fftCos = new double[length / 2 + 1];
+		fftSin = new double[length / 2 + 1];
+		for (int k = 0; k < fftCos.length; k++) {
+			fftCos[k] = Math.cos(-2 * Math.PI * k / length);
+			fftSin[k] = Math.sin(-2 * Math.PI * k / length);
+		}
+
+		shiftCos = new double[length];
+		shiftSin = new double[length];
+		for (int k = 0; k < length; k++) {
+			shiftCos[k] = Math.cos(-Math.PI * k / (2.0 * length));
+			shiftSin[k] = Math.sin(-Math.PI * k / (2.0 * length));
+		}
+	}
+
+	/**
+	 * Orthonormal DCT-II, in place.
+	 */
+	@Override
+	protected void transform(double[] values){
+
+		//the transform of a single value is itself
+		if(length == 1){
+			return;
+		}
+
+		//reorder to the even entries followed by the odd entries backwards
+		double[] real = new double[length];
+		double[] imaginary = new double[length];
+		for (int index = 0; index < length / 2; index++) {
+			real[index] = values[2 * index];
+			real[length - 1 - index] = values[2 * index + 1];
+		}
+
+		fft(real, imaginary, false);
+
+		//rotate by e^(-i pi k / 2n) and keep the real part
+		double firstScale = Math.sqrt(1.0 / length);
+		double otherScale = Math.sqrt(2.0 / length);
+		for (int k = 0; k < length; k++) {
+			double value = real[k] * shiftCos[k] - imaginary[k] * shiftSin[k];
+			values[k] = value * (k == 0 ? firstScale : otherScale);
+		}
+	}
+
+	/**
+	 * Orthonormal DCT-III, the transpose (and inverse) of transform(), in place.
+	 */
+	@Override
+	protected void transposeTransform(double[] values){
+
+		if(length == 1){
+			return;
+		}
+
+		double firstScale = Math.sqrt(1.0 / length);
+		double otherScale = Math.sqrt(2.0 / length);
+
+		//undo the rotation, V[k] = e^(i pi k / 2n) (X[k] - i X[n - k]) with X[n] = 0.
+		//the transpose weights the first value twice as much as the inverse does
+		double[] real = new double[length];
+		double[] imaginary = new double[length];
+		for (int k = 0; k < length; k++) {
+			double coefficient = values[k] * (k == 0 ? 2 * firstScale : otherScale);
+			double mirrored = (k == 0) ? 0 : values[length - k] * otherScale;
+			//multiply (coefficient - i mirrored) by (cos + i sin) with the sign of the shift flipped
+			real[k] = coefficient * shiftCos[k] + mirrored * (-shiftSin[k]);
+			imaginary[k] = -coefficient * shiftSin[k] - mirrored * shiftCos[k];
+		}
+
+		fft(real, imaginary, true);
+
+		//the n / 2 turns the inverse into the transpose
+		for (int index = 0; index < length / 2; index++) {
+			values[2 * index] = real[index] * length / 2;
+			values[2 * index + 1] = real[length - 1 - index] * length / 2;
+		}
+	}
+
+	@Override
+	public long getSizeInBytes(){
+		return super.getSizeInBytes() + 8L * (fftCos.length + fftSin.length + shiftCos.length 
+				+ shiftSin.length);
+	}
+
+	@Override
+	protected double transformValue(int row, int column){
+
+		double rowScale = (row == 0) ? Math.sqrt(1.0 / length) : Math.sqrt(2.0 / length);
+		return rowScale * Math.cos(Math.PI * row * (2 * column + 1) / (2.0 * length));
+	}
+
+	/**
+	 * Iterative radix-2 FFT, in place. The inverse is scaled by 1 / n.
+	 * 
+	 * @param real - the real parts
+	 * @param imaginary - the imaginary parts
+	 * @param inverse - true for the inverse transform
+	 */
+	private void fft(double[] real, double[] imaginary, boolean inverse){
+
+		int n = real.length;
+
+		//bit reversal permutation
+		for (int index = 1, reversed = 0; index < n; index++) {
+			int bit = n >> 1;
+			for (; (reversed & bit) != 0; bit >>= 1) {
+				reversed ^= bit;
+			}
+			reversed ^= bit;
+			if(index < reversed){
+				double temp = real[index];
+				real[index] = real[reversed];
+				real[reversed] = temp;
+				temp = imaginary[index];
+				imaginary[index] = imaginary[reversed];
+				imaginary[reversed] = temp;
+			}
+		}
+
+		for (int size = 2; size <= n; size <<= 1) {
+			int half = size >> 1;
+			int step = n / size;
+			for (int start = 0; start < n; start += size) {
+				for (int k = 0; k < half; k++) {
+					double twiddleReal = fftCos[k * step];
+					double twiddleImaginary = inverse ? -fftSin[k * step] : fftSin[k * step];
+					int even = start + k;
+					int odd = even + half;
+					double oddReal = real[odd] * twiddleReal - imaginary[odd] * twiddleImaginary;
+					double oddImaginary = real[odd] * twiddleImaginary + imaginary[odd] * twiddleReal;
+					real[odd] = real[even] - oddReal;
+					imaginary[odd] = imaginary[even] - oddImaginary;
+					real[even] += oddReal;
+					imaginary[even] += oddImaginary;
+				}
+			}
+		}
+
+		if(inverse){
+			for (int index = 0; index < n; index++) {
+				real[index] /= n;
+				imaginary[index] /= n;
+			}
+		}
+	}
+}
@@ -0,0 +1,524 @@
+package matrix;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads and writes doubles as ASCII text straight from and into byte arrays, so a matrix can
+ * be read or written without making a String for every value.
+ *
+ * parse() works out a value with at most 15 significant digits and a decimal exponent within
+ * 22 exactly with a single multiplication or division of doubles, since both numbers are exact,
+ * which covers the values in the signal files. With up to 18 digits, as format() writes full
+ * precision values, the same product can be an ulp or two out, so it is checked against the
+ * halfway points to its neighbours with exact 128 bit integer products and moved if it has to
+ * be. Anything else is handed to Double.parseDouble(), so every value comes out exactly as
+ * Double.parseDouble() would read it.
+ *
+ * format() writes the digits found by Grisu2 (Florian Loitsch, "Printing Floating-Point
+ * Numbers Quickly and Accurately with Integers", 2010), which always read back as the same
+ * double and are the shortest digits that do in all but a very few cases, where there is one
+ * more. Numbers are written like Matlab writes them: integers without a decimal point, plain
+ * decimals from 1e-6 up to 1e21, and 1.5e-7 style otherwise.
+ */
+public class DoubleText {
+
+	/**
+	 * The most bytes format() writes for a single value
+	 */
+	public static final int MAX_LENGTH = 25;
+
+	private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8,
+		1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+	//10^19 doesn't fit in a long, it is stored as an unsigned value
+	private static final long[] LONG_POWERS_OF_TEN = {1L, 10L, 100L, 1000L, 10000L, 100000L,
+		1000000L, 10000000L, 100000000L, 1000000000L, 10000000000L, 100000000000L, 1000000000000L,
+		10000000000000L, 100000000000000L, 1000000000000000L, 10000000000000000L,
+		100000000000000000L, 1000000000000000000L, -8446744073709551616L};
+	private static final long[] POWERS_OF_FIVE = new long[23];
+	static {
+		POWERS_OF_FIVE[0] = 1;
+		for (int index = 1; index < POWERS_OF_FIVE.length; index++) {
+			POWERS_OF_FIVE[index] = 5 * POWERS_OF_FIVE[index - 1];
+		}
+	}
+	//every significand below this is exactly a double
+	private static final long MAX_EXACT = 1L << 53;
+	private static final int MAX_DIGITS = 18;
+
+	private static final long SIGNIFICAND_MASK = 0x000FFFFFFFFFFFFFL;
+	private static final long HIDDEN_BIT = 0x0010000000000000L;
+	private static final long LOWER_32 = 0xFFFFFFFFL;
+
+	//normalized 64 bit significands and binary exponents of 10^-348, 10^-340, ..., 10^340
+	private static final long[] CACHED_SIGNIFICANDS = {
+		0xfa8fd5a0081c0288L, 0xbaaee17fa23ebf76L, 0x8b16fb203055ac76L, 0xcf42894a5dce35eaL,
+		0x9a6bb0aa55653b2dL, 0xe61acf033d1a45dfL, 0xab70fe17c79ac6caL, 0xff77b1fcbebcdc4fL,
+		0xbe5691ef416bd60cL, 0x8dd01fad907ffc3cL, 0xd3515c2831559a83L, 0x9d71ac8fada6c9b5L,
+		0xea9c227723ee8bcbL, 0xaecc49914078536dL, 0x823c12795db6ce57L, 0xc21094364dfb5637L,
+		0x9096ea6f3848984fL, 0xd77485cb25823ac7L, 0xa086cfcd97bf97f4L, 0xef340a98172aace5L,
+		0xb23867fb2a35b28eL, 0x84c8d4dfd2c63f3bL, 0xc5dd44271ad3cdbaL, 0x936b9fcebb25c996L,
+		0xdbac6c247d62a584L, 0xa3ab66580d5fdaf6L, 0xf3e2f893dec3f126L, 0xb5b5ada8aaff80b8L,
+		0x87625f056c7c4a8bL, 0xc9bcff6034c13053L, 0x964e858c91ba2655L, 0xdff9772470297ebdL,
+		0xa6dfbd9fb8e5b88fL, 0xf8a95fcf88747d94L, 0xb94470938fa89bcfL, 0x8a08f0f8bf0f156bL,
+		0xcdb02555653131b6L, 0x993fe2c6d07b7facL, 0xe45c10c42a2b3b06L, 0xaa242499697392d3L,
+		0xfd87b5f28300ca0eL, 0xbce5086492111aebL, 0x8cbccc096f5088ccL, 0xd1b71758e219652cL,
+		0x9c40000000000000L, 0xe8d4a51000000000L, 0xad78ebc5ac620000L, 0x813f3978f8940984L,
+		0xc097ce7bc90715b3L, 0x8f7e32ce7bea5c70L, 0xd5d238a4abe98068L, 0x9f4f2726179a2245L,
+		0xed63a231d4c4fb27L, 0xb0de65388cc8ada8L, 0x83c7088e1aab65dbL, 0xc45d1df942711d9aL,
+		0x924d692ca61be758L, 0xda01ee641a708deaL, 0xa26da3999aef774aL, 0xf209787bb47d6b85L,
+		0xb454e4a179dd1877L, 0x865b86925b9bc5c2L, 0xc83553c5c8965d3dL, 0x952ab45cfa97a0b3L,
+		0xde469fbd99a05fe3L, 0xa59bc234db398c25L, 0xf6c69a72a3989f5cL, 0xb7dcbf5354e9beceL,
+		0x88fcf317f22241e2L, 0xcc20ce9bd35c78a5L, 0x98165af37b2153dfL, 0xe2a0b5dc971f303aL,
+		0xa8d9d1535ce3b396L, 0xfb9b7cd9a4a7443cL, 0xbb764c4ca7a44410L, 0x8bab8eefb6409c1aL,
+		0xd01fef10a657842cL, 0x9b10a4e5e9913129L, 0xe7109bfba19c0c9dL, 0xac2820d9623bf429L,
+		0x80444b5e7aa7cf85L, 0xbf21e44003acdd2dL, 0x8e679c2f5e44ff8fL, 0xd433179d9c8cb841L,
+		0x9e19db92b4e31ba9L, 0xeb96bf6ebadf77d9L, 0xaf87023b9bf0ee6bL
+	};
+	private static final int[] CACHED_EXPONENTS = {
+		-1220, -1193, -1166, -1140, -1113, -1087, -1060, -1034, -1007, -980, -954, -927,
+		-901, -874, -847, -821, -794, -768, -741, -715, -688, -661, -635, -608,
+		-582, -555, -529, -502, -475, -449, -422, -396, -369, -343, -316, -289,
+		-263, -236, -210, -183, -157, -130, -103, -77, -50, -24, 3, 30,
+		56, 83, 109, 136, 162, 189, 216, 242, 269, 295, 322, 348,
+		375, 402, 428, 455, 481, 508, 534, 561, 588, 614, 641, 667,
+		694, 720, 747, 774, 800, 827, 853, 880, 907, 933, 960, 986,
+		1013, 1039, 1066
+	};
+
+	private DoubleText(){
+	}
+
+	/**
+	 * Read a double from text such as 1.7502, -3, 0.063566 or 2.5e-7.
+	 *
+	 * @param bytes - holds the text
+	 * @param start - the first byte of the value
+	 * @param end - one past the last byte of the value
+	 * @return the value
+	 * @throws NumberFormatException if the text isn't a number
+	 */
+	public static double parse(byte[] bytes, int start, int end){
+
+		int index = start;
+		boolean negative = false;
+		if(index < end && (bytes[index] == '-' || bytes[index] == '+')){
+			negative = bytes[index] == '-';
+			index++;
+		}
+
+		long significand = 0;
+		int digits = 0;
+		int exponent = 0;
+		boolean anyDigits = false;
+		boolean fraction = false;
+		for (; index < end; index++) {
+			int digit = bytes[index] - '0';
+			if(digit < 0 || digit > 9){
+				if(bytes[index] == '.' && !fraction){
+					fraction = true;
+					continue;
+				}
+				break;
+			}
+			anyDigits = true;
+			//leading zeros are left out of the significand
+			if(significand != 0 || digit != 0){
+				if(++digits > MAX_DIGITS){
+					return parseSlowly(bytes, start, end);
+				}
+				significand = 10 * significand + digit;
+			}
+			if(fraction){
+				exponent--;
+			}
+		}
+
+		if(index < end && (bytes[index] == 'e' || bytes[index] == 'E') && anyDigits){
+			index++;
+			boolean negativeExponent = false;
+			if(index < end && (bytes[index] == '-' || bytes[index] == '+')){
+				negativeExponent = bytes[index] == '-';
+				index++;
+			}
+			int written = 0;
+			int digitsStart = index;
+			for (; index < end; index++) {
+				int digit = bytes[index] - '0';
+				if(digit < 0 || digit > 9){
+					break;
+				}
+				if(written < 10000){
+					written = 10 * written + digit;
+				}
+			}
+			if(index == digitsStart){
+				return parseSlowly(bytes, start, end);
+			}
+			exponent += negativeExponent ? -written : written;
+		}
+
+		if(!anyDigits || index != end){
+			//NaN, Infinity, hexadecimal or not a number at all
+			return parseSlowly(bytes, start, end);
+		}
+
+		double value;
+		if(significand == 0){
+			value = 0;
+		}
+		else if(exponent >= -22 && exponent <= 22){
+			value = exponent < 0 ? significand / POWERS_OF_TEN[-exponent]
+					: significand * POWERS_OF_TEN[exponent];
+			if(significand >= MAX_EXACT){
+				value = roundExactly(value, significand, exponent);
+			}
+		}
+		else{
+			return parseSlowly(bytes, start, end);
+		}
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Write a double as text.
+	 *
+	 * @param value
+	 * @param target - the text is written here, with room for MAX_LENGTH bytes from position
+	 * @param position - where the first byte goes
+	 * @return the position after the last byte written
+	 */
+	public static int format(double value, byte[] target, int position){
+
+		if(Double.isNaN(value)){
+			return writeAscii("NaN", target, position);
+		}
+		if(Double.doubleToRawLongBits(value) < 0){
+			target[position++] = '-';
+			value = -value;
+		}
+		if(Double.isInfinite(value)){
+			return writeAscii("Infinity", target, position);
+		}
+		if(value == 0){
+			target[position++] = '0';
+			return position;
+		}
+
+		long digits = grisu(value, target, position);
+		return prettify(target, position, (int) (digits >> 32), (int) digits);
+	}
+
+	/**
+	 * Write an int as text.
+	 *
+	 * @param value
+	 * @param target - the text is written here, with room for 11 bytes from position
+	 * @param position - where the first byte goes
+	 * @return the position after the last byte written
+	 */
+	public static int format(int value, byte[] target, int position){
+
+		long remaining = value;
+		if(remaining < 0){
+			target[position++] = '-';
+			remaining = -remaining;
+		}
+		int length = 1;
+		while(length < 10 && remaining >= LONG_POWERS_OF_TEN[length]){
+			length++;
+		}
+		for (int index = position + length - 1; index >= position; index--) {
+			target[index] = (byte) ('0' + remaining % 10);
+			remaining /= 10;
+		}
+		return position + length;
+	}
+
+	/**
+	 * Move an estimate of significand * 10^exponent to the closest double, ties to even.
+	 */
+	private static double roundExactly(double estimate, long significand, int exponent){
+
+		while(true){
+			long bits = Double.doubleToRawLongBits(estimate);
+			long current = (bits & SIGNIFICAND_MASK) | HIDDEN_BIT;
+			int binaryExponent = (int) (bits >>> 52) - 1075;
+			boolean odd = (current & 1) == 1;
+
+			//halfway to the next double up, then to the next one down, which is closer when
+			//the estimate is a power of two
+			int above = compareExactly(significand, exponent, 2 * current + 1, binaryExponent - 1);
+			if(above > 0 || (above == 0 && odd)){
+				estimate = Math.nextUp(estimate);
+				continue;
+			}
+			int below = current == HIDDEN_BIT
+					? compareExactly(significand, exponent, 4 * current - 1, binaryExponent - 2)
+					: compareExactly(significand, exponent, 2 * current - 1, binaryExponent - 1);
+			if(below < 0 || (below == 0 && odd)){
+				estimate = Math.nextAfter(estimate, 0);
+				continue;
+			}
+			return estimate;
+		}
+	}
+
+	/**
+	 * Compare significand * 10^exponent with value * 2^binaryExponent, for a significand and
+	 * value below 2^60 and an exponent within 22, so 5^exponent and the products fit in 128 bits.
+	 */
+	private static int compareExactly(long significand, int exponent, long value, int binaryExponent){
+
+		if(exponent >= 0){
+			long power = POWERS_OF_FIVE[exponent];
+			return compare(multiplyHigh(significand, power), significand * power, exponent,
+					0, value, binaryExponent);
+		}
+		long power = POWERS_OF_FIVE[-exponent];
+		return compare(0, significand, 0, multiplyHigh(value, power), value * power, 
+				binaryExponent - exponent);
+	}
+
+	/**
+	 * Compare two unsigned 128 bit values, each multiplied by a power of two.
+	 */
+	private static int compare(long firstHigh, long firstLow, int firstShift, long secondHigh,
+			long secondLow, int secondShift){
+
+		int shift = firstShift - secondShift;
+		if(shift < 0){
+			return -compare(secondHigh, secondLow, -shift, firstHigh, firstLow, 0);
+		}
+		if(shift > 0){
+			if(shift >= leadingZeros(firstHigh, firstLow)){
+				return firstHigh == 0 && firstLow == 0 ? -1 : 1;
+			}
+			if(shift >= 64){
+				firstHigh = firstLow << (shift - 64);
+				firstLow = 0;
+			}
+			else{
+				firstHigh = (firstHigh << shift) | (firstLow >>> (64 - shift));
+				firstLow <<= shift;
+			}
+		}
+		int comparison = unsignedCompare(firstHigh, secondHigh);
+		return comparison != 0 ? comparison : unsignedCompare(firstLow, secondLow);
+	}
+
+	private static int leadingZeros(long high, long low){
+		return high != 0 ? Long.numberOfLeadingZeros(high) : 64 + Long.numberOfLeadingZeros(low);
+	}
+
+	private static double parseSlowly(byte[] bytes, int start, int end){
+		return Double.parseDouble(new String(bytes, start, end - start, StandardCharsets.ISO_8859_1));
+	}
+
+	private static int writeAscii(String text, byte[] target, int position){
+
+		for (int index = 0; index < text.length(); index++) {
+			target[position++] = (byte) text.charAt(index);
+		}
+		return position;
+	}
+
+	/**
+	 * Write the digits of a positive, finite value to the buffer.
+	 *
+	 * @return the number of digits in the upper 32 bits, and in the lower 32 bits the power of
+	 * ten they are multiplied by
+	 */
+	private static long grisu(double value, byte[] buffer, int position){
+
+		long bits = Double.doubleToRawLongBits(value);
+		int biasedExponent = (int) (bits >>> 52);
+		long significand = bits & SIGNIFICAND_MASK;
+		int exponent;
+		if(biasedExponent != 0){
+			significand += HIDDEN_BIT;
+			exponent = biasedExponent - 1075;
+		}
+		else{
+			exponent = -1074;
+		}
+
+		//the boundaries halfway to the neighbouring doubles, the lower one is closer when
+		//the significand is a power of two
+		long upper = (significand << 1) + 1;
+		int upperExponent = exponent - 1;
+		int shift = Long.numberOfLeadingZeros(upper);
+		upper <<= shift;
+		upperExponent -= shift;
+		long lower;
+		int lowerExponent;
+		if(significand == HIDDEN_BIT){
+			lower = (significand << 2) - 1;
+			lowerExponent = exponent - 2;
+		}
+		else{
+			lower = (significand << 1) - 1;
+			lowerExponent = exponent - 1;
+		}
+		lower <<= lowerExponent - upperExponent;
+
+		shift = Long.numberOfLeadingZeros(significand);
+		long normalized = significand << shift;
+
+		//a cached power of ten that brings the exponents to between -60 and -32
+		double estimate = (-61 - upperExponent) * 0.30102999566398114 + 347;
+		int k = (int) estimate;
+		if(estimate - k > 0.0){
+			k++;
+		}
+		int index = (k >>> 3) + 1;
+		int decimalExponent = 348 - index * 8;
+		long cachedSignificand = CACHED_SIGNIFICANDS[index];
+		int scaledExponent = upperExponent + CACHED_EXPONENTS[index] + 64;
+
+		long scaled = multiply(normalized, cachedSignificand);
+		long scaledUpper = multiply(upper, cachedSignificand) - 1;
+		long scaledLower = multiply(lower, cachedSignificand) + 1;
+		return generateDigits(scaled, scaledUpper, scaledExponent, scaledUpper - scaledLower, buffer,
+				position, decimalExponent);
+	}
+
+	/**
+	 * Write as few digits as pin down a value between upper - delta and upper, rounded as
+	 * close to scaled as they can be.
+	 */
+	private static long generateDigits(long scaled, long upper, int exponent, long delta, 
+			byte[] buffer, int position, int decimalExponent){
+
+		int oneShift = -exponent;
+		long one = 1L << oneShift;
+		long distance = upper - scaled;
+		long integral = upper >>> oneShift;
+		long fractional = upper & (one - 1);
+		int kappa = 1;
+		while(kappa < 10 && integral >= LONG_POWERS_OF_TEN[kappa]){
+			kappa++;
+		}
+
+		int length = 0;
+		while(kappa > 0){
+			long digit = integral / LONG_POWERS_OF_TEN[kappa - 1];
+			integral %= LONG_POWERS_OF_TEN[kappa - 1];
+			if(digit != 0 || length != 0){
+				buffer[position + length++] = (byte) ('0' + digit);
+			}
+			kappa--;
+			long rest = (integral << oneShift) + fractional;
+			if(unsignedCompare(rest, delta) <= 0){
+				round(buffer, position + length - 1, delta, rest, LONG_POWERS_OF_TEN[kappa] << oneShift,
+						distance);
+				return ((long) length << 32) | ((decimalExponent + kappa) & LOWER_32);
+			}
+		}
+
+		while(true){
+			fractional *= 10;
+			delta *= 10;
+			long digit = fractional >>> oneShift;
+			if(digit != 0 || length != 0){
+				buffer[position + length++] = (byte) ('0' + digit);
+			}
+			fractional &= one - 1;
+			kappa--;
+			if(unsignedCompare(fractional, delta) < 0){
+				long scale = -kappa < LONG_POWERS_OF_TEN.length ? LONG_POWERS_OF_TEN[-kappa] : 0;
+				round(buffer, position + length - 1, delta, fractional, one, distance * scale);
+				return ((long) length << 32) | ((decimalExponent + kappa) & LOWER_32);
+			}
+		}
+	}
+
+	/**
+	 * Bring the last digit down while that moves the digits closer to the value and keeps
+	 * them within delta.
+	 */
+	private static void round(byte[] buffer, int last, long delta, long rest, long tenKappa,
+			long distance){
+
+		while(unsignedCompare(rest, distance) < 0 && unsignedCompare(delta - rest, tenKappa) >= 0
+				&& (unsignedCompare(rest + tenKappa, distance) < 0
+						|| unsignedCompare(distance - rest, rest + tenKappa - distance) > 0)){
+			buffer[last]--;
+			rest += tenKappa;
+		}
+	}
+
+	/**
+	 * Lay out digits * 10^decimalExponent as an integer, a decimal or with an exponent.
+	 */
+	private static int prettify(byte[] buffer, int start, int length, int decimalExponent){
+
+		//10^(point - 1) <= value < 10^point
+		int point = length + decimalExponent;
+		if(decimalExponent >= 0 && point <= 21){
+			//1234e7 -> 12340000000
+			for (int index = length; index < point; index++) {
+				buffer[start + index] = '0';
+			}
+			return start + point;
+		}
+		if(point > 0 && point <= 21){
+			//1234e-2 -> 12.34
+			System.arraycopy(buffer, start + point, buffer, start + point + 1, length - point);
+			buffer[start + point] = '.';
+			return start + length + 1;
+		}
+		if(point > -6 && point <= 0){
+			//1234e-6 -> 0.001234
+			int offset = 2 - point;
+			System.arraycopy(buffer, start, buffer, start + offset, length);
+			buffer[start] = '0';
+			buffer[start + 1] = '.';
+			for (int index = 2; index < offset; index++) {
+				buffer[start + index] = '0';
+			}
+			return start + length + offset;
+		}
+
+		int position;
+		if(length == 1){
+			//1e30
+			position = start + 1;
+		}
+		else{
+			//1234e30 -> 1.234e33
+			System.arraycopy(buffer, start + 1, buffer, start + 2, length - 1);
+			buffer[start + 1] = '.';
+			position = start + length + 1;
+		}
+		buffer[position++] = 'e';
+		return format(point - 1, buffer, position);
+	}
+
+	/**
+	 * The upper 64 bits of the 128 bit product of two unsigned values, rounded.
+	 */
+	private static long multiply(long x, long y){
+		return multiplyHigh(x, y) + ((x * y) >>> 63);
+	}
+
+	/**
+	 * The upper 64 bits of the 128 bit product of two unsigned values.
+	 */
+	private static long multiplyHigh(long x, long y){
+
+		long a = x >>> 32;
+		long b = x & LOWER_32;
+		long c = y >>> 32;
+		long d = y & LOWER_32;
+		long ac = a * c;
+		long bc = b * c;
+		long ad = a * d;
+		long bd = b * d;
+		long middle = (bd >>> 32) + (ad & LOWER_32) + (bc & LOWER_32);
+		return ac + (ad >>> 32) + (bc >>> 32) + (middle >>> 32);
+	}
+
+	private static int unsignedCompare(long first, long second){
+		return Long.compare(first + Long.MIN_VALUE, second + Long.MIN_VALUE);
+	}
+}
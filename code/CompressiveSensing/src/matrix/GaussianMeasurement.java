@@ -0,0 +1,241 @@
+package matrix;
+
+import java.util.Arrays;
+
+/**
+ * A Gaussian random measurement matrix that is never stored. Every column is generated
+ * from its own counter based stream (SplitMix64 seeded by the seed and the column number),
+ * so any column can be regenerated on its own, in any order, and always comes out the same.
+ * This only needs memory for a single column, so the signal length can grow far beyond
+ * what a stored m x n matrix would allow. Whoever takes the measurements and whoever 
+ * reconstructs the signal only have to agree on the dimensions and the seed.
+ * 
+ * Like Signal.getMeasurements(), the values are scaled by 1 / sqrt(m).
+ */
+public class GaussianMeasurement implements MeasurementOperator {
+
+	private static final double TWO_PI = 2 * Math.PI;
+	private static final double UNIT = 1.0 / (1L << 53);
+
+	private final int numRows;
+	private final int numColumns;
+	private final long seed;
+	private final double scale;
+
+	/**
+	 * @param numRows - the number of measurements
+	 * @param numColumns - the length of the signal
+	 * @param seed - every value of the matrix is determined by this seed
+	 */
+	public GaussianMeasurement(int numRows, int numColumns, long seed){
+		this.numRows = numRows;
+		this.numColumns = numColumns;
+		this.seed = seed;
+		this.scale = 1 / Math.sqrt(numRows);
+	}
+
+	@Override
+	public int rowSize(){
+		return numRows;
+	}
+
+	@Override
+	public int columnSize(){
+		return numColumns;
+	}
+
+	/**
+	 * @return the seed the matrix is generated from
+	 */
+	public long getSeed(){
+		return seed;
+	}
+
+	/**
+	 * Generate a single column of the matrix.
+	 * Uses the Box-Muller transform, each pair of uniform values gives two Gaussian values.
+	 * 
+	 * @param column - the column to generate
+	 * @param result - filled with the rowSize() values of the column
+	 * @param offset - where in result the column should start
+	 */
+	public void getColumn(int column, double[] result, int offset){
+
+		long state = MatrixHelper.mix64(seed ^ MatrixHelper.mix64(column));
+		for (int row = 0; row < numRows; row += 2) {
+			state += MatrixHelper.GOLDEN_GAMMA;
+			//(0, 1] so the log is always finite
+			double uniformOne = ((MatrixHelper.mix64(state) >>> 11) + 1) * UNIT;
+			state += MatrixHelper.GOLDEN_GAMMA;
+			double uniformTwo = (MatrixHelper.mix64(state) >>> 11) * UNIT;
+
+			double radius = Math.sqrt(-2 * Math.log(uniformOne)) * scale;
+			double angle = TWO_PI * uniformTwo;
+			result[offset + row] = radius * Math.cos(angle);
+			if(row + 1 < numRows){
+				result[offset + row + 1] = radius * Math.sin(angle);
+			}
+		}
+	}
+
+	@Override
+	public void times(double[] x, double[] result){
+
+		double[] columnValues = new double[numRows];
+		for (int row = 0; row < numRows; row++) {
+			result[row] = 0;
+		}
+		for (int column = 0; column < numColumns; column++) {
+			double weight = x[column];
+			//columns that would be multiplied by zero don't need to be generated
+			if(weight == 0){
+				continue;
+			}
+			getColumn(column, columnValues, 0);
+			for (int row = 0; row < numRows; row++) {
+				result[row] += weight * columnValues[row];
+			}
+		}
+	}
+
+	@Override
+	public void times(SparseVector x, double[] result){
+
+		//only the columns on the support are generated
+		double[] columnValues = new double[numRows];
+		for (int row = 0; row < numRows; row++) {
+			result[row] = 0;
+		}
+		for (int position = 0; position < x.size(); position++) {
+			double weight = x.getValue(position);
+			if(weight == 0){
+				continue;
+			}
+			getColumn(x.getIndex(position), columnValues, 0);
+			for (int row = 0; row < numRows; row++) {
+				result[row] += weight * columnValues[row];
+			}
+		}
+	}
+
+	@Override
+	public void transposeTimes(double[] r, double[] result){
+
+		double[] columnValues = new double[numRows];
+		for (int column = 0; column < numColumns; column++) {
+			getColumn(column, columnValues, 0);
+			double sum = 0;
+			for (int row = 0; row < numRows; row++) {
+				sum += columnValues[row] * r[row];
+			}
+			result[column] = sum;
+		}
+	}
+
+	@Override
+	public void transposeTimes(double[] r, TopSelector selector){
+
+		double[] columnValues = new double[numRows];
+		for (int column = 0; column < numColumns; column++) {
+			getColumn(column, columnValues, 0);
+			double sum = 0;
+			for (int row = 0; row < numRows; row++) {
+				sum += columnValues[row] * r[row];
+			}
+			selector.offer(column, Math.abs(sum));
+		}
+	}
+
+	/**
+	 * Each column of phi is generated once and used for every column of x.
+	 */
+	@Override
+	public ColumnMajorMatrix times(ColumnMajorMatrix x){
+
+		ColumnMajorMatrix product = new ColumnMajorMatrix(numRows, x.columnSize());
+		times(x.getValues(), x.columnSize(), product.getValues());
+		return product;
+	}
+
+	/**
+	 * Each column of phi is generated once and used for every vector of x.
+	 */
+	@Override
+	public void times(double[] x, int numVectors, double[] result){
+
+		Arrays.fill(result, 0, numVectors * numRows, 0);
+		double[] columnValues = new double[numRows];
+		for (int column = 0; column < numColumns; column++) {
+			boolean generated = false;
+			for (int block = 0; block < numVectors; block++) {
+				double weight = x[block * numColumns + column];
+				if(weight == 0){
+					continue;
+				}
+				if(!generated){
+					getColumn(column, columnValues, 0);
+					generated = true;
+				}
+				int offset = block * numRows;
+				for (int row = 0; row < numRows; row++) {
+					result[offset + row] += weight * columnValues[row];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Each column of phi is generated once and used for every column of r.
+	 */
+	@Override
+	public ColumnMajorMatrix transposeTimes(ColumnMajorMatrix r){
+
+		ColumnMajorMatrix product = new ColumnMajorMatrix(numColumns, r.columnSize());
+		transposeTimes(r.getValues(), r.columnSize(), product.getValues());
+		return product;
+	}
+
+	/**
+	 * Each column of phi is generated once and used for every vector of r.
+	 */
+	@Override
+	public void transposeTimes(double[] r, int numVectors, double[] result){
+
+		double[] columnValues = new double[numRows];
+		for (int column = 0; column < numColumns; column++) {
+			getColumn(column, columnValues, 0);
+			for (int block = 0; block < numVectors; block++) {
+				int offset = block * numRows;
+				double sum = 0;
+				for (int row = 0; row < numRows; row++) {
+					sum += columnValues[row] * r[offset + row];
+				}
+				result[block * numColumns + column] = sum;
+			}
+		}
+	}
+
+	/**
+	 * Nothing but the seed and dimensions are kept, no matter how large the matrix is.
+	 */
+	@Override
+	public long getSizeInBytes(){
+		return 0;
+	}
+
+	@Override
+	public ColumnMajorMatrix gatherColumns(SupportSet support){
+
+		ColumnMajorMatrix slicedMatrix = new ColumnMajorMatrix(numRows, support.size());
+		gatherColumns(support, slicedMatrix.getValues());
+		return slicedMatrix;
+	}
+
+	@Override
+	public void gatherColumns(SupportSet support, double[] result){
+
+		for (int index = 0; index < support.size(); index++) {
+			getColumn(support.getRow(index), result, index * numRows);
+		}
+	}
+}
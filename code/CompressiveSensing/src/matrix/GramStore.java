@@ -0,0 +1,213 @@
+package matrix;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The whole Gram matrix phi' * phi of a measurement matrix, worked out once so the least
+ * squares problem on any support is just a gather: phi_T' * phi_T is the rows and columns T
+ * of the Gram matrix, and phi_T' * y is the rows T of phi' * y. It takes n^2 doubles, 8 MB for
+ * a signal length of 1024, so it only pays off when many solves share the measurement matrix.
+ * The matrix is built like the BLAS routine SYRK: phi is split into panels of BLOCK_SIZE
+ * columns, only the blocks on or above the diagonal are multiplied, on the threads of a
+ * fork/join pool, and each block is mirrored below the diagonal.
+ */
+public class GramStore {
+
+	private static final int BLOCK_SIZE = 64;
+
+	private final int length;
+	//the Gram matrix, stored column by column, symmetric
+	private final double[] values;
+
+	/**
+	 * Compute the Gram matrix of phi.
+	 *
+	 * @param phiMatrix - the measurement matrix
+	 * @param pool - the pool the blocks are multiplied on
+	 */
+	public GramStore(MeasurementOperator phiMatrix, ForkJoinPool pool){
+
+		this.length = phiMatrix.columnSize();
+		if(!fitsArray(length)){
+			throw new IllegalArgumentException("The Gram matrix of a signal of length " + length
+					+ " doesn't fit in an array");
+		}
+		this.values = new double[length * length];
+
+		//every panel is used by several blocks, so each is gathered only once
+		int numBlocks = (length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		ColumnMajorMatrix[] panels = new ColumnMajorMatrix[numBlocks];
+		for (int block = 0; block < numBlocks; block++) {
+			panels[block] = phiMatrix.gatherColumns(SupportSet.range(length, block * BLOCK_SIZE,
+					Math.min((block + 1) * BLOCK_SIZE, length)));
+		}
+
+		pool.invoke(new BlockTask(panels, 0, numBlocks * (numBlocks + 1) / 2));
+	}
+
+	/**
+	 * @param length - the length of the signal
+	 * @param maxBytes - how much memory the store is allowed to take
+	 * @return true if the Gram matrix for a signal of that length fits in the budget, and 
+	 * in a single array
+	 */
+	public static boolean fits(int length, long maxBytes){
+		return fitsArray(length) && 8L * length * length <= maxBytes;
+	}
+
+	private static boolean fitsArray(int length){
+		return (long) length * length <= Integer.MAX_VALUE;
+	}
+
+	/**
+	 * @return the length of the signal, the Gram matrix is this many rows and columns
+	 */
+	public int getLength(){
+		return length;
+	}
+
+	/**
+	 * @param row
+	 * @param column
+	 * @return the dot product of columns row and column of phi
+	 */
+	public double get(int row, int column){
+		return values[column * length + row];
+	}
+
+	/**
+	 * Similar to G(T, T) in Matlab, which is the same as phi_T' * phi_T.
+	 *
+	 * @param support - the rows and columns to take
+	 * @return a |T| x |T| matrix, in the order of the support
+	 */
+	public ColumnMajorMatrix gather(SupportSet support){
+
+		int size = support.size();
+		ColumnMajorMatrix gramMatrix = new ColumnMajorMatrix(size, size);
+		gather(support, gramMatrix.getValues());
+		return gramMatrix;
+	}
+
+	/**
+	 * Same as gather(SupportSet), into an array that already exists.
+	 *
+	 * @param support - the rows and columns to take
+	 * @param result - filled with the |T| x |T| matrix, column by column
+	 */
+	public void gather(SupportSet support, double[] result){
+
+		int size = support.size();
+		for (int column = 0; column < size; column++) {
+			int offset = support.getRow(column) * length;
+			for (int row = 0; row < size; row++) {
+				result[column * size + row] = values[offset + support.getRow(row)];
+			}
+		}
+	}
+
+	/**
+	 * @return the memory the Gram matrix takes, in bytes
+	 */
+	public long getSizeInBytes(){
+		return 8L * values.length;
+	}
+
+	/**
+	 * The Gram matrix on a support, gathered into space that is kept for every support 
+	 * up to a given size. Multiplying by it is exactly ColumnMajorMatrix.times().
+	 */
+	static class Slice implements LinearOperator {
+
+		private final double[] values;
+		private int size;
+
+		/**
+		 * @param capacity - the largest support
+		 */
+		Slice(int capacity){
+			this.values = new double[capacity * capacity];
+		}
+
+		/**
+		 * Switch to the rows and columns of a new support.
+		 */
+		void gather(GramStore gramStore, SupportSet support){
+			gramStore.gather(support, values);
+			size = support.size();
+		}
+
+		@Override
+		public int rowSize(){
+			return size;
+		}
+
+		@Override
+		public int columnSize(){
+			return size;
+		}
+
+		@Override
+		public void times(double[] x, double[] result){
+			VectorKernels.get().gemv(values, size, size, x, result);
+		}
+	}
+
+	/**
+	 * Multiply the upper triangle blocks with numbers from start up to but not including end,
+	 * counting row by row. The range is split in half until it's small enough to do directly.
+	 */
+	private class BlockTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+		private static final int MIN_BLOCKS = 2;
+
+		private final ColumnMajorMatrix[] panels;
+		private final int start;
+		private final int end;
+
+		BlockTask(ColumnMajorMatrix[] panels, int start, int end){
+			this.panels = panels;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute(){
+
+			if(end - start <= MIN_BLOCKS){
+				for (int block = start; block < end; block++) {
+					multiplyBlock(block);
+				}
+				return;
+			}
+
+			int middle = (start + end) >>> 1;
+			invokeAll(new BlockTask(panels, start, middle), new BlockTask(panels, middle, end));
+		}
+
+		private void multiplyBlock(int block){
+
+			//find the block row and column, with blockRow <= blockColumn
+			int blockRow = 0;
+			int remaining = block;
+			while(remaining >= panels.length - blockRow){
+				remaining -= panels.length - blockRow;
+				blockRow++;
+			}
+			int blockColumn = blockRow + remaining;
+
+			ColumnMajorMatrix product = panels[blockRow].transposeTimes(panels[blockColumn]);
+			int rowStart = blockRow * BLOCK_SIZE;
+			int columnStart = blockColumn * BLOCK_SIZE;
+			for (int column = 0; column < product.columnSize(); column++) {
+				for (int row = 0; row < product.rowSize(); row++) {
+					double value = product.get(row, column);
+					values[(columnStart + column) * length + rowStart + row] = value;
+					values[(rowStart + row) * length + columnStart + column] = value;
+				}
+			}
+		}
+	}
+}
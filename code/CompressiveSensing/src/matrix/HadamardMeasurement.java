@@ -0,0 +1,62 @@
+package matrix;
+
+/**
+ * A randomly subsampled Walsh-Hadamard measurement matrix with random sign flips.
+ * The orthonormal Walsh-Hadamard transform is its own inverse and its own transpose,
+ * and its values are all +/- 1 / sqrt(n), so it is applied with additions only.
+ */
+public class HadamardMeasurement extends StructuredMeasurement {
+
+	private final double normalization;
+
+	/**
+	 * @param numRows - the number of measurements
+	 * @param numColumns - the length of the signal
+	 * @param seed - the signs and kept rows are determined by this seed
+	 */
+	public HadamardMeasurement(int numRows, int numColumns, long seed){
+		super(numRows, numColumns, seed);
+		normalization = 1 / Math.sqrt(getTransformLength());
+	}
+
+	/**
+	 * The fast Walsh-Hadamard transform, in place, normalized so the transform is orthonormal.
+	 * 
+	 * @param values - a power of two number of values
+	 */
+	public static void fastHadamard(double[] values){
+
+		int length = values.length;
+		for (int half = 1; half < length; half <<= 1) {
+			for (int start = 0; start < length; start += half << 1) {
+				for (int index = start; index < start + half; index++) {
+					double first = values[index];
+					double second = values[index + half];
+					values[index] = first + second;
+					values[index + half] = first - second;
+				}
+			}
+		}
+
+		double normalization = 1 / Math.sqrt(length);
+		for (int index = 0; index < length; index++) {
+			values[index] *= normalization;
+		}
+	}
+
+	@Override
+	protected void transform(double[] values){
+		fastHadamard(values);
+	}
+
+	@Override
+	protected void transposeTransform(double[] values){
+		fastHadamard(values);
+	}
+
+	@Override
+	protected double transformValue(int row, int column){
+		//the sign is the parity of the bits that the row and column have in common
+		return (Integer.bitCount(row & column) & 1) == 0 ? normalization : -normalization;
+	}
+}
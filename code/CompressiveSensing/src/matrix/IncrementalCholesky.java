@@ -0,0 +1,239 @@
+package matrix;
+
+import java.util.Arrays;
+
+/**
+ * Solves the least squares problem min ||phi_T * w - y|| on the support T through a Cholesky
+ * factorization L * L' of the Gram matrix phi_T' * phi_T. The support only changes by a few
+ * rows between iterations of the cosamp algorithm, so the factorization is kept from one solve
+ * to the next: rows that leave the support are deleted from it with a rank-1 update of the
+ * rows below, and rows that join are appended with a single forward substitution. A solve
+ * then costs O(m * |T|) for the right hand side plus O(|T|^2) for the substitutions, instead
+ * of forming the whole Gram matrix and running conjugate gradient on it.
+ * One of these is needed for every column being reconstructed.
+ */
+public class IncrementalCholesky {
+
+	//pivots smaller than this fraction of the column's squared length mean the column
+	//is (almost) a combination of the others, they are clamped so the solve stays finite
+	static final double MIN_PIVOT = 1e-12;
+
+	private final MeasurementOperator phiMatrix;
+	private final int numRows;
+
+	//the signal row of each column in the factorization, in the order they were added
+	private int[] supportRows;
+	//where each signal row is in the factorization, -1 if it isn't
+	private final int[] positions;
+	//the columns of phi in the factorization, stored column by column
+	private double[] columns;
+	//the lower triangular factor, stored row by row with capacity values per row
+	private double[] lower;
+	private int capacity;
+	private int size;
+
+	/**
+	 * @param phiMatrix - the measurement matrix every solve is against
+	 */
+	public IncrementalCholesky(MeasurementOperator phiMatrix){
+
+		this.phiMatrix = phiMatrix;
+		this.numRows = phiMatrix.rowSize();
+		this.positions = new int[phiMatrix.columnSize()];
+		Arrays.fill(positions, -1);
+		this.capacity = 0;
+		this.supportRows = new int[0];
+		this.columns = new double[0];
+		this.lower = new double[0];
+	}
+
+	/**
+	 * Update the factorization to the given support, then solve the least squares problem on it.
+	 *
+	 * @param support - the columns of phi to solve on
+	 * @param measurementMatrix - the measurements y, a column vector
+	 * @return a column vector with one value for each row in the support, in increasing order,
+	 * the same shape cgSolve gives back
+	 */
+	public ColumnMajorMatrix solve(SupportSet support, ColumnMajorMatrix measurementMatrix){
+
+		//removing from the end first keeps the positions that are still to be checked valid
+		for (int position = size - 1; position >= 0; position--) {
+			if(!support.contains(supportRows[position])){
+				remove(position);
+			}
+		}
+
+		int[] addedRows = new int[support.size()];
+		int numAdded = 0;
+		for (int index = 0; index < support.size(); index++) {
+			if(positions[support.getRow(index)] < 0){
+				addedRows[numAdded++] = support.getRow(index);
+			}
+		}
+		if(numAdded > 0){
+			//added rows are already in increasing order, so the gathered columns line up with them
+			ColumnMajorMatrix addedColumns = phiMatrix.gatherColumns(
+					SupportSet.fromRows(positions.length, Arrays.copyOf(addedRows, numAdded)));
+			for (int index = 0; index < numAdded; index++) {
+				append(addedRows[index], addedColumns.getValues(), index * numRows);
+			}
+		}
+
+		//solve L * L' * w = phi_T' * y
+		double[] y = measurementMatrix.getValues();
+		double[] solution = new double[size];
+		for (int position = 0; position < size; position++) {
+			solution[position] = dot(columns, position * numRows, y, 0);
+		}
+		forwardSubstitute(solution, size);
+		backSubstitute(solution, size);
+
+		ColumnMajorMatrix wMatrix = new ColumnMajorMatrix(support.size(), 1);
+		for (int index = 0; index < support.size(); index++) {
+			wMatrix.getValues()[index] = solution[positions[support.getRow(index)]];
+		}
+		return wMatrix;
+	}
+
+	/**
+	 * @return the number of columns in the factorization
+	 */
+	public int size(){
+		return size;
+	}
+
+	/**
+	 * Add a column of phi to the end of the factorization. The new row of L solves
+	 * L * z = phi_T' * a, and the new diagonal is whatever is left of a' * a.
+	 *
+	 * @param row - the signal row the column belongs to
+	 * @param values - holds the column of phi
+	 * @param offset - where the column starts in values
+	 */
+	private void append(int row, double[] values, int offset){
+
+		ensureCapacity(size + 1);
+		System.arraycopy(values, offset, columns, size * numRows, numRows);
+
+		int newRow = size * capacity;
+		for (int position = 0; position < size; position++) {
+			lower[newRow + position] = dot(columns, position * numRows, columns, size * numRows);
+		}
+		for (int position = 0; position < size; position++) {
+			double sum = lower[newRow + position];
+			int rowOffset = position * capacity;
+			for (int inner = 0; inner < position; inner++) {
+				sum -= lower[rowOffset + inner] * lower[newRow + inner];
+			}
+			lower[newRow + position] = sum / lower[rowOffset + position];
+		}
+
+		double squaredLength = dot(columns, size * numRows, columns, size * numRows);
+		double pivot = squaredLength;
+		for (int position = 0; position < size; position++) {
+			pivot -= lower[newRow + position] * lower[newRow + position];
+		}
+		pivot = Math.max(pivot, MIN_PIVOT * squaredLength);
+		lower[newRow + size] = pivot > 0 ? Math.sqrt(pivot) : 1;
+
+		supportRows[size] = row;
+		positions[row] = size;
+		size++;
+	}
+
+	/**
+	 * Delete a column from the factorization. Taking out row and column k of L leaves the
+	 * block below it short by l * l', where l is what was below the diagonal in column k,
+	 * so that block gets a rank-1 update with l.
+	 *
+	 * @param position - the position of the column in the factorization
+	 */
+	private void remove(int position){
+
+		double[] update = new double[size - position - 1];
+		for (int row = position + 1; row < size; row++) {
+			int fromOffset = row * capacity;
+			int toOffset = (row - 1) * capacity;
+			update[row - position - 1] = lower[fromOffset + position];
+			for (int column = 0; column <= row; column++) {
+				if(column != position){
+					lower[toOffset + (column > position ? column - 1 : column)] = lower[fromOffset + column];
+				}
+			}
+		}
+
+		for (int index = 0; index < update.length; index++) {
+			int diagonal = (position + index) * capacity + position + index;
+			double radius = Math.hypot(lower[diagonal], update[index]);
+			double cosine = radius / lower[diagonal];
+			double sine = update[index] / lower[diagonal];
+			lower[diagonal] = radius;
+			for (int below = index + 1; below < update.length; below++) {
+				int cell = (position + below) * capacity + position + index;
+				lower[cell] = (lower[cell] + sine * update[below]) / cosine;
+				update[below] = cosine * update[below] - sine * lower[cell];
+			}
+		}
+
+		positions[supportRows[position]] = -1;
+		for (int index = position + 1; index < size; index++) {
+			supportRows[index - 1] = supportRows[index];
+			positions[supportRows[index - 1]] = index - 1;
+		}
+		System.arraycopy(columns, (position + 1) * numRows, columns, position * numRows,
+				(size - position - 1) * numRows);
+		size--;
+	}
+
+	/**
+	 * Solve L * z = b in place.
+	 */
+	private void forwardSubstitute(double[] values, int length){
+
+		for (int row = 0; row < length; row++) {
+			int rowOffset = row * capacity;
+			double sum = values[row];
+			for (int column = 0; column < row; column++) {
+				sum -= lower[rowOffset + column] * values[column];
+			}
+			values[row] = sum / lower[rowOffset + row];
+		}
+	}
+
+	/**
+	 * Solve L' * w = z in place.
+	 */
+	private void backSubstitute(double[] values, int length){
+
+		for (int row = length - 1; row >= 0; row--) {
+			double sum = values[row];
+			for (int below = row + 1; below < length; below++) {
+				sum -= lower[below * capacity + row] * values[below];
+			}
+			values[row] = sum / lower[row * capacity + row];
+		}
+	}
+
+	private void ensureCapacity(int needed){
+
+		if(needed <= capacity){
+			return;
+		}
+
+		int newCapacity = Math.max(needed, 2 * capacity);
+		double[] newLower = new double[newCapacity * newCapacity];
+		for (int row = 0; row < size; row++) {
+			System.arraycopy(lower, row * capacity, newLower, row * newCapacity, row + 1);
+		}
+		lower = newLower;
+		columns = Arrays.copyOf(columns, newCapacity * numRows);
+		supportRows = Arrays.copyOf(supportRows, newCapacity);
+		capacity = newCapacity;
+	}
+
+	private double dot(double[] first, int firstOffset, double[] second, int secondOffset){
+
+		return VectorKernels.get().dot(first, firstOffset, second, secondOffset, numRows);
+	}
+}
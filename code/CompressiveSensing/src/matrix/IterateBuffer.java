@@ -0,0 +1,50 @@
+package matrix;
+
+/**
+ * The estimates of the cosamp algorithm, of which only the current one and the one before
+ * are ever looked at. Two sparse vectors take turns: each iteration writes into the older one,
+ * so nothing is allocated however many iterations are run. Before the first iteration both 
+ * hold the starting estimate of all zeros.
+ */
+public class IterateBuffer {
+
+	private final SparseVector[] slots;
+	private int current;
+
+	/**
+	 * @param length - the length of the signal
+	 */
+	public IterateBuffer(int length){
+
+		this.slots = new SparseVector[] {new SparseVector(length, 0), 
+				new SparseVector(length, 0)};
+		this.current = 0;
+	}
+
+	/**
+	 * @return the latest estimate
+	 */
+	public SparseVector getCurrent(){
+		return slots[current];
+	}
+
+	/**
+	 * @return the estimate before the latest one
+	 */
+	public SparseVector getPrevious(){
+		return slots[1 - current];
+	}
+
+	/**
+	 * Make the latest estimate the previous one, and hand back the other vector, cleared,
+	 * to hold the next estimate.
+	 *
+	 * @return the vector to write the next estimate into
+	 */
+	public SparseVector advance(){
+
+		current = 1 - current;
+		slots[current].clear();
+		return slots[current];
+	}
+}
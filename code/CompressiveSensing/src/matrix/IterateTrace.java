@@ -0,0 +1,86 @@
+package matrix;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+/**
+ * Writes every estimate of the cosamp algorithm for one column to a file, for debugging.
+ * Each line is the iteration number followed by the values of the estimate. The file is only
+ * created once the first estimate is written, and is closed when the column stops. If the file
+ * can't be written the trace reports it once and writes nothing more.
+ */
+public class IterateTrace {
+
+	private final File file;
+	private BufferedWriter writer;
+	private boolean failed;
+
+	/**
+	 * @param file - the file the estimates are written to, it is overwritten
+	 */
+	public IterateTrace(File file){
+		this.file = file;
+	}
+
+	/**
+	 * @return the file the estimates are written to
+	 */
+	public File getFile(){
+		return file;
+	}
+
+	/**
+	 * Add an estimate to the end of the file.
+	 *
+	 * @param iteration - the iteration that produced the estimate
+	 * @param estimate - the estimate
+	 */
+	public void write(int iteration, SparseVector estimate){
+
+		if(failed){
+			return;
+		}
+
+		try {
+			if(writer == null){
+				writer = new BufferedWriter(new FileWriter(file.getAbsoluteFile()));
+			}
+
+			writer.write(Integer.toString(iteration));
+			int position = 0;
+			for (int row = 0; row < estimate.getLength(); row++) {
+				double value = 0;
+				if(position < estimate.size() && estimate.getIndex(position) == row){
+					value = estimate.getValue(position++);
+				}
+				writer.write(' ');
+				writer.write(Double.toString(value));
+			}
+			writer.newLine();
+
+		} catch (IOException e) {
+			e.printStackTrace();
+			failed = true;
+			close();
+		}
+	}
+
+	/**
+	 * Finish the file.
+	 */
+	public void close(){
+
+		if(writer == null){
+			return;
+		}
+
+		try {
+			writer.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		writer = null;
+	}
+}
@@ -0,0 +1,32 @@
+package matrix;
+
+/**
+ * The diagonal of phi_T' * phi_T, which is the squared length of every column on the support.
+ * Dividing by it evens out columns of different lengths.
+ */
+public class JacobiPreconditioner implements Preconditioner {
+
+	private final double[] inverseDiagonal;
+
+	/**
+	 * @param slicedPhiMatrix - the columns of phi on the support
+	 */
+	public JacobiPreconditioner(ColumnMajorMatrix slicedPhiMatrix){
+
+		int numRows = slicedPhiMatrix.rowSize();
+		double[] values = slicedPhiMatrix.getValues();
+		inverseDiagonal = new double[slicedPhiMatrix.columnSize()];
+		for (int column = 0; column < inverseDiagonal.length; column++) {
+			double sum = VectorKernels.get().squaredNorm(values, column * numRows, numRows);
+			//a zero column can't be scaled, leave it alone
+			inverseDiagonal[column] = sum > 0 ? 1 / sum : 1;
+		}
+	}
+
+	@Override
+	public void solve(double[] r, double[] result){
+		for (int index = 0; index < inverseDiagonal.length; index++) {
+			result[index] = r[index] * inverseDiagonal[index];
+		}
+	}
+}
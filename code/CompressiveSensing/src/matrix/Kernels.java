@@ -0,0 +1,25 @@
+package matrix;
+
+/**
+ * The loops VectorKernels is made of, so a version of them kept outside this source folder,
+ * such as the Vector API one in the vector folder, can stand in for VectorKernels.VECTOR.
+ * See VectorKernels for what each loop does.
+ */
+interface Kernels {
+
+	public double dot(double[] x, int xOffset, double[] y, int yOffset, int length);
+
+	public void axpy(double alpha, double[] x, int xOffset, double[] y, int yOffset, int length);
+
+	public void scaledAdd(double[] x, int xOffset, double beta, double[] y, int yOffset, int length);
+
+	public double squaredNorm(double[] x, int offset, int length);
+
+	public double absMax(double[] x, int offset, int length);
+
+	public void gemvRows(double[] a, int numRows, int startRow, int endRow, int numColumns,
+			double[] x, double[] result);
+
+	public void gemvTranspose(double[] a, int aOffset, int numRows, int numColumns, double[] r,
+			int rOffset, double[] result, int resultOffset);
+}
@@ -0,0 +1,21 @@
+package matrix;
+
+/**
+ * The ways the cosamp algorithm can solve the least squares problem on the merged support.
+ */
+public enum LeastSquaresMethod {
+
+	/**
+	 * Run cgSolve on the normal equations phi_T' * phi_T w = phi_T' * y of the support, 
+	 * applied through NormalEquations without forming phi_T' * phi_T, or gathered from a 
+	 * GramStore when the measurement matrix has one. It starts from the solution of the last 
+	 * iteration unless Signal.setWarmStart(false), which starts from zero like cosamp.m
+	 */
+	CONJUGATE_GRADIENT,
+
+	/**
+	 * Keep a Cholesky factorization of the Gram matrix that is updated as rows enter and 
+	 * leave the support (IncrementalCholesky), and solve with it exactly
+	 */
+	CHOLESKY
+}
@@ -0,0 +1,26 @@
+package matrix;
+
+/**
+ * Anything that can be multiplied by a vector. cgSolve only ever needs A * d, so it takes one
+ * of these instead of the matrix A itself, and A never has to be formed.
+ */
+public interface LinearOperator {
+
+	/**
+	 * @return the length of the vectors the operator gives back
+	 */
+	public int rowSize();
+
+	/**
+	 * @return the length of the vectors the operator takes
+	 */
+	public int columnSize();
+
+	/**
+	 * A * x
+	 * 
+	 * @param x - a vector with columnSize() values
+	 * @param result - filled with the rowSize() values of the product
+	 */
+	public void times(double[] x, double[] result);
+}
@@ -0,0 +1,450 @@
+package matrix;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads and writes matrices in a compact binary format, so a matrix that is used on every run
+ * only has to be parsed from text once. Everything is little endian. A 32 byte header holds
+ *
+ *   0  the magic number, the bytes "CSMX"
+ *   4  the version of the format, 1
+ *   8  the type of the values, 1 for 64 bit doubles
+ *   9  the layout, 0 for dense column major and 1 for compressed sparse columns (CSC)
+ *  12  the number of rows
+ *  16  the number of columns
+ *  24  the number of values stored in a CSC file, 0 for a dense one
+ *
+ * A dense file is followed by every value, column by column. A CSC file is followed by the
+ * number of columns + 1 column pointers (ints), the row of every stored value (ints), padding
+ * up to a multiple of 8 bytes and then the stored values, so a column's values run from its
+ * pointer up to the next column's.
+ *
+ * Files are read through FileChannel.map(), so the values go from the page cache into the
+ * matrix with a single bulk copy and nothing is parsed. A CSC file can be read as a
+ * SparseColumnMatrix, without ever writing out the zeros, and a dense file can be mapped as an
+ * OffHeapMatrix, without copying the values at all.
+ */
+public class MatrixFile {
+
+	static final int HEADER_SIZE = 32;
+	private static final int MAGIC = 'C' | 'S' << 8 | 'M' << 16 | 'X' << 24;
+	private static final int VERSION = 1;
+	private static final byte FLOAT_64 = 1;
+	private static final byte DENSE = 0;
+	private static final byte SPARSE_COLUMNS = 1;
+
+	//the most bytes mapped or written at once
+	private static final int CHUNK_SIZE = 1 << 30;
+	private static final int WRITE_BUFFER_SIZE = 1 << 16;
+
+	private MatrixFile(){
+	}
+
+	/**
+	 * @param file
+	 * @return true if the file starts with the magic number of the format
+	 */
+	public static boolean isMatrixFile(File file){
+
+		if(!file.isFile() || file.length() < HEADER_SIZE){
+			return false;
+		}
+		try{
+			RandomAccessFile in = new RandomAccessFile(file, "r");
+			try{
+				return Integer.reverseBytes(in.readInt()) == MAGIC;
+			}
+			finally{
+				in.close();
+			}
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Read a matrix written by write(), a CSC file comes back as a dense matrix.
+	 *
+	 * @param file
+	 * @return the matrix
+	 * @throws IOException if the file can't be read or isn't a matrix file
+	 */
+	public static ColumnMajorMatrix read(File file) throws IOException{
+
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try{
+			FileChannel channel = in.getChannel();
+			Header header = new Header(channel, file);
+			if(header.layout == SPARSE_COLUMNS){
+				return readSparseColumns(channel, header, file).toColumnMajorMatrix();
+			}
+			if((long) header.numRows * header.numColumns > Integer.MAX_VALUE){
+				throw new IOException(file + " holds a " + header.numRows + " x " + header.numColumns
+						+ " matrix, which doesn't fit in an array, map() it instead");
+			}
+			ColumnMajorMatrix matrix = new ColumnMajorMatrix(header.numRows, header.numColumns);
+			checkSize(channel, HEADER_SIZE + 8L * matrix.getValues().length, file);
+			readDoubles(channel, HEADER_SIZE, matrix.getValues());
+			return matrix;
+		}
+		finally{
+			in.close();
+		}
+	}
+
+	/**
+	 * Read a matrix written by write() as compressed sparse columns. A CSC file is read
+	 * without ever writing out the zeros, a dense one is read in full first.
+	 *
+	 * @param file
+	 * @return the matrix
+	 * @throws IOException if the file can't be read or isn't a matrix file
+	 */
+	public static SparseColumnMatrix readSparse(File file) throws IOException{
+
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try{
+			FileChannel channel = in.getChannel();
+			Header header = new Header(channel, file);
+			if(header.layout == SPARSE_COLUMNS){
+				return readSparseColumns(channel, header, file);
+			}
+		}
+		finally{
+			in.close();
+		}
+		return SparseColumnMatrix.fromColumnMajor(read(file));
+	}
+
+	/**
+	 * Map a dense file straight into an off-heap matrix, so nothing is copied onto the heap and
+	 * the values are read from the page cache as they are needed. The mapping lasts until the
+	 * matrix or its arena is closed.
+	 *
+	 * @param file
+	 * @param writable - true if changes to the matrix should be written to the file, otherwise
+	 * changing it throws a ReadOnlyBufferException
+	 * @param arena - the arena that owns the mapping
+	 * @return the mapped matrix
+	 * @throws IOException if the file can't be read or isn't a dense matrix file
+	 */
+	public static OffHeapMatrix map(File file, boolean writable, OffHeapArena arena) throws IOException{
+
+		RandomAccessFile in = new RandomAccessFile(file, writable ? "rw" : "r");
+		try{
+			FileChannel channel = in.getChannel();
+			Header header = new Header(channel, file);
+			if(header.layout != DENSE){
+				throw new IOException(file + " holds compressed sparse columns, only a dense file can be mapped");
+			}
+			checkSize(channel, denseSize(header.numRows, header.numColumns), file);
+			return arena.add(header.numRows, header.numColumns, 
+					mapColumns(channel, writable, header.numRows, header.numColumns));
+		}
+		finally{
+			in.close();
+		}
+	}
+
+	/**
+	 * Create a dense file of zeros and map it into an off-heap matrix, so a matrix can be
+	 * filled in place and kept for later runs without ever being held on the heap.
+	 *
+	 * @param file - overwritten if it already exists
+	 * @param numRows - number of rows in the matrix
+	 * @param numColumns - number of columns in the matrix
+	 * @param arena - the arena that owns the mapping
+	 * @return the mapped matrix, changes to it are written to the file
+	 * @throws IOException
+	 */
+	public static OffHeapMatrix create(File file, int numRows, int numColumns, OffHeapArena arena) 
+			throws IOException{
+
+		RandomAccessFile out = new RandomAccessFile(file, "rw");
+		try{
+			out.setLength(0);
+			FileChannel channel = out.getChannel();
+			drain(channel, header(DENSE, numRows, numColumns, 0));
+			out.setLength(denseSize(numRows, numColumns));
+			return arena.add(numRows, numColumns, mapColumns(channel, true, numRows, numColumns));
+		}
+		finally{
+			out.close();
+		}
+	}
+
+	/**
+	 * Write a matrix in whichever layout makes the smaller file.
+	 *
+	 * @param file
+	 * @param matrix
+	 * @throws IOException
+	 */
+	public static void write(File file, ColumnMajorMatrix matrix) throws IOException{
+
+		SparseColumnMatrix sparse = SparseColumnMatrix.fromColumnMajor(matrix);
+		if(sparseSize(sparse) < denseSize(matrix.rowSize(), matrix.columnSize())){
+			writeSparse(file, sparse);
+		}
+		else{
+			writeDense(file, matrix);
+		}
+	}
+
+	/**
+	 * Write a matrix in whichever layout makes the smaller file.
+	 *
+	 * @param file
+	 * @param matrix
+	 * @throws IOException
+	 */
+	public static void write(File file, SparseColumnMatrix matrix) throws IOException{
+
+		if(sparseSize(matrix) < denseSize(matrix.rowSize(), matrix.columnSize())){
+			writeSparse(file, matrix);
+		}
+		else{
+			writeDense(file, matrix.toColumnMajorMatrix());
+		}
+	}
+
+	/**
+	 * Write a matrix.
+	 *
+	 * @param file
+	 * @param matrix
+	 * @param sparse - true to only store the nonzero values (CSC), false to store every value
+	 * @throws IOException
+	 */
+	public static void write(File file, ColumnMajorMatrix matrix, boolean sparse) throws IOException{
+
+		if(sparse){
+			writeSparse(file, SparseColumnMatrix.fromColumnMajor(matrix));
+		}
+		else{
+			writeDense(file, matrix);
+		}
+	}
+
+	private static void writeDense(File file, ColumnMajorMatrix matrix) throws IOException{
+
+		double[] values = matrix.getValues();
+		RandomAccessFile out = new RandomAccessFile(file, "rw");
+		try{
+			out.setLength(0);
+			FileChannel channel = out.getChannel();
+			ByteBuffer buffer = header(DENSE, matrix.rowSize(), matrix.columnSize(), 0);
+			int index = 0;
+			while(index < values.length){
+				if(buffer.remaining() < 8){
+					drain(channel, buffer);
+				}
+				int length = Math.min(values.length - index, buffer.remaining() / 8);
+				buffer.asDoubleBuffer().put(values, index, length);
+				buffer.position(buffer.position() + 8 * length);
+				index += length;
+			}
+			drain(channel, buffer);
+		}
+		finally{
+			out.close();
+		}
+	}
+
+	private static void writeSparse(File file, SparseColumnMatrix matrix) throws IOException{
+
+		int numStored = matrix.getNonzeroCount();
+		RandomAccessFile out = new RandomAccessFile(file, "rw");
+		try{
+			out.setLength(0);
+			FileChannel channel = out.getChannel();
+			ByteBuffer buffer = header(SPARSE_COLUMNS, matrix.rowSize(), matrix.columnSize(), numStored);
+			putInts(channel, buffer, matrix.getColumnPointers(), matrix.columnSize() + 1);
+			putInts(channel, buffer, matrix.getRowIndices(), numStored);
+			if(buffer.remaining() < 8){
+				drain(channel, buffer);
+			}
+			while((channel.position() + buffer.position()) % 8 != 0){
+				buffer.put((byte) 0);
+			}
+			double[] values = matrix.getValues();
+			for (int index = 0; index < numStored; index++) {
+				if(buffer.remaining() < 8){
+					drain(channel, buffer);
+				}
+				buffer.putDouble(values[index]);
+			}
+			drain(channel, buffer);
+		}
+		finally{
+			out.close();
+		}
+	}
+
+	/**
+	 * @return a buffer for writing a file, holding its header
+	 */
+	private static ByteBuffer header(byte layout, int numRows, int numColumns, long numStored){
+
+		ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(MAGIC).putInt(VERSION).put(FLOAT_64).put(layout).putShort((short) 0)
+				.putInt(numRows).putInt(numColumns).putInt(0).putLong(numStored);
+		return buffer;
+	}
+
+	private static void putInts(FileChannel channel, ByteBuffer buffer, int[] values, int length) 
+			throws IOException{
+
+		for (int index = 0; index < length; index++) {
+			if(buffer.remaining() < 4){
+				drain(channel, buffer);
+			}
+			buffer.putInt(values[index]);
+		}
+	}
+
+	/**
+	 * Copy the column pointers, rows and values of a CSC file out of the mapped file,
+	 * checking that they describe a matrix of the size in the header.
+	 */
+	private static SparseColumnMatrix readSparseColumns(FileChannel channel, Header header, File file) 
+			throws IOException{
+
+		int numRows = header.numRows;
+		int numColumns = header.numColumns;
+		long numStored = header.numStored;
+		long pointersSize = 4L * (numColumns + 1);
+		long rowsSize = 4L * numStored;
+		long valuesStart = HEADER_SIZE + pointersSize + rowsSize;
+		valuesStart += (8 - valuesStart % 8) % 8;
+		if(numStored < 0 || numStored > (long) numRows * numColumns || 8 * numStored > CHUNK_SIZE){
+			throw new IOException(file + " stores " + numStored + " values, which can't be read");
+		}
+		checkSize(channel, valuesStart + 8 * numStored, file);
+
+		int[] columnPointers = new int[numColumns + 1];
+		int[] rowIndices = new int[(int) numStored];
+		double[] values = new double[(int) numStored];
+		map(channel, HEADER_SIZE, pointersSize).asIntBuffer().get(columnPointers);
+		map(channel, HEADER_SIZE + pointersSize, rowsSize).asIntBuffer().get(rowIndices);
+		map(channel, valuesStart, 8 * numStored).asDoubleBuffer().get(values);
+
+		if(columnPointers[0] != 0 || columnPointers[numColumns] != numStored){
+			throw new IOException(file + " has column pointers that don't match its " + numStored + " values");
+		}
+		for (int column = 0; column < numColumns; column++) {
+			int start = columnPointers[column];
+			int end = columnPointers[column + 1];
+			if(end < start || end > numStored){
+				throw new IOException(file + " has a bad pointer for column " + column);
+			}
+			for (int position = start; position < end; position++) {
+				int row = rowIndices[position];
+				if(row < 0 || row >= numRows || (position > start && row <= rowIndices[position - 1])){
+					throw new IOException(file + " has row " + row + " out of order in column " + column);
+				}
+			}
+		}
+		return new SparseColumnMatrix(numRows, numColumns, columnPointers, rowIndices, values);
+	}
+
+	/**
+	 * Fill the array with the doubles starting at the given position of the file, mapping at
+	 * most CHUNK_SIZE bytes at a time.
+	 */
+	private static void readDoubles(FileChannel channel, long position, double[] values) throws IOException{
+
+		int offset = 0;
+		while(offset < values.length){
+			int length = Math.min(values.length - offset, CHUNK_SIZE / 8);
+			map(channel, position + 8L * offset, 8L * length).asDoubleBuffer().get(values, offset, length);
+			offset += length;
+		}
+	}
+
+	/**
+	 * Map the values of a dense file in the chunks of whole columns an OffHeapMatrix is made of.
+	 */
+	private static ByteBuffer[] mapColumns(FileChannel channel, boolean writable, int numRows, int numColumns) 
+			throws IOException{
+
+		FileChannel.MapMode mode = writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY;
+		long[] sizes = OffHeapMatrix.chunkSizes(numRows, numColumns);
+		ByteBuffer[] regions = new ByteBuffer[sizes.length];
+		long position = HEADER_SIZE;
+		for (int chunk = 0; chunk < sizes.length; chunk++) {
+			regions[chunk] = channel.map(mode, position, sizes[chunk]).order(ByteOrder.LITTLE_ENDIAN);
+			position += sizes[chunk];
+		}
+		return regions;
+	}
+
+	private static ByteBuffer map(FileChannel channel, long position, long size) throws IOException{
+		return channel.map(FileChannel.MapMode.READ_ONLY, position, size).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	private static void checkSize(FileChannel channel, long size, File file) throws IOException{
+
+		if(channel.size() < size){
+			throw new IOException(file + " has " + channel.size() + " bytes, expected " + size);
+		}
+	}
+
+	private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException{
+
+		buffer.flip();
+		while(buffer.hasRemaining()){
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	private static long denseSize(int numRows, int numColumns){
+		return HEADER_SIZE + 8L * numRows * numColumns;
+	}
+
+	private static long sparseSize(SparseColumnMatrix matrix){
+		return HEADER_SIZE + 4L * (matrix.columnSize() + 1) + 12L * matrix.getNonzeroCount() + 7;
+	}
+
+	/**
+	 * The header of a file, checked as it is read.
+	 */
+	private static class Header {
+
+		final byte layout;
+		final int numRows;
+		final int numColumns;
+		final long numStored;
+
+		Header(FileChannel channel, File file) throws IOException{
+
+			if(channel.size() < HEADER_SIZE){
+				throw new IOException(file + " is too short to be a matrix file");
+			}
+			ByteBuffer header = map(channel, 0, HEADER_SIZE);
+			if(header.getInt(0) != MAGIC){
+				throw new IOException(file + " is not a matrix file");
+			}
+			if(header.getInt(4) != VERSION || header.get(8) != FLOAT_64){
+				throw new IOException(file + " has version " + header.getInt(4) + " and value type "
+						+ header.get(8) + ", only version " + VERSION + " with doubles can be read");
+			}
+			layout = header.get(9);
+			numRows = header.getInt(12);
+			numColumns = header.getInt(16);
+			numStored = header.getLong(24);
+			if(layout != DENSE && layout != SPARSE_COLUMNS){
+				throw new IOException(file + " has unknown layout " + layout);
+			}
+			if(numRows < 0 || numColumns < 0){
+				throw new IOException(file + " holds a " + numRows + " x " + numColumns + " matrix");
+			}
+		}
+	}
+}
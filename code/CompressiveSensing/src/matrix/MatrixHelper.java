@@ -1,10 +1,10 @@
 package matrix;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
@@ -25,6 +25,9 @@ import org.apache.mahout.math.SparseMatrix;
 
 public class MatrixHelper {
 
+	/** the increment of the SplitMix64 generator, 2^64 divided by the golden ratio */
+	public static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
 	/**
 	 * Create an identity matrix based on the given dimensions.
 	 * 
@@ -151,6 +154,85 @@ public class MatrixHelper {
 		return randomMatrix;
 	}
 
+	/**
+	 * Same as randN(Matrix) for a dense column major matrix.
+	 * 
+	 * @param randomMatrix - this matrix with be filled with Gaussian random numbers
+	 * @param rand - the random number generator to draw from
+	 * @return a matrix containing pseudorandom values drawn from the 
+	 * standard normal distribution. 
+	 */
+	public static ColumnMajorMatrix randN(ColumnMajorMatrix randomMatrix, Random rand){
+
+		double[] values = randomMatrix.getValues();
+		for (int row = 0; row < randomMatrix.rowSize(); row++) {
+			for (int column = 0; column < randomMatrix.columnSize(); column++) {
+				//fill in row order so a seeded generator produces the same matrix as randN(Matrix)
+				values[column * randomMatrix.rowSize() + row] = rand.nextGaussian();
+			}
+		}
+
+		return randomMatrix;
+	}
+
+	/**
+	 * Create a Gaussian random measurement matrix, scaled by 1 / sqrt(numRows) so the columns
+	 * have a length of about 1. The same seed always gives the same matrix.
+	 * 
+	 * @param numRows - the number of measurements
+	 * @param numColumns - the length of the signal
+	 * @param seed - seed for the random number generator
+	 * @return the measurement matrix
+	 */
+	public static ColumnMajorMatrix gaussianMeasurements(int numRows, int numColumns, long seed){
+
+		ColumnMajorMatrix gaussDistMatrix = randN(new ColumnMajorMatrix(numRows, numColumns), 
+				new Random(seed));
+		return gaussDistMatrix.times(1 / Math.sqrt(numRows));
+	}
+
+	/**
+	 * Same as gaussianMeasurements(int, int, long), with the matrix stored off the heap.
+	 * The values are drawn in the same order as randN() and scaled the same way as 
+	 * ColumnMajorMatrix.times(double), so the same seed gives exactly the same matrix.
+	 * 
+	 * @param numRows - the number of measurements
+	 * @param numColumns - the length of the signal
+	 * @param seed - seed for the random number generator
+	 * @param arena - the arena the matrix is allocated from
+	 * @return the measurement matrix
+	 */
+	public static OffHeapMatrix gaussianMeasurements(int numRows, int numColumns, long seed, 
+			OffHeapArena arena){
+
+		OffHeapMatrix gaussDistMatrix = arena.allocate(numRows, numColumns);
+		Random rand = new Random(seed);
+		double scale = 1 / Math.sqrt(numRows);
+		for (int row = 0; row < numRows; row++) {
+			for (int column = 0; column < numColumns; column++) {
+				gaussDistMatrix.set(row, column, rand.nextGaussian() * scale);
+			}
+		}
+		return gaussDistMatrix;
+	}
+
+	/**
+	 * The SplitMix64 finalizer. Scrambles the bits of a value so that values that are close
+	 * together (such as a seed plus a column number) end up unrelated.
+	 * Stepping a counter by GOLDEN_GAMMA and mixing each step gives a random number
+	 * generator whose nth value can be computed directly.
+	 * 
+	 * @param value
+	 * @return the mixed value
+	 */
+	public static long mix64(long value){
+
+		long z = value;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
 	/**
 	 * This function handles the following line from Matlab:  x(v(1:K)) = randn(K,1).
 	 * x is the zeroMatrix, v is our randomMatrix, the right side of the equation is the gaussMatrix.
@@ -208,12 +290,25 @@ public class MatrixHelper {
 		double sum = 0;
 		for(int i = 0; i < mtrx.rowSize(); i++){
 			for(int j = 0; j < mtrx.columnSize(); j++){
-				sum += Math.pow(mtrx.get(i, j), 2);
+				double value = mtrx.get(i, j);
+				sum += value * value;
 			}
 		}
 		return Math.sqrt(sum);
 	}
 
+	/**
+	 * Same as norm(Matrix) for a dense column major matrix.
+	 * 
+	 * @param mtrx
+	 * @return the square root of the sum of the squares of all values in the matrix
+	 */
+	public static double norm(ColumnMajorMatrix mtrx){
+
+		double[] values = mtrx.getValues();
+		return Math.sqrt(VectorKernels.get().squaredNorm(values, 0, values.length));
+	}
+
 	/**
 	 * Takes the values from the first column in currentMatrix and sets the values
 	 * in the given column of the finalMatrix to those values.
@@ -233,6 +328,23 @@ public class MatrixHelper {
 		return finalMatrix;
 	}
 
+	/**
+	 * Same as fillColumn(Matrix, Matrix, int) for dense column major matrices.
+	 * 
+	 * @param finalMatrix - a column in this matrix will be filled with values from currentMatrix
+	 * @param currentMatrix - values from the first column of this matrix are copied
+	 * @param colNum - the column in finalMatrix that should be filled
+	 * @return the new matrix with the modified column
+	 */
+	public static ColumnMajorMatrix fillColumn(ColumnMajorMatrix finalMatrix, 
+			ColumnMajorMatrix currentMatrix, int colNum){
+
+		System.arraycopy(currentMatrix.getValues(), 0, finalMatrix.getValues(), 
+				colNum * finalMatrix.rowSize(), currentMatrix.rowSize());
+
+		return finalMatrix;
+	}
+
 	/**
 	 * Get the specific column from the given matrix.
 	 * 
@@ -252,6 +364,21 @@ public class MatrixHelper {
 		return tempMatrix;
 	}
 
+	/**
+	 * Same as getColumn(Matrix, int) for a dense column major matrix.
+	 * 
+	 * @param mtrx - retrieve the column from this matrix
+	 * @param columnNum - the column number to retrieve
+	 * @return the column vector
+	 */
+	public static ColumnMajorMatrix getColumn(ColumnMajorMatrix mtrx, int columnNum){
+
+		ColumnMajorMatrix tempMatrix = new ColumnMajorMatrix(mtrx.rowSize(), 1);
+		System.arraycopy(mtrx.getValues(), columnNum * mtrx.rowSize(), tempMatrix.getValues(), 
+				0, mtrx.rowSize());
+		return tempMatrix;
+	}
+
 	/**
 	 * Modify the given column of the originalMatrix to match the values in mtrx, which is a column vector
 	 * 
@@ -286,14 +413,23 @@ public class MatrixHelper {
 		int numColumns = signalMatrix.columnSize();
 
 		//loop through each cell in the matrix and print its value
-		for (int row = 0; row < numRows; row++) {
-			System.out.print("ROW " + (row+1) + " = ");
-			for (int column = 0; column < numColumns; column++) {
-				System.out.print(signalMatrix.get(row,column) + " "); // bounds check
+		MatrixWriter writer = new MatrixWriter(System.out);
+		try {
+			for (int row = 0; row < numRows; row++) {
+				writer.write("ROW ");
+				writer.write(row + 1);
+				writer.write(" = ");
+				for (int column = 0; column < numColumns; column++) {
+					writer.write(signalMatrix.get(row,column)); // bounds check
+					writer.write(' ');
+				}
+				writer.newLine();
 			}
-			System.out.println();
+			writer.newLine();
+			writer.flush();
+		} catch (IOException e) {
+			e.printStackTrace();
 		}
-		System.out.println();
 	}
 
 	/**
@@ -308,8 +444,7 @@ public class MatrixHelper {
 
 			File file = new File(fileName);
 
-			FileWriter fw = new FileWriter(file.getAbsoluteFile());
-			BufferedWriter bw = new BufferedWriter(fw);
+			MatrixWriter writer = new MatrixWriter(new FileOutputStream(file.getAbsoluteFile()));
 
 			//get the dimensions of the matrix
 			int numRows = signalMatrix.rowSize();
@@ -318,13 +453,30 @@ public class MatrixHelper {
 			//loop through each cell in the matrix and write its value
 			for (int row = 0; row < numRows; row++) {
 				for (int column = 0; column < numColumns; column++) {
-					bw.write(signalMatrix.get(row,column) + " "); 
+					writer.write(signalMatrix.get(row,column));
+					writer.write(' ');
 				}
-				bw.newLine();
+				writer.newLine();
 			}
-			bw.newLine();
-			bw.close();
+			writer.newLine();
+			writer.close();
+
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Write a given matrix to a file in the binary format of MatrixFile, which can be read 
+	 * back without parsing it. Only the nonzero values are written if that is smaller.
+	 * 
+	 * @param fileName - name of file that the matrix will be written to
+	 * @param signalMatrix - the matrix that will be added to the file
+	 */
+	public static void writeToBinaryFile(String fileName, Matrix signalMatrix){
 
+		try {
+			MatrixFile.write(new File(fileName).getAbsoluteFile(), ColumnMajorMatrix.fromMatrix(signalMatrix));
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
@@ -359,6 +511,19 @@ public class MatrixHelper {
 
 	}
 
+	/**
+	 * Same as toSingleColumn(Matrix) for a dense column major matrix.
+	 * The values are already stored one column after another, so the new column vector
+	 * shares the values of the original matrix instead of copying them.
+	 * 
+	 * @param mtrx - the matrix that will be viewed as a single column vector
+	 * @return the column vector
+	 */
+	public static ColumnMajorMatrix toSingleColumn(ColumnMajorMatrix mtrx){
+
+		return new ColumnMajorMatrix(mtrx.rowSize() * mtrx.columnSize(), 1, mtrx.getValues());
+	}
+
 	/**
 	 * Converts each element in the matrix to its absolute value.
 	 * Similar to Matlab's abs(x) function.
@@ -380,6 +545,22 @@ public class MatrixHelper {
 		return mtrx;
 	}
 
+	/**
+	 * Same as getAbsMatrix(Matrix) for a dense column major matrix.
+	 * 
+	 * @param mtrx - will get the absolute values of this matrix
+	 * @return a matrix with the absolute values of all the numbers in the parameter
+	 */
+	public static ColumnMajorMatrix getAbsMatrix(ColumnMajorMatrix mtrx){
+
+		double[] values = mtrx.getValues();
+		for (int index = 0; index < values.length; index++) {
+			values[index] = Math.abs(values[index]);
+		}
+
+		return mtrx;
+	}
+
 	/**
 	 * Same at Matlab's sort(matrix, 'descending').
 	 * Sorts the elements in the specified direction, depending on the value of mode (i.e descending).
@@ -426,6 +607,132 @@ public class MatrixHelper {
 		return matrixList;
 	}
 
+	/**
+	 * Finds the rows of the k largest values in a column vector, without sorting the whole vector.
+	 * This gives the same rows as taking the first k rows of the index matrix from 
+	 * sortDescending(), but uses quickselect so it runs in linear time on average.
+	 * Equal values are ordered by row number so the result is always the same for the same input.
+	 * 
+	 * @param values - the values of the column vector
+	 * @param k - the number of rows to return
+	 * @return the rows (starting at 0) of the k largest values, largest value first
+	 */
+	public static int[] topIndices(double[] values, int k){
+
+		int[] order = new int[values.length];
+		k = topIndices(values, values.length, k, order);
+		return Arrays.copyOf(order, k);
+	}
+
+	/**
+	 * Same as topIndices(double[], int) on the first length values, without creating 
+	 * anything. The rows are left at the start of order.
+	 * 
+	 * @param values - the values of the column vector, only the first length are looked at
+	 * @param length - the number of values to look at
+	 * @param k - the number of rows to find
+	 * @param order - working space with room for length rows, filled with the rows of the 
+	 * k largest values first, largest value first
+	 * @return the number of rows found, k unless there are fewer than k values
+	 */
+	public static int topIndices(double[] values, int length, int k, int[] order){
+
+		for (int index = 0; index < length; index++) {
+			order[index] = index;
+		}
+
+		k = Math.max(0, Math.min(k, length));
+		if(k > 0 && k < length){
+			quickSelect(values, order, 0, length - 1, k - 1);
+		}
+		quickSort(values, order, 0, k - 1);
+
+		return k;
+	}
+
+	/**
+	 * The order used by topIndices(). A row comes first if its value is larger, 
+	 * or if the values are equal and its row number is smaller.
+	 */
+	private static boolean comesBefore(double[] values, int first, int second){
+
+		int comparison = Double.compare(values[first], values[second]);
+		return comparison > 0 || (comparison == 0 && first < second);
+	}
+
+	/**
+	 * Rearrange order[low..high] so the row that belongs at position target is there, 
+	 * every row before it comes before it and every row after it comes after it.
+	 */
+	private static void quickSelect(double[] values, int[] order, int low, int high, int target){
+
+		while(low < high){
+			int pivot = partition(values, order, low, high);
+			if(pivot == target){
+				return;
+			}
+			else if(pivot < target){
+				low = pivot + 1;
+			}
+			else{
+				high = pivot - 1;
+			}
+		}
+	}
+
+	private static void quickSort(double[] values, int[] order, int low, int high){
+
+		while(low < high){
+			int pivot = partition(values, order, low, high);
+			//recurse on the smaller side so the stack stays shallow
+			if(pivot - low < high - pivot){
+				quickSort(values, order, low, pivot - 1);
+				low = pivot + 1;
+			}
+			else{
+				quickSort(values, order, pivot + 1, high);
+				high = pivot - 1;
+			}
+		}
+	}
+
+	/**
+	 * Partition order[low..high] around the median of the first, middle and last rows.
+	 * 
+	 * @return the final position of the pivot
+	 */
+	private static int partition(double[] values, int[] order, int low, int high){
+
+		int middle = (low + high) >>> 1;
+		if(comesBefore(values, order[middle], order[low])){
+			swap(order, low, middle);
+		}
+		if(comesBefore(values, order[high], order[low])){
+			swap(order, low, high);
+		}
+		if(comesBefore(values, order[high], order[middle])){
+			swap(order, middle, high);
+		}
+		//move the median to the end and use it as the pivot
+		swap(order, middle, high);
+		int pivot = order[high];
+
+		int store = low;
+		for (int index = low; index < high; index++) {
+			if(comesBefore(values, order[index], pivot)){
+				swap(order, index, store++);
+			}
+		}
+		swap(order, store, high);
+		return store;
+	}
+
+	private static void swap(int[] order, int first, int second){
+		int temp = order[first];
+		order[first] = order[second];
+		order[second] = temp;
+	}
+
 	/**
 	 * Check each cell in the matrix to see if it equals the test value.
 	 * 1 if not equal, 0 if equal.
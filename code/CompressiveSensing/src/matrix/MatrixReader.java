@@ -0,0 +1,146 @@
+package matrix;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads a matrix written as text, one row per line with the values separated by tabs or
+ * spaces, the way the signal files and MatrixHelper.writeToFile() lay them out. The text is
+ * read into a byte buffer that is reused for every line, and the values are parsed straight
+ * out of it with DoubleText.parse(), so reading a value doesn't make any objects.
+ */
+public class MatrixReader {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final InputStream in;
+	private byte[] buffer = new byte[BUFFER_SIZE];
+	//bytes up to limit have been read from the stream
+	private int limit;
+	private boolean endOfStream;
+	//the current line runs from the position of the next value up to lineEnd
+	private int position;
+	private int lineEnd = -1;
+
+	/**
+	 * @param in - the text, closed by close()
+	 */
+	public MatrixReader(InputStream in){
+		this.in = in;
+	}
+
+	/**
+	 * Move on to the next line.
+	 *
+	 * @return false if there are no lines left
+	 * @throws IOException
+	 */
+	public boolean nextLine() throws IOException{
+
+		int start = Math.min(lineEnd + 1, limit);
+		int end = indexOfNewLine(start);
+		while(end < 0 && !endOfStream){
+			//move the start of the line to the front, making room if it fills the whole buffer
+			int length = limit - start;
+			if(length == buffer.length){
+				byte[] larger = new byte[2 * buffer.length];
+				System.arraycopy(buffer, start, larger, 0, length);
+				buffer = larger;
+			}
+			else{
+				System.arraycopy(buffer, start, buffer, 0, length);
+			}
+			start = 0;
+			limit = length;
+			int read = in.read(buffer, limit, buffer.length - limit);
+			if(read < 0){
+				endOfStream = true;
+			}
+			else{
+				limit += read;
+			}
+			end = indexOfNewLine(length);
+		}
+
+		if(end < 0){
+			if(start == limit){
+				position = limit;
+				lineEnd = limit;
+				return false;
+			}
+			//the last line doesn't end with a new line
+			end = limit;
+		}
+		position = start;
+		lineEnd = end;
+		return true;
+	}
+
+	/**
+	 * @return true if there is another value on the current line
+	 */
+	public boolean hasNextValue(){
+
+		while(position < lineEnd && isSeparator(buffer[position])){
+			position++;
+		}
+		return position < lineEnd;
+	}
+
+	/**
+	 * @return the next value on the current line
+	 * @throws NumberFormatException if it isn't a number
+	 */
+	public double nextValue(){
+
+		if(!hasNextValue()){
+			throw new NoSuchElementException("No values left on the line");
+		}
+		int start = position;
+		while(position < lineEnd && !isSeparator(buffer[position])){
+			position++;
+		}
+		return DoubleText.parse(buffer, start, position);
+	}
+
+	/**
+	 * @return the number of values left on the current line, without reading them
+	 */
+	public int countValues(){
+
+		int count = 0;
+		boolean inValue = false;
+		for (int index = position; index < lineEnd; index++) {
+			boolean separator = isSeparator(buffer[index]);
+			if(!separator && !inValue){
+				count++;
+			}
+			inValue = !separator;
+		}
+		return count;
+	}
+
+	/**
+	 * Close the stream the text is read from.
+	 *
+	 * @throws IOException
+	 */
+	public void close() throws IOException{
+		in.close();
+	}
+
+	private int indexOfNewLine(int from){
+
+		for (int index = from; index < limit; index++) {
+			if(buffer[index] == '\n'){
+				return index;
+			}
+		}
+		return -1;
+	}
+
+	private static boolean isSeparator(byte b){
+		return b == '\t' || b == ' ' || b == '\r';
+	}
+}
@@ -0,0 +1,112 @@
+package matrix;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes a matrix as text. Values are formatted with DoubleText.format() into a byte buffer
+ * that is reused until it is full and then written to the stream in one go, so writing a
+ * value doesn't make any objects.
+ */
+public class MatrixWriter {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final byte[] LINE_SEPARATOR = System.getProperty("line.separator").getBytes();
+
+	private final OutputStream out;
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	private int position;
+
+	/**
+	 * @param out - where the text goes, closed by close()
+	 */
+	public MatrixWriter(OutputStream out){
+		this.out = out;
+	}
+
+	/**
+	 * @param value
+	 * @throws IOException
+	 */
+	public void write(double value) throws IOException{
+
+		makeRoom(DoubleText.MAX_LENGTH);
+		position = DoubleText.format(value, buffer, position);
+	}
+
+	/**
+	 * @param value
+	 * @throws IOException
+	 */
+	public void write(int value) throws IOException{
+
+		makeRoom(11);
+		position = DoubleText.format(value, buffer, position);
+	}
+
+	/**
+	 * Write a separator or any other single ASCII character.
+	 *
+	 * @param c
+	 * @throws IOException
+	 */
+	public void write(char c) throws IOException{
+
+		makeRoom(1);
+		buffer[position++] = (byte) c;
+	}
+
+	/**
+	 * @param text - ASCII text
+	 * @throws IOException
+	 */
+	public void write(String text) throws IOException{
+
+		for (int index = 0; index < text.length(); index++) {
+			write(text.charAt(index));
+		}
+	}
+
+	/**
+	 * End the current line with the line separator of the system.
+	 *
+	 * @throws IOException
+	 */
+	public void newLine() throws IOException{
+
+		makeRoom(LINE_SEPARATOR.length);
+		System.arraycopy(LINE_SEPARATOR, 0, buffer, position, LINE_SEPARATOR.length);
+		position += LINE_SEPARATOR.length;
+	}
+
+	/**
+	 * Write every buffered byte to the stream and flush it.
+	 *
+	 * @throws IOException
+	 */
+	public void flush() throws IOException{
+
+		out.write(buffer, 0, position);
+		position = 0;
+		out.flush();
+	}
+
+	/**
+	 * Flush and close the stream.
+	 *
+	 * @throws IOException
+	 */
+	public void close() throws IOException{
+
+		flush();
+		out.close();
+	}
+
+	private void makeRoom(int length) throws IOException{
+
+		if(position + length > buffer.length){
+			out.write(buffer, 0, position);
+			position = 0;
+		}
+	}
+}
@@ -0,0 +1,209 @@
+package matrix;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps measurement matrices around so signals reconstructed with the same number of measurements,
+ * signal length, seed and ensemble don't each have to build their own. Entries are evicted least
+ * recently used first once the matrices and their Gram matrices take up more than the byte 
+ * budget. An entry that is larger than the whole budget is handed back but never kept, and 
+ * nothing is evicted for it. Safe to share between threads.
+ */
+public class MeasurementCache {
+
+	private final long maxBytes;
+	private final LinkedHashMap<Key, CachedMeasurement> entries;
+	private long sizeInBytes;
+	private long hitCount;
+	private long missCount;
+	private long evictionCount;
+
+	/**
+	 * @param maxBytes - the most memory the cached matrices are allowed to use, in bytes
+	 */
+	public MeasurementCache(long maxBytes){
+
+		if(maxBytes < 0){
+			throw new IllegalArgumentException("The byte budget cannot be negative: " + maxBytes);
+		}
+
+		this.maxBytes = maxBytes;
+		//access order, so iteration starts at the least recently used entry
+		this.entries = new LinkedHashMap<Key, CachedMeasurement>(16, 0.75f, true);
+	}
+
+	/**
+	 * Get the measurement matrix for the given dimensions, seed and ensemble, creating it
+	 * if it isn't in the cache. The matrix is created without holding the lock, so threads
+	 * asking for other matrices don't wait for it, while threads asking for the same one
+	 * wait for it to be built rather than building it again.
+	 *
+	 * @param numRows - the number of measurements
+	 * @param numColumns - the length of the signal
+	 * @param seed - seed for the random parts of the matrix
+	 * @param ensemble - the kind of measurement matrix
+	 * @return the cached matrix
+	 */
+	public CachedMeasurement get(int numRows, int numColumns, long seed, MeasurementEnsemble ensemble){
+
+		Key key = new Key(numRows, numColumns, seed, ensemble);
+		CachedMeasurement entry;
+		synchronized(this){
+			entry = entries.get(key);
+			if(entry != null){
+				hitCount++;
+				return entry;
+			}
+			missCount++;
+			entry = new CachedMeasurement(this, key, numRows, numColumns, seed, ensemble);
+			entries.put(key, entry);
+		}
+
+		entry.build();
+		boolean built = false;
+		try{
+			built = charge(entry, entry.getOperator().getSizeInBytes());
+		}
+		finally{
+			if(!built){
+				remove(entry);
+			}
+		}
+		return entry;
+	}
+
+	/**
+	 * Account for memory an entry has started using, its matrix once it has been built or 
+	 * a product derived from it, then evict other entries until the cache is back under 
+	 * budget. Nothing is charged for an entry that has already been evicted, or if the entry
+	 * would be bigger than the whole budget, since evicting every other entry still wouldn't 
+	 * make room for it.
+	 *
+	 * @param entry - the entry that uses the memory
+	 * @param bytes - how many more bytes it uses
+	 * @return true if the memory was charged, so the entry can keep what uses it
+	 */
+	synchronized boolean charge(CachedMeasurement entry, long bytes){
+
+		if(entries.get(entry.getKey()) != entry || bytes > maxBytes - entry.chargedBytes){
+			return false;
+		}
+
+		entry.chargedBytes += bytes;
+		sizeInBytes += bytes;
+
+		//the entry was just used, so it is the last one that could be evicted, and on its own 
+		//it is within the budget
+		Iterator<Map.Entry<Key, CachedMeasurement>> iterator = entries.entrySet().iterator();
+		while(sizeInBytes > maxBytes && iterator.hasNext()){
+			CachedMeasurement evicted = iterator.next().getValue();
+			iterator.remove();
+			sizeInBytes -= evicted.chargedBytes;
+			evictionCount++;
+		}
+		return true;
+	}
+
+	/**
+	 * Take out an entry whose matrix could not be built, so the next request tries again.
+	 *
+	 * @param entry
+	 */
+	private synchronized void remove(CachedMeasurement entry){
+
+		if(entries.get(entry.getKey()) == entry){
+			entries.remove(entry.getKey());
+		}
+	}
+
+	/**
+	 * Remove every entry, the hit, miss and eviction counts are kept.
+	 */
+	public synchronized void clear(){
+		entries.clear();
+		sizeInBytes = 0;
+	}
+
+	/**
+	 * @return the number of matrices in the cache
+	 */
+	public synchronized int size(){
+		return entries.size();
+	}
+
+	/**
+	 * @return the memory used by the cached matrices, in bytes
+	 */
+	public synchronized long getSizeInBytes(){
+		return sizeInBytes;
+	}
+
+	/**
+	 * @return the most memory the cache is allowed to use, in bytes
+	 */
+	public long getMaxBytes(){
+		return maxBytes;
+	}
+
+	/**
+	 * @return the number of times a matrix was already in the cache
+	 */
+	public synchronized long getHitCount(){
+		return hitCount;
+	}
+
+	/**
+	 * @return the number of times a matrix had to be created
+	 */
+	public synchronized long getMissCount(){
+		return missCount;
+	}
+
+	/**
+	 * @return the number of matrices that were evicted to stay under the budget
+	 */
+	public synchronized long getEvictionCount(){
+		return evictionCount;
+	}
+
+	/**
+	 * Identifies a measurement matrix, two keys are equal when they would create the same matrix.
+	 */
+	static final class Key {
+
+		private final int numRows;
+		private final int numColumns;
+		private final long seed;
+		private final MeasurementEnsemble ensemble;
+
+		Key(int numRows, int numColumns, long seed, MeasurementEnsemble ensemble){
+			this.numRows = numRows;
+			this.numColumns = numColumns;
+			this.seed = seed;
+			this.ensemble = ensemble;
+		}
+
+		@Override
+		public boolean equals(Object obj){
+
+			if(!(obj instanceof Key)){
+				return false;
+			}
+			Key other = (Key) obj;
+			return numRows == other.numRows && numColumns == other.numColumns
+					&& seed == other.seed && ensemble == other.ensemble;
+		}
+
+		@Override
+		public int hashCode(){
+
+			int hash = numRows;
+			hash = 31 * hash + numColumns;
+			hash = 31 * hash + (int) (seed ^ (seed >>> 32));
+			hash = 31 * hash + ensemble.hashCode();
+			return hash;
+		}
+	}
+}
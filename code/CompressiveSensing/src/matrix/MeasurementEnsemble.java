@@ -0,0 +1,59 @@
+package matrix;
+
+/**
+ * The kinds of measurement matrices that a signal can be measured with.
+ */
+public enum MeasurementEnsemble {
+
+	/** Gaussian random matrix with every value stored, as returned by Signal.getMeasurements() */
+	DENSE_GAUSSIAN,
+
+	/** Gaussian random matrix whose columns are generated from the seed whenever they are needed */
+	IMPLICIT_GAUSSIAN,
+
+	/** randomly subsampled Walsh-Hadamard transform with random sign flips */
+	HADAMARD,
+
+	/** randomly subsampled discrete cosine transform with random sign flips */
+	DCT;
+
+	/**
+	 * Create a measurement matrix of this kind. The same arguments always give the same matrix.
+	 * 
+	 * @param numRows - the number of measurements
+	 * @param numColumns - the length of the signal
+	 * @param seed - seed for the random parts of the matrix
+	 * @return the measurement matrix
+	 */
+	public MeasurementOperator createOperator(int numRows, int numColumns, long seed){
+
+		switch(this){
+		case IMPLICIT_GAUSSIAN:
+			return new GaussianMeasurement(numRows, numColumns, seed);
+		case HADAMARD:
+			return new HadamardMeasurement(numRows, numColumns, seed);
+		case DCT:
+			return new DctMeasurement(numRows, numColumns, seed);
+		default:
+			return MatrixHelper.gaussianMeasurements(numRows, numColumns, seed);
+		}
+	}
+
+	/**
+	 * Same as createOperator(int, int, long), except that a stored matrix is allocated off
+	 * the heap. The other kinds hardly take any memory and are created as usual.
+	 * 
+	 * @param numRows - the number of measurements
+	 * @param numColumns - the length of the signal
+	 * @param seed - seed for the random parts of the matrix
+	 * @param arena - the arena a stored matrix is allocated from
+	 * @return the measurement matrix
+	 */
+	public MeasurementOperator createOperator(int numRows, int numColumns, long seed, OffHeapArena arena){
+
+		if(this == DENSE_GAUSSIAN){
+			return MatrixHelper.gaussianMeasurements(numRows, numColumns, seed, arena);
+		}
+		return createOperator(numRows, numColumns, seed);
+	}
+}
@@ -0,0 +1,110 @@
+package matrix;
+
+/**
+ * The measurement matrix phi, as far as the cosamp algorithm needs it. The algorithm only
+ * ever multiplies by phi or its transpose and takes some of its columns, so an implementation
+ * is free to store the whole matrix or to work out the values when they are needed.
+ */
+public interface MeasurementOperator extends LinearOperator {
+
+	/**
+	 * @return the number of measurements, the number of rows in phi
+	 */
+	public int rowSize();
+
+	/**
+	 * @return the length of the signal, the number of columns in phi
+	 */
+	public int columnSize();
+
+	/**
+	 * phi * x
+	 * 
+	 * @param x - a vector with columnSize() values
+	 * @param result - filled with the rowSize() values of the product
+	 */
+	public void times(double[] x, double[] result);
+
+	/**
+	 * phi * x for a sparse x, phi_T * x_T where T is the rows stored in x
+	 * 
+	 * @param x - a vector of length columnSize()
+	 * @param result - filled with the rowSize() values of the product
+	 */
+	public void times(SparseVector x, double[] result);
+
+	/**
+	 * phi' * r
+	 * 
+	 * @param r - a vector with rowSize() values
+	 * @param result - filled with the columnSize() values of the product
+	 */
+	public void transposeTimes(double[] r, double[] result);
+
+	/**
+	 * Offer |phi' * r| to a selector one value at a time, as each one is worked out, so the 
+	 * largest values of the proxy are found without storing it.
+	 * 
+	 * @param r - a vector with rowSize() values
+	 * @param selector - offered the absolute value of every row of phi' * r
+	 */
+	public void transposeTimes(double[] r, TopSelector selector);
+
+	/**
+	 * phi * X for a block of column vectors, so phi only has to be read once for the whole block.
+	 * 
+	 * @param x - a matrix with columnSize() rows
+	 * @return the product, with rowSize() rows and one column for each column of x
+	 */
+	public ColumnMajorMatrix times(ColumnMajorMatrix x);
+
+	/**
+	 * phi' * R for a block of column vectors, so phi only has to be read once for the whole block.
+	 * 
+	 * @param r - a matrix with rowSize() rows
+	 * @return the product, with columnSize() rows and one column for each column of r
+	 */
+	public ColumnMajorMatrix transposeTimes(ColumnMajorMatrix r);
+
+	/**
+	 * Same as times(ColumnMajorMatrix), for a block of vectors held in arrays that already
+	 * exist, so a block can be multiplied again and again without creating anything.
+	 * 
+	 * @param x - numVectors vectors of columnSize() values, one after another
+	 * @param numVectors - the number of vectors to multiply, x and result may be longer
+	 * @param result - the first numVectors * rowSize() values are filled with the products
+	 */
+	public void times(double[] x, int numVectors, double[] result);
+
+	/**
+	 * Same as transposeTimes(ColumnMajorMatrix), for a block of vectors held in arrays that 
+	 * already exist, so a block can be multiplied again and again without creating anything.
+	 * 
+	 * @param r - numVectors vectors of rowSize() values, one after another
+	 * @param numVectors - the number of vectors to multiply, r and result may be longer
+	 * @param result - the first numVectors * columnSize() values are filled with the products
+	 */
+	public void transposeTimes(double[] r, int numVectors, double[] result);
+
+	/**
+	 * Similar to phi(:, T) in Matlab.
+	 * 
+	 * @param support - the columns to take
+	 * @return a matrix with just the columns of phi that are in the support
+	 */
+	public ColumnMajorMatrix gatherColumns(SupportSet support);
+
+	/**
+	 * Same as gatherColumns(SupportSet), into an array that already exists.
+	 * 
+	 * @param support - the columns to take
+	 * @param result - filled with rowSize() values for each column in the support, 
+	 * one column after another
+	 */
+	public void gatherColumns(SupportSet support, double[] result);
+
+	/**
+	 * @return roughly how much memory the operator holds on to, in bytes
+	 */
+	public long getSizeInBytes();
+}
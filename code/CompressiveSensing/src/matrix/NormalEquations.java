@@ -0,0 +1,92 @@
+package matrix;
+
+/**
+ * The Gram matrix phi_T' * phi_T of the columns on a support, without ever forming it.
+ * Multiplying by it is done as the two thin products phi_T' * (phi_T * d), which costs
+ * O(m * |T|) instead of the O(m * |T|^2) it takes to build the Gram matrix in the first place.
+ * A CosampWorkspace keeps one with room for its largest support and gathers the columns of 
+ * every new support into it.
+ */
+public class NormalEquations implements LinearOperator {
+
+	private final int numRows;
+	//the columns of phi on the support, one after another
+	private final double[] columns;
+	private int size;
+	//holds phi_T * d between the two products
+	private final double[] intermediate;
+
+	/**
+	 * @param slicedPhiMatrix - the columns of phi on the support, phi(:, T) in Matlab
+	 */
+	public NormalEquations(ColumnMajorMatrix slicedPhiMatrix){
+		this.numRows = slicedPhiMatrix.rowSize();
+		this.columns = slicedPhiMatrix.getValues();
+		this.size = slicedPhiMatrix.columnSize();
+		this.intermediate = new double[numRows];
+	}
+
+	/**
+	 * An empty operator for supports of up to capacity columns, see gather().
+	 * 
+	 * @param numRows - the number of measurements
+	 * @param capacity - the largest support
+	 */
+	NormalEquations(int numRows, int capacity){
+		this.numRows = numRows;
+		this.columns = new double[numRows * capacity];
+		this.size = 0;
+		this.intermediate = new double[numRows];
+	}
+
+	/**
+	 * Switch to the columns of phi on a new support.
+	 * 
+	 * @param phiMatrix - the measurement matrix
+	 * @param support - the support, no larger than the capacity
+	 */
+	void gather(MeasurementOperator phiMatrix, SupportSet support){
+		phiMatrix.gatherColumns(support, columns);
+		size = support.size();
+	}
+
+	@Override
+	public int rowSize(){
+		return size;
+	}
+
+	@Override
+	public int columnSize(){
+		return size;
+	}
+
+	/**
+	 * phi_T' * (phi_T * x)
+	 */
+	@Override
+	public void times(double[] x, double[] result){
+
+		VectorKernels.get().gemv(columns, numRows, size, x, intermediate);
+		transposeTimes(intermediate, result);
+	}
+
+	/**
+	 * phi_T' * y
+	 * 
+	 * @param y - a vector with one value for each measurement
+	 * @param result - filled with one value for each column on the support
+	 */
+	public void transposeTimes(double[] y, double[] result){
+		VectorKernels.get().gemvTranspose(columns, numRows, size, y, result);
+	}
+
+	/**
+	 * @return the columns on the support as a matrix of their own
+	 */
+	public ColumnMajorMatrix toMatrix(){
+
+		ColumnMajorMatrix slicedPhiMatrix = new ColumnMajorMatrix(numRows, size);
+		System.arraycopy(columns, 0, slicedPhiMatrix.getValues(), 0, numRows * size);
+		return slicedPhiMatrix;
+	}
+}
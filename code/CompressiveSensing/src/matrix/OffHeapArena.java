@@ -0,0 +1,173 @@
+package matrix;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Owns the memory of off-heap matrices. Matrices are allocated from an arena or mapped from
+ * matrix files through it, and closing the arena releases all of them at once, so how long
+ * the memory lives is decided by whoever holds the arena rather than by the garbage collector.
+ * A matrix can also be closed on its own before that.
+ *
+ * The memory is released with Unsafe.invokeCleaner() where it exists (Java 9 and later).
+ * Before that it is left to the garbage collector to free once the matrix can no longer be
+ * reached. Allocated memory counts against -XX:MaxDirectMemorySize, mapped files don't.
+ * Nothing may be using a matrix while it or its arena is closed.
+ */
+public class OffHeapArena implements Closeable {
+
+	private static final Object UNSAFE;
+	private static final Method INVOKE_CLEANER;
+
+	static{
+		Object unsafe = null;
+		Method invokeCleaner = null;
+		try{
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Field field = unsafeClass.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			unsafe = field.get(null);
+		} catch (Exception e) {
+			//not available, the buffers are freed by the garbage collector
+			invokeCleaner = null;
+		}
+		UNSAFE = unsafe;
+		INVOKE_CLEANER = invokeCleaner;
+	}
+
+	private final List<OffHeapMatrix> matrices = new ArrayList<OffHeapMatrix>();
+	private boolean closed;
+
+	/**
+	 * Create a matrix off the heap, all cells start at zero.
+	 *
+	 * @param numRows - number of rows in the matrix
+	 * @param numColumns - number of columns in the matrix
+	 * @return the new matrix, owned by this arena
+	 */
+	public OffHeapMatrix allocate(int numRows, int numColumns){
+
+		long[] sizes = OffHeapMatrix.chunkSizes(numRows, numColumns);
+		ByteBuffer[] regions = new ByteBuffer[sizes.length];
+		for (int chunk = 0; chunk < sizes.length; chunk++) {
+			regions[chunk] = ByteBuffer.allocateDirect((int) sizes[chunk]).order(ByteOrder.nativeOrder());
+		}
+		return add(numRows, numColumns, regions);
+	}
+
+	/**
+	 * @param matrix - the matrix to copy
+	 * @return a copy of the matrix off the heap, owned by this arena
+	 */
+	public OffHeapMatrix copyOf(ColumnMajorMatrix matrix){
+
+		OffHeapMatrix copy = allocate(matrix.rowSize(), matrix.columnSize());
+		copy.setColumns(0, matrix.columnSize(), matrix.getValues(), 0);
+		return copy;
+	}
+
+	/**
+	 * Map a dense file written by MatrixFile straight into memory, see MatrixFile.map().
+	 *
+	 * @param file
+	 * @param writable - true if changes to the matrix should be written to the file
+	 * @return the mapped matrix, owned by this arena
+	 * @throws IOException if the file can't be mapped
+	 */
+	public OffHeapMatrix map(File file, boolean writable) throws IOException{
+		return MatrixFile.map(file, writable, this);
+	}
+
+	/**
+	 * @return the number of matrices in the arena that haven't been closed
+	 */
+	public synchronized int getMatrixCount(){
+		return matrices.size();
+	}
+
+	/**
+	 * @return the memory held by the matrices that haven't been closed, in bytes
+	 */
+	public synchronized long getSizeInBytes(){
+
+		long size = 0;
+		for (OffHeapMatrix matrix : matrices) {
+			size += matrix.getSizeInBytes();
+		}
+		return size;
+	}
+
+	/**
+	 * @return false once the arena has been closed
+	 */
+	public synchronized boolean isOpen(){
+		return !closed;
+	}
+
+	/**
+	 * Release the memory of every matrix in the arena. Nothing can be allocated from it
+	 * after this.
+	 */
+	@Override
+	public synchronized void close(){
+
+		closed = true;
+		for (OffHeapMatrix matrix : matrices) {
+			free(matrix.takeRegions());
+		}
+		matrices.clear();
+	}
+
+	/**
+	 * Take ownership of buffers holding a matrix.
+	 *
+	 * @param numRows
+	 * @param numColumns
+	 * @param regions - laid out as the OffHeapMatrix constructor expects
+	 * @return the matrix
+	 */
+	synchronized OffHeapMatrix add(int numRows, int numColumns, ByteBuffer[] regions){
+
+		if(closed){
+			free(regions);
+			throw new IllegalStateException("The arena has been closed");
+		}
+		OffHeapMatrix matrix = new OffHeapMatrix(this, numRows, numColumns, regions);
+		matrices.add(matrix);
+		return matrix;
+	}
+
+	/**
+	 * Release the memory of a single matrix, if it hasn't been already.
+	 *
+	 * @param matrix
+	 */
+	synchronized void release(OffHeapMatrix matrix){
+
+		if(matrices.remove(matrix)){
+			free(matrix.takeRegions());
+		}
+	}
+
+	private static void free(ByteBuffer[] regions){
+
+		if(regions == null || INVOKE_CLEANER == null){
+			return;
+		}
+		for (ByteBuffer region : regions) {
+			try{
+				INVOKE_CLEANER.invoke(UNSAFE, region);
+			} catch (Exception e) {
+				//left to the garbage collector
+			}
+		}
+	}
+}
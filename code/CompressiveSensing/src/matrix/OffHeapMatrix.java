@@ -0,0 +1,401 @@
+package matrix;
+
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+
+/**
+ * A dense matrix stored column by column like ColumnMajorMatrix, but outside of the Java heap,
+ * in direct buffers or in a matrix file mapped into memory. A measurement matrix for a signal
+ * hundreds of thousands long takes gigabytes, and as a double[] the garbage collector copies
+ * or scans it again and again, while off the heap it is never looked at. The memory belongs
+ * to the OffHeapArena the matrix came from and is released when the matrix or the arena is
+ * closed, after which using the matrix throws an IllegalStateException.
+ *
+ * A buffer holds at most CHUNK_SIZE bytes, so the columns are split into chunks of whole
+ * columns. The products copy the columns they need into an array, up to TopSelector.BLOCK_SIZE
+ * at a time, and run the same VectorKernels on them as ColumnMajorMatrix, adding every value in the same order,
+ * so both give exactly the same results.
+ */
+public class OffHeapMatrix implements MeasurementOperator {
+
+	//the most bytes in a single buffer
+	static final int CHUNK_SIZE = 1 << 30;
+
+	//the columns copied onto the heap by a product, one array for each thread
+	private static final ThreadLocal<double[]> BLOCKS = new ThreadLocal<double[]>();
+
+	private final OffHeapArena arena;
+	private final int numRows;
+	private final int numColumns;
+	private final int chunkColumns;
+	//the buffers the memory came in, only used to release it
+	private ByteBuffer[] regions;
+	//null once the memory has been released
+	private volatile DoubleBuffer[] chunks;
+
+	/**
+	 * Create a matrix on buffers that an arena already holds, the buffers are not copied.
+	 *
+	 * @param arena - the arena that releases the buffers
+	 * @param numRows - number of rows in the matrix
+	 * @param numColumns - number of columns in the matrix
+	 * @param regions - chunkColumns(numRows, numColumns) columns in every buffer but the last,
+	 * in the byte order the values are stored in
+	 */
+	OffHeapMatrix(OffHeapArena arena, int numRows, int numColumns, ByteBuffer[] regions){
+
+		this.arena = arena;
+		this.numRows = numRows;
+		this.numColumns = numColumns;
+		this.chunkColumns = chunkColumns(numRows, numColumns);
+		this.regions = regions;
+
+		DoubleBuffer[] views = new DoubleBuffer[regions.length];
+		for (int chunk = 0; chunk < regions.length; chunk++) {
+			views[chunk] = regions[chunk].asDoubleBuffer();
+		}
+		this.chunks = views;
+	}
+
+	/**
+	 * @param numRows
+	 * @param numColumns
+	 * @return the number of whole columns that fit in a chunk
+	 */
+	static int chunkColumns(int numRows, int numColumns){
+
+		if(8L * numRows > CHUNK_SIZE){
+			throw new IllegalArgumentException("A column of " + numRows + " rows doesn't fit in a buffer");
+		}
+		if(numRows == 0){
+			return Math.max(numColumns, 1);
+		}
+		return CHUNK_SIZE / (8 * numRows);
+	}
+
+	/**
+	 * @param numRows
+	 * @param numColumns
+	 * @return the size in bytes of every chunk of a matrix with these dimensions
+	 */
+	static long[] chunkSizes(int numRows, int numColumns){
+
+		int chunkColumns = chunkColumns(numRows, numColumns);
+		long[] sizes = new long[(numColumns + chunkColumns - 1) / chunkColumns];
+		for (int chunk = 0; chunk < sizes.length; chunk++) {
+			int columns = Math.min(chunkColumns, numColumns - chunk * chunkColumns);
+			sizes[chunk] = 8L * numRows * columns;
+		}
+		return sizes;
+	}
+
+	@Override
+	public int rowSize(){
+		return numRows;
+	}
+
+	@Override
+	public int columnSize(){
+		return numColumns;
+	}
+
+	/**
+	 * @return the arena the memory belongs to
+	 */
+	public OffHeapArena getArena(){
+		return arena;
+	}
+
+	/**
+	 * @return false once the matrix or its arena has been closed
+	 */
+	public boolean isOpen(){
+		return chunks != null;
+	}
+
+	/**
+	 * @param row
+	 * @param column
+	 * @return the value at the given cell
+	 */
+	public double get(int row, int column){
+		return chunks()[column / chunkColumns].get(column % chunkColumns * numRows + row);
+	}
+
+	/**
+	 * Set the value of the given cell.
+	 *
+	 * @param row
+	 * @param column
+	 * @param value
+	 */
+	public void set(int row, int column, double value){
+		chunks()[column / chunkColumns].put(column % chunkColumns * numRows + row, value);
+	}
+
+	/**
+	 * Copy count whole columns out of the matrix.
+	 *
+	 * @param startColumn - the first column to copy
+	 * @param count - the number of columns
+	 * @param target - filled with rowSize() values for each column, one column after another
+	 * @param offset - where in target the first column goes
+	 */
+	public void getColumns(int startColumn, int count, double[] target, int offset){
+
+		DoubleBuffer[] chunks = chunks();
+		while(count > 0){
+			int chunk = startColumn / chunkColumns;
+			int first = startColumn - chunk * chunkColumns;
+			int columns = Math.min(count, chunkColumns - first);
+			//a duplicate of its own, so threads reading at once don't move each other's position
+			DoubleBuffer source = chunks[chunk].duplicate();
+			source.position(first * numRows);
+			source.get(target, offset, columns * numRows);
+			startColumn += columns;
+			count -= columns;
+			offset += columns * numRows;
+		}
+	}
+
+	/**
+	 * Overwrite count whole columns of the matrix.
+	 *
+	 * @param startColumn - the first column to overwrite
+	 * @param count - the number of columns
+	 * @param source - rowSize() values for each column, one column after another
+	 * @param offset - where in source the first column is
+	 */
+	public void setColumns(int startColumn, int count, double[] source, int offset){
+
+		DoubleBuffer[] chunks = chunks();
+		while(count > 0){
+			int chunk = startColumn / chunkColumns;
+			int first = startColumn - chunk * chunkColumns;
+			int columns = Math.min(count, chunkColumns - first);
+			DoubleBuffer target = chunks[chunk].duplicate();
+			target.position(first * numRows);
+			target.put(source, offset, columns * numRows);
+			startColumn += columns;
+			count -= columns;
+			offset += columns * numRows;
+		}
+	}
+
+	/**
+	 * @return a copy of the whole matrix on the heap
+	 */
+	public ColumnMajorMatrix toColumnMajorMatrix(){
+
+		ColumnMajorMatrix result = new ColumnMajorMatrix(numRows, numColumns);
+		getColumns(0, numColumns, result.getValues(), 0);
+		return result;
+	}
+
+	/**
+	 * Only the columns of the nonzero values of x are copied, and they are added one after
+	 * another, the same way ColumnMajorMatrix.times(double[], double[]) does.
+	 */
+	@Override
+	public void times(double[] x, double[] result){
+
+		VectorKernels kernels = VectorKernels.get();
+		double[] block = block();
+		Arrays.fill(result, 0, numRows, 0);
+		for (int column = 0; column < numColumns; column++) {
+			if(x[column] != 0){
+				getColumns(column, 1, block, 0);
+				kernels.axpy(x[column], block, 0, result, 0, numRows);
+			}
+		}
+	}
+
+	@Override
+	public void times(SparseVector x, double[] result){
+
+		VectorKernels kernels = VectorKernels.get();
+		double[] block = block();
+		Arrays.fill(result, 0, numRows, 0);
+		for (int position = 0; position < x.size(); position++) {
+			double scale = x.getValue(position);
+			if(scale != 0){
+				getColumns(x.getIndex(position), 1, block, 0);
+				kernels.axpy(scale, block, 0, result, 0, numRows);
+			}
+		}
+	}
+
+	@Override
+	public void transposeTimes(double[] r, double[] result){
+
+		VectorKernels kernels = VectorKernels.get();
+		double[] block = block();
+		for (int start = 0; start < numColumns; start += TopSelector.BLOCK_SIZE) {
+			int blockColumns = Math.min(TopSelector.BLOCK_SIZE, numColumns - start);
+			getColumns(start, blockColumns, block, 0);
+			kernels.gemvTranspose(block, 0, numRows, blockColumns, r, 0, result, start);
+		}
+	}
+
+	@Override
+	public void transposeTimes(double[] r, TopSelector selector){
+
+		VectorKernels kernels = VectorKernels.get();
+		double[] block = block();
+		double[] proxy = selector.block;
+		for (int start = 0; start < numColumns; start += TopSelector.BLOCK_SIZE) {
+			int blockColumns = Math.min(TopSelector.BLOCK_SIZE, numColumns - start);
+			getColumns(start, blockColumns, block, 0);
+			kernels.gemvTranspose(block, 0, numRows, blockColumns, r, 0, proxy, 0);
+			for (int column = 0; column < blockColumns; column++) {
+				selector.offer(start + column, Math.abs(proxy[column]));
+			}
+		}
+	}
+
+	/**
+	 * Every block of this matrix is copied once and multiplied into every column of x, each
+	 * value of the product is still summed over the columns of this matrix in increasing
+	 * order, the same as ColumnMajorMatrix.times(ColumnMajorMatrix).
+	 */
+	@Override
+	public ColumnMajorMatrix times(ColumnMajorMatrix x){
+
+		if(numColumns != x.rowSize()){
+			throw new IllegalArgumentException("Cannot multiply " + numRows + "x" + numColumns
+					+ " by " + x.rowSize() + "x" + x.columnSize());
+		}
+
+		ColumnMajorMatrix product = new ColumnMajorMatrix(numRows, x.columnSize());
+		times(x.getValues(), x.columnSize(), product.getValues());
+		return product;
+	}
+
+	/**
+	 * Worked out a block of this matrix at a time, the same as times(ColumnMajorMatrix).
+	 */
+	@Override
+	public void times(double[] x, int numVectors, double[] result){
+
+		VectorKernels kernels = VectorKernels.get();
+		double[] block = block();
+		Arrays.fill(result, 0, numVectors * numRows, 0);
+		for (int start = 0; start < numColumns; start += TopSelector.BLOCK_SIZE) {
+			int blockColumns = Math.min(TopSelector.BLOCK_SIZE, numColumns - start);
+			getColumns(start, blockColumns, block, 0);
+			for (int column = 0; column < numVectors; column++) {
+				for (int inner = 0; inner < blockColumns; inner++) {
+					double scale = x[column * numColumns + start + inner];
+					if(scale != 0){
+						kernels.axpy(scale, block, inner * numRows, result, column * numRows, numRows);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Every block of this matrix is copied once and multiplied with every column of r, each
+	 * through the same kernel as transposeTimes(double[], double[]).
+	 */
+	@Override
+	public ColumnMajorMatrix transposeTimes(ColumnMajorMatrix r){
+
+		if(numRows != r.rowSize()){
+			throw new IllegalArgumentException("Cannot multiply transpose of " + numRows + "x"
+					+ numColumns + " by " + r.rowSize() + "x" + r.columnSize());
+		}
+
+		ColumnMajorMatrix product = new ColumnMajorMatrix(numColumns, r.columnSize());
+		transposeTimes(r.getValues(), r.columnSize(), product.getValues());
+		return product;
+	}
+
+	/**
+	 * Worked out a block of this matrix at a time, the same as transposeTimes(ColumnMajorMatrix).
+	 */
+	@Override
+	public void transposeTimes(double[] r, int numVectors, double[] result){
+
+		VectorKernels kernels = VectorKernels.get();
+		double[] block = block();
+		for (int start = 0; start < numColumns; start += TopSelector.BLOCK_SIZE) {
+			int blockColumns = Math.min(TopSelector.BLOCK_SIZE, numColumns - start);
+			getColumns(start, blockColumns, block, 0);
+			for (int otherColumn = 0; otherColumn < numVectors; otherColumn++) {
+				kernels.gemvTranspose(block, 0, numRows, blockColumns, r, otherColumn * numRows, 
+						result, otherColumn * numColumns + start);
+			}
+		}
+	}
+
+	@Override
+	public ColumnMajorMatrix gatherColumns(SupportSet support){
+
+		ColumnMajorMatrix slicedMatrix = new ColumnMajorMatrix(numRows, support.size());
+		gatherColumns(support, slicedMatrix.getValues());
+		return slicedMatrix;
+	}
+
+	@Override
+	public void gatherColumns(SupportSet support, double[] result){
+
+		for (int index = 0; index < support.size(); index++) {
+			getColumns(support.getRow(index), 1, result, index * numRows);
+		}
+	}
+
+	/**
+	 * @return the memory held off the heap, in bytes, the matrix takes next to nothing on it
+	 */
+	@Override
+	public long getSizeInBytes(){
+		return 8L * numRows * numColumns;
+	}
+
+	/**
+	 * Release the memory of this matrix now, rather than when its arena is closed.
+	 * Nothing else may be using the matrix while it is closed.
+	 */
+	public void close(){
+		arena.release(this);
+	}
+
+	/**
+	 * Hand the buffers over to be released, called by the arena. The matrix can't be used
+	 * from then on.
+	 *
+	 * @return the buffers, or null if they have already been taken
+	 */
+	ByteBuffer[] takeRegions(){
+
+		ByteBuffer[] taken = regions;
+		regions = null;
+		chunks = null;
+		return taken;
+	}
+
+	private DoubleBuffer[] chunks(){
+
+		DoubleBuffer[] current = chunks;
+		if(current == null){
+			throw new IllegalStateException("The off-heap matrix has been closed");
+		}
+		return current;
+	}
+
+	/**
+	 * @return an array of this thread's with room for TopSelector.BLOCK_SIZE columns
+	 */
+	private double[] block(){
+
+		int length = TopSelector.BLOCK_SIZE * numRows;
+		double[] block = BLOCKS.get();
+		if(block == null || block.length < length){
+			block = new double[length];
+			BLOCKS.set(block);
+		}
+		return block;
+	}
+}
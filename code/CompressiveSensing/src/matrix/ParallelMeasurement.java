@@ -0,0 +1,210 @@
+package matrix;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A dense measurement matrix whose products with a single vector are spread over the threads
+ * of a fork/join pool, for matrices big enough that one column's phi * x and phi' * r take
+ * longer than handing them out. phi * x is split into blocks of rows and phi' * r into blocks
+ * of columns, so every value of a product is worked out by exactly one task, in the same order
+ * ColumnMajorMatrix works it out. Nothing is added up across tasks, so the products are exactly
+ * the same as ColumnMajorMatrix's however many threads there are. The products with a block of
+ * vectors and gathering columns are left to the matrix.
+ *
+ * A product asked for from one of the pool's own threads, such as a column being reconstructed
+ * by Signal.runCosamp(), is split in that thread, so the idle threads of the pool help with it.
+ */
+public class ParallelMeasurement implements MeasurementOperator {
+
+	//the fewest rows and columns worth a task of their own, ranges are never split into more
+	//pieces than the pool has threads, since every row piece walks over all of phi
+	private static final int MIN_ROWS = 128;
+	private static final int MIN_COLUMNS = 256;
+
+	private final ColumnMajorMatrix phiMatrix;
+	private final ForkJoinPool pool;
+
+	/**
+	 * @param phiMatrix - the measurement matrix
+	 * @param pool - the pool the products are spread over
+	 */
+	public ParallelMeasurement(ColumnMajorMatrix phiMatrix, ForkJoinPool pool){
+		this.phiMatrix = phiMatrix;
+		this.pool = pool;
+	}
+
+	/**
+	 * @return the matrix the products are taken with
+	 */
+	public ColumnMajorMatrix getMatrix(){
+		return phiMatrix;
+	}
+
+	@Override
+	public int rowSize(){
+		return phiMatrix.rowSize();
+	}
+
+	@Override
+	public int columnSize(){
+		return phiMatrix.columnSize();
+	}
+
+	@Override
+	public void times(final double[] x, final double[] result){
+
+		run(0, rowSize(), MIN_ROWS, new Range(){
+			public void compute(int start, int end){
+				VectorKernels.get().gemvRows(phiMatrix.getValues(), rowSize(), start, end,
+						columnSize(), x, result);
+			}
+		});
+	}
+
+	@Override
+	public void times(final SparseVector x, final double[] result){
+
+		run(0, rowSize(), MIN_ROWS, new Range(){
+			public void compute(int start, int end){
+				VectorKernels kernels = VectorKernels.get();
+				double[] values = phiMatrix.getValues();
+				for (int row = start; row < end; row++) {
+					result[row] = 0;
+				}
+				for (int position = 0; position < x.size(); position++) {
+					double scale = x.getValue(position);
+					if(scale != 0){
+						kernels.axpy(scale, values, x.getIndex(position) * rowSize() + start,
+								result, start, end - start);
+					}
+				}
+			}
+		});
+	}
+
+	@Override
+	public void transposeTimes(final double[] r, final double[] result){
+
+		run(0, columnSize(), MIN_COLUMNS, new Range(){
+			public void compute(int start, int end){
+				VectorKernels.get().gemvTranspose(phiMatrix.getValues(), start * rowSize(),
+						rowSize(), end - start, r, 0, result, start);
+			}
+		});
+	}
+
+	/**
+	 * phi' * r is worked out in parallel into the selector's own room, then offered to the 
+	 * selector in order by the calling thread. The room belongs to the column rather than the
+	 * thread, since the thread may reconstruct another column while it waits for the pieces.
+	 */
+	@Override
+	public void transposeTimes(double[] r, TopSelector selector){
+
+		double[] proxy = selector.proxy(columnSize());
+		transposeTimes(r, proxy);
+		for (int column = 0; column < columnSize(); column++) {
+			selector.offer(column, Math.abs(proxy[column]));
+		}
+	}
+
+	@Override
+	public ColumnMajorMatrix times(ColumnMajorMatrix x){
+		return phiMatrix.times(x);
+	}
+
+	@Override
+	public ColumnMajorMatrix transposeTimes(ColumnMajorMatrix r){
+		return phiMatrix.transposeTimes(r);
+	}
+
+	@Override
+	public void times(double[] x, int numVectors, double[] result){
+		phiMatrix.times(x, numVectors, result);
+	}
+
+	@Override
+	public void transposeTimes(double[] r, int numVectors, double[] result){
+		phiMatrix.transposeTimes(r, numVectors, result);
+	}
+
+	@Override
+	public ColumnMajorMatrix gatherColumns(SupportSet support){
+		return phiMatrix.gatherColumns(support);
+	}
+
+	@Override
+	public void gatherColumns(SupportSet support, double[] result){
+		phiMatrix.gatherColumns(support, result);
+	}
+
+	@Override
+	public long getSizeInBytes(){
+		return phiMatrix.getSizeInBytes();
+	}
+
+	/**
+	 * Split start up to end into pieces of at least minSize, and no more pieces than there are
+	 * threads, and work them out in the pool, 
+	 * or in the calling thread if it already belongs to the pool.
+	 */
+	private void run(int start, int end, int minSize, Range range){
+
+		int parallelism = pool.getParallelism();
+		minSize = Math.max(minSize, (end - start + parallelism - 1) / parallelism);
+		RangeTask task = new RangeTask(start, end, minSize, range);
+		if(ForkJoinTask.inForkJoinPool() && ForkJoinTask.getPool() == pool){
+			task.invoke();
+		}
+		else{
+			pool.invoke(task);
+		}
+	}
+
+	/**
+	 * One of the products, worked out for part of its rows or columns.
+	 */
+	private interface Range {
+
+		/**
+		 * Work out the product for start up to but not including end.
+		 */
+		public void compute(int start, int end);
+	}
+
+	/**
+	 * Splits a range of rows or columns in half until it's small enough to do directly. The
+	 * split only depends on the size of the range, never on the number of threads.
+	 */
+	private static class RangeTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int start;
+		private final int end;
+		private final int minSize;
+		private final Range range;
+
+		RangeTask(int start, int end, int minSize, Range range){
+			this.start = start;
+			this.end = end;
+			this.minSize = minSize;
+			this.range = range;
+		}
+
+		@Override
+		protected void compute(){
+
+			if(end - start <= minSize){
+				range.compute(start, end);
+				return;
+			}
+
+			int middle = (start + end) >>> 1;
+			invokeAll(new RangeTask(start, middle, minSize, range), 
+					new RangeTask(middle, end, minSize, range));
+		}
+	}
+}
@@ -0,0 +1,43 @@
+package matrix;
+
+/**
+ * How Signal.runCosamp() uses the threads of its pool: by spreading the columns of the signal
+ * over them, or by also spreading each column's products with the measurement matrix over them
+ * (ParallelMeasurement). Either way the reconstruction is exactly the same.
+ */
+public enum ParallelMode {
+
+	/**
+	 * Each column is reconstructed by one thread
+	 */
+	INTER_COLUMN,
+
+	/**
+	 * The columns are still spread over the pool, and the products phi * x and phi' * r of
+	 * every column are split over it too, so threads without a column of their own help
+	 * with the others
+	 */
+	INTRA_COLUMN;
+
+	//below this many values in phi a product is over before its pieces could be handed out
+	private static final long MIN_INTRA_VALUES = 1L << 21;
+
+	/**
+	 * Pick the mode for a signal. Splitting the products only pays when there are threads
+	 * that would otherwise sit idle and the measurement matrix is big enough that a product
+	 * takes much longer than handing out its pieces.
+	 *
+	 * @param numRows - the number of measurements
+	 * @param signalLength - the length of the signal
+	 * @param numColumns - the number of columns being reconstructed
+	 * @param parallelism - the number of threads in the pool
+	 * @return the mode to run in
+	 */
+	public static ParallelMode choose(int numRows, int signalLength, int numColumns, int parallelism){
+
+		if(numColumns >= parallelism || (long) numRows * signalLength < MIN_INTRA_VALUES){
+			return INTER_COLUMN;
+		}
+		return INTRA_COLUMN;
+	}
+}
@@ -0,0 +1,16 @@
+package matrix;
+
+/**
+ * An approximation M of the matrix A in cgSolve that is cheap to invert. Conjugate gradient
+ * on M^-1 * A converges in fewer iterations than on A when M is close to A.
+ */
+public interface Preconditioner {
+
+	/**
+	 * result = M^-1 * r
+	 * 
+	 * @param r - the current residual
+	 * @param result - filled with the preconditioned residual, never the same array as r
+	 */
+	public void solve(double[] r, double[] result);
+}
@@ -0,0 +1,42 @@
+package matrix;
+
+/**
+ * The preconditioners cgSolve can use on the least squares problem of the cosamp algorithm,
+ * all of them built from the columns of phi on the support.
+ */
+public enum PreconditionerType {
+
+	/**
+	 * Plain conjugate gradient, like cgsolve.m
+	 */
+	NONE,
+
+	/**
+	 * Divide by the squared length of each column (JacobiPreconditioner)
+	 */
+	JACOBI,
+
+	/**
+	 * Invert the diagonal blocks of phi_T' * phi_T, BLOCK_SIZE columns at a time 
+	 * (BlockJacobiPreconditioner)
+	 */
+	BLOCK_JACOBI;
+
+	private static final int BLOCK_SIZE = 4;
+
+	/**
+	 * @param slicedPhiMatrix - the columns of phi on the support
+	 * @return the preconditioner, or null for NONE
+	 */
+	public Preconditioner create(ColumnMajorMatrix slicedPhiMatrix){
+
+		switch(this){
+		case JACOBI:
+			return new JacobiPreconditioner(slicedPhiMatrix);
+		case BLOCK_JACOBI:
+			return new BlockJacobiPreconditioner(slicedPhiMatrix, BLOCK_SIZE);
+		default:
+			return null;
+		}
+	}
+}
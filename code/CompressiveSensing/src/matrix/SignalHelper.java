@@ -1,7 +1,6 @@
 package matrix;
 
-import org.apache.mahout.math.Matrix;
-import org.apache.mahout.math.SparseMatrix;
+import java.util.Arrays;
 
 import signals.algorithm.ProcessSignals;
 import signals.processing.Signal;
@@ -19,185 +18,560 @@ public class SignalHelper {
 	 * 
 	 * @param sparse - the sparse object that will be reconstructed from the CoSaMP algorithm.
 	 * @param measurementMatrix - measurements taken to reconstruct the signal.
-	 * @param phiMatrix
+	 * @param phiMatrix - the measurement matrix
 	 * @param signalSparsity - sparsity of the signal.
 	 * @param iterations - max number of iterations for the algorithm.
 	 * @return the reconstructed matrix
 	 */
-	public static Matrix cosampAlgo(Signal sparse, Matrix measurementMatrix, Matrix phiMatrix,
-			int signalSparsity, int iterations){
+	public static ColumnMajorMatrix cosampAlgo(Signal sparse, ColumnMajorMatrix measurementMatrix, 
+			MeasurementOperator phiMatrix, int signalSparsity, int iterations){
+		return cosampAlgo(sparse, measurementMatrix, phiMatrix, null, signalSparsity, iterations);
+	}
+
+	/**
+	 * Same as cosampAlgo, but the least squares problem on each support is gathered out of the 
+	 * precomputed Gram matrix of phi instead of being multiplied out.
+	 * 
+	 * @param sparse - the sparse object that will be reconstructed from the CoSaMP algorithm.
+	 * @param measurementMatrix - measurements taken to reconstruct the signal.
+	 * @param phiMatrix - the measurement matrix
+	 * @param gramStore - the Gram matrix of phiMatrix, or null to work without it
+	 * @param signalSparsity - sparsity of the signal.
+	 * @param iterations - max number of iterations for the algorithm.
+	 * @return the reconstructed matrix
+	 */
+	public static ColumnMajorMatrix cosampAlgo(Signal sparse, ColumnMajorMatrix measurementMatrix, 
+			MeasurementOperator phiMatrix, GramStore gramStore, int signalSparsity, int iterations){
+		return cosampAlgo(sparse, measurementMatrix, phiMatrix, gramStore, signalSparsity, iterations, 
+				new CosampProgress());
+	}
+
+	/**
+	 * Same as cosampAlgo, reporting how the column went. After every iteration the signal's 
+	 * StoppingPolicy is asked whether the column can stop, and the column always stops once 
+	 * it has run the given number of iterations.
+	 * 
+	 * @param sparse - the sparse object that will be reconstructed from the CoSaMP algorithm.
+	 * @param measurementMatrix - measurements taken to reconstruct the signal.
+	 * @param phiMatrix - the measurement matrix
+	 * @param gramStore - the Gram matrix of phiMatrix, or null to work without it
+	 * @param signalSparsity - sparsity of the signal.
+	 * @param iterations - max number of iterations for the algorithm.
+	 * @param progress - filled with the number of iterations and the reason the column stopped
+	 * @return the reconstructed matrix
+	 */
+	public static ColumnMajorMatrix cosampAlgo(Signal sparse, ColumnMajorMatrix measurementMatrix, 
+			MeasurementOperator phiMatrix, GramStore gramStore, int signalSparsity, int iterations,
+			CosampProgress progress){
 
 		measurementMatrix = MatrixHelper.toSingleColumn(measurementMatrix);
 
-		Matrix xCosampMatrix = new SparseMatrix(phiMatrix.columnSize(), iterations);
-		xCosampMatrix = MatrixHelper.fillWithZeros(xCosampMatrix);
+		//only the latest two estimates are ever needed, and every iteration works in a
+		//workspace of the thread's
+		IterateBuffer xCosampBuffer = new IterateBuffer(phiMatrix.columnSize());
+		CosampWorkspace workspace = CosampWorkspace.acquire(phiMatrix.rowSize(), 
+				phiMatrix.columnSize(), signalSparsity);
+		try{
+			//some initialization
+			int count = 0;
+			ColumnEstimator estimator = new ColumnEstimator(sparse, phiMatrix, gramStore, 
+					measurementMatrix, signalSparsity);
+			StoppingPolicy policy = sparse.getStoppingPolicy();
 
-		//some initialization
-		int count = 0;
-		int verbose = 0;
-		double tolerance = 0.001;
-		Matrix sCosampMatrix = new SparseMatrix(phiMatrix.columnSize(), 1);
-		sCosampMatrix = MatrixHelper.fillWithZeros(sCosampMatrix);
-		Matrix bb2Matrix = new SparseMatrix(phiMatrix.columnSize(), 1);
+			//r = y - phi * s, which is just y before there is an estimate
+			ColumnMajorMatrix rCosampMatrix = measurementMatrix.copy();
+			progress.start(MatrixHelper.norm(measurementMatrix));
+			if(iterations <= 0){
+				progress.stop(StopReason.ITERATION_LIMIT);
+			}
 
-		while(count < iterations){
+			while(progress.getStopReason() == null){
 
-			//backprojection
-			Matrix unionMatrix = backProjection(phiMatrix, sCosampMatrix, 
-					measurementMatrix, signalSparsity);
+				//backprojection, the largest values of |phi' * r| are picked as they are worked out
+				workspace.selector.reset(Math.min(2*signalSparsity, phiMatrix.columnSize()));
+				phiMatrix.transposeTimes(rCosampMatrix.getValues(), workspace.selector);
+				SupportSet unionSupport = mergeSupport(xCosampBuffer.getCurrent(), workspace);
+
+				SparseVector sCosampVector = xCosampBuffer.advance();
+				estimator.estimate(unionSupport, sCosampVector, workspace);
+				count++;
+				residual(phiMatrix, sCosampVector, measurementMatrix, rCosampMatrix);
+
+				checkProgress(progress, policy, count, iterations, xCosampBuffer, rCosampMatrix, 
+						estimator.isSupportStable());
+			}
 
-			Matrix slicedPhiMatrix = MatrixHelper.getColumns(phiMatrix, unionMatrix);
-			Matrix slicedPhiTranspose = slicedPhiMatrix.transpose();
+			return finalEstimate(xCosampBuffer, count, policy).toColumnMajorMatrix();
+		}
+		finally{
+			CosampWorkspace.release(workspace);
+		}
+	}
 
-			//estimate using the cgSolve function
-			Matrix wCosampMatrix = cgSolve(slicedPhiTranspose.times(slicedPhiMatrix), 
-					slicedPhiTranspose.times(measurementMatrix),
-					tolerance, ProcessSignals.getMaxIterations(), verbose);
+	/**
+	 * The same algorithm as cosampAlgo, run on a block of columns that share one measurement 
+	 * matrix. The columns advance in lockstep, so the residuals phi * S and the projections 
+	 * phi' * R of all the columns still running are each worked out in a single matrix product
+	 * instead of one matrix vector product per column. Every column keeps its own support and 
+	 * stopping test, and drops out of the block as soon as it is done. Each column ends up with 
+	 * exactly the same result cosampAlgo would give it.
+	 * 
+	 * @param sparse - the sparse object that will be reconstructed from the CoSaMP algorithm.
+	 * @param measurementMatrix - measurements taken to reconstruct the signal, one column per signal column.
+	 * @param phiMatrix - the measurement matrix shared by every column
+	 * @param gramStore - the Gram matrix of phiMatrix, or null to work without it
+	 * @param signalSparsity - sparsity of each column of the signal.
+	 * @param iterations - max number of iterations for the algorithm.
+	 * @param progress - one for each column, filled with the number of iterations and the
+	 * reason the column stopped
+	 * @return the reconstructed matrix, with one column for each column of measurements
+	 */
+	public static ColumnMajorMatrix cosampBatch(Signal sparse, ColumnMajorMatrix measurementMatrix, 
+			MeasurementOperator phiMatrix, GramStore gramStore, int[] signalSparsity, int iterations,
+			CosampProgress[] progress){
+
+		int numRows = phiMatrix.rowSize();
+		int signalLength = phiMatrix.columnSize();
+		int numColumns = measurementMatrix.columnSize();
+		ColumnMajorMatrix finalMatrix = new ColumnMajorMatrix(signalLength, numColumns);
+		StoppingPolicy policy = sparse.getStoppingPolicy();
+
+		//state for every column of the block
+		IterateBuffer[] xCosampBuffer = new IterateBuffer[numColumns];
+		ColumnMajorMatrix[] rCosampMatrix = new ColumnMajorMatrix[numColumns];
+		ColumnEstimator[] estimator = new ColumnEstimator[numColumns];
+		int[] count = new int[numColumns];
+		int[] activeColumns = new int[numColumns];
+		int maxSparsity = 0;
+		for (int column = 0; column < numColumns; column++) {
+			maxSparsity = Math.max(maxSparsity, signalSparsity[column]);
+		}
+		CosampWorkspace workspace = CosampWorkspace.acquire(numRows, signalLength, maxSparsity);
+		try{
+			workspace.ensureBlock(numColumns);
+			double[] measurementBlock = workspace.measurementBlock;
+			double[] signalBlock = workspace.signalBlock;
+			for (int column = 0; column < numColumns; column++) {
+				ColumnMajorMatrix yMatrix = MatrixHelper.getColumn(measurementMatrix, column);
+				xCosampBuffer[column] = new IterateBuffer(signalLength);
+				rCosampMatrix[column] = yMatrix.copy();
+				estimator[column] = new ColumnEstimator(sparse, phiMatrix, gramStore, yMatrix, 
+						signalSparsity[column]);
+				activeColumns[column] = column;
+				progress[column].start(MatrixHelper.norm(yMatrix));
+				if(iterations <= 0){
+					progress[column].stop(StopReason.ITERATION_LIMIT);
+					finalEstimate(xCosampBuffer[column], 0, policy).toDense(finalMatrix.getValues(), 
+							column * signalLength);
+				}
+			}
 
-			bb2Matrix = MatrixHelper.fillWithZeros(bb2Matrix);
-			bb2Matrix = MatrixHelper.setCellValues(bb2Matrix, unionMatrix, wCosampMatrix);
+			int numActive = iterations > 0 ? numColumns : 0;
+			while(numActive > 0){
 
-			//prune 
-			//corresponds to Matlab code at line 52 in cosamp.m
-			count++;
-			Matrix tempMatrix = MatrixHelper.copyMatrix(bb2Matrix);
-			tempMatrix = MatrixHelper.getAbsMatrix(tempMatrix);
-			Matrix indexMatrix = MatrixHelper.sortDescending(tempMatrix).get(1);
-
-			sCosampMatrix = bb2Matrix.times(0);
-
-			Matrix indiceMatrix = MatrixHelper.getIndices(indexMatrix, 1, signalSparsity);
-			Matrix slicedbb2Matrix = MatrixHelper.getIndices(bb2Matrix, indiceMatrix);
-			sCosampMatrix = MatrixHelper.setCellValues(sCosampMatrix, indiceMatrix, slicedbb2Matrix);
-
-			//corresponds to Matlab code from lines 56-61 in cosamp.m
-			if(count < 10){
-				//current signal estimate
-				xCosampMatrix = MatrixHelper.modifyColumn(xCosampMatrix, count, sCosampMatrix);
-				
-				if(testBreakpoint(xCosampMatrix, sparse.getSignalLength(), count)){
-					break;
+				//phi' * r for every column that is still running, packed at the front of the blocks
+				for (int index = 0; index < numActive; index++) {
+					System.arraycopy(rCosampMatrix[activeColumns[index]].getValues(), 0, measurementBlock, 
+							index * numRows, numRows);
 				}
+				phiMatrix.transposeTimes(measurementBlock, numActive, signalBlock);
+
+				for (int index = 0; index < numActive; index++) {
+					int column = activeColumns[index];
+					TopSelector selector = workspace.selector;
+					selector.reset(Math.min(2*signalSparsity[column], signalLength));
+					int offset = index * signalLength;
+					for (int row = 0; row < signalLength; row++) {
+						selector.offer(row, Math.abs(signalBlock[offset + row]));
+					}
+					SupportSet unionSupport = mergeSupport(xCosampBuffer[column].getCurrent(), workspace);
+					estimator[column].estimate(unionSupport, xCosampBuffer[column].advance(), workspace);
+					count[column]++;
+				}
+
+				//r = y - phi * s for the new estimates
+				for (int index = 0; index < numActive; index++) {
+					xCosampBuffer[activeColumns[index]].getCurrent().toDense(signalBlock, index * signalLength);
+				}
+				phiMatrix.times(signalBlock, numActive, measurementBlock);
+
+				int stillActive = 0;
+				for (int index = 0; index < numActive; index++) {
+					int column = activeColumns[index];
+					double[] r = rCosampMatrix[column].getValues();
+					int offset = index * numRows;
+					for (int row = 0; row < numRows; row++) {
+						r[row] = measurementMatrix.get(row, column) - measurementBlock[offset + row];
+					}
+
+					checkProgress(progress[column], policy, count[column], iterations, xCosampBuffer[column], 
+							rCosampMatrix[column], estimator[column].isSupportStable());
+
+					if(progress[column].getStopReason() != null){
+						finalEstimate(xCosampBuffer[column], count[column], policy).toDense(
+								finalMatrix.getValues(), column * signalLength);
+					}
+					else{
+						activeColumns[stillActive++] = column;
+					}
+				}
+				numActive = stillActive;
 			}
 		}
-		count++;
-		xCosampMatrix = MatrixHelper.removeColumns(xCosampMatrix, count);
-
-		Matrix xHatMatrix = new SparseMatrix(xCosampMatrix.rowSize(), 1);
-		xHatMatrix = MatrixHelper.getLastColumn(xCosampMatrix);
+		finally{
+			CosampWorkspace.release(workspace);
+		}
 
-		return xHatMatrix;
+		return finalMatrix;
 	}
-	
+
 	/**
-	 * Test to see if the algorithm should end now or if it should continue for more iterations
+	 * Update the running norms after an iteration and ask the stopping policy whether the 
+	 * column is done. Nothing is allocated. The estimate is also written to the column's 
+	 * trace, if it has one.
 	 * 
-	 * @param xCosampMatrix - contains the column vector we are testing
-	 * @param signalLength - length of the signal
-	 * @param count - the specific iteration we are at
-	 * @return true if the algorithm should end, false if it should continue
+	 * @param progress - the progress of the column
+	 * @param policy - the stopping policy
+	 * @param count - the number of iterations done
+	 * @param iterations - max number of iterations for the algorithm
+	 * @param xCosampBuffer - the estimates before and after this iteration
+	 * @param rCosampMatrix - y - phi * the latest estimate
+	 * @param supportStable - true if the support of the estimate didn't change
 	 */
-	public static boolean testBreakpoint(Matrix xCosampMatrix, int signalLength, int count){
-		
-		Matrix slicedXCosampMatrixOne = new SparseMatrix(signalLength, 1);
-		Matrix slicedXCosampMatrixTwo = new SparseMatrix(signalLength, 1);
-		
-		slicedXCosampMatrixOne = MatrixHelper.getColumn(xCosampMatrix, count);
-		slicedXCosampMatrixTwo = MatrixHelper.getColumn(xCosampMatrix, count - 1);
-
-		double normOne = MatrixHelper.norm(slicedXCosampMatrixOne.minus(slicedXCosampMatrixTwo));
-		double normTwo = MatrixHelper.norm(slicedXCosampMatrixOne);
-
-		if(normOne < (.01* normTwo)){
-			return true;
+	private static void checkProgress(CosampProgress progress, StoppingPolicy policy, int count,
+			int iterations, IterateBuffer xCosampBuffer, ColumnMajorMatrix rCosampMatrix, 
+			boolean supportStable){
+
+		//walk the rows of both estimates together, in increasing order
+		SparseVector previous = xCosampBuffer.getPrevious();
+		SparseVector current = xCosampBuffer.getCurrent();
+		double changeSum = 0;
+		double estimateSum = 0;
+		int previousPosition = 0;
+		int currentPosition = 0;
+		while(previousPosition < previous.size() || currentPosition < current.size()){
+			int previousRow = previousPosition < previous.size() 
+					? previous.getIndex(previousPosition) : Integer.MAX_VALUE;
+			int currentRow = currentPosition < current.size() 
+					? current.getIndex(currentPosition) : Integer.MAX_VALUE;
+			double previousValue = 0;
+			double currentValue = 0;
+			if(previousRow <= currentRow){
+				previousValue = previous.getValue(previousPosition++);
+			}
+			if(currentRow <= previousRow){
+				currentValue = current.getValue(currentPosition++);
+			}
+			double change = currentValue - previousValue;
+			changeSum += change * change;
+			estimateSum += currentValue * currentValue;
+		}
+
+		IterateTrace trace = progress.getTrace();
+		if(trace != null){
+			trace.write(count, xCosampBuffer.getCurrent());
+		}
+
+		progress.update(count, Math.sqrt(changeSum), Math.sqrt(estimateSum), 
+				MatrixHelper.norm(rCosampMatrix), supportStable);
+		StopReason reason = policy.check(progress);
+		if(reason == null && count >= iterations){
+			reason = StopReason.ITERATION_LIMIT;
+		}
+		if(reason != null){
+			progress.stop(reason);
+			if(trace != null){
+				trace.close();
+			}
 		}
-		return false;
 	}
 
 	/**
-	 * The Matlab code for this can be found in cosamp.m, starting at line 38
+	 * The estimate the algorithm hands back once it stops. Under the policy from cosamp.m,
+	 * which keeps every estimate and cuts the history off at the iteration it stopped on, 
+	 * this is the estimate from the iteration before the last one. Every other policy 
+	 * decided on the latest estimate, so that is the one handed back.
 	 * 
-	 * @param phiMatrix
-	 * @param sCosampMatrix
-	 * @param measurementMatrix
-	 * @param sparsity
-	 * @return a matrix that is a projection to use for the estimation phase
+	 * @param xCosampBuffer - the latest two estimates
+	 * @param count - the number of iterations that were run
+	 * @param policy - the stopping policy the column ran under
+	 * @return the estimate to use as the reconstructed column, still held by the buffer
 	 */
-	public static Matrix backProjection(Matrix phiMatrix, Matrix sCosampMatrix, 
-			Matrix measurementMatrix, int sparsity){
-
-		Matrix intermediateMatrix = phiMatrix.times(sCosampMatrix);
-		Matrix rCosampMatrix = measurementMatrix.minus(intermediateMatrix);
+	private static SparseVector finalEstimate(IterateBuffer xCosampBuffer, int count, 
+			StoppingPolicy policy){
 
-		Matrix proxyCosampMatrix = phiMatrix.transpose().times(rCosampMatrix);
-		proxyCosampMatrix = MatrixHelper.getAbsMatrix(proxyCosampMatrix);
-		Matrix indexMatrix = MatrixHelper.sortDescending(proxyCosampMatrix).get(1);
+		if(count == 0 || !StoppingPolicies.keepsPreviousEstimate(policy)){
+			return xCosampBuffer.getCurrent();
+		}
+		return xCosampBuffer.getPrevious();
+	}
+	
+	/**
+	 * r = y - phi_T * s_T in place, where T is the support of s, so only the columns of phi 
+	 * on the support are touched.
+	 * 
+	 * @param phiMatrix - the measurement matrix
+	 * @param sCosampVector - the estimate
+	 * @param measurementMatrix - the measurements y
+	 * @param rCosampMatrix - filled with the residual
+	 */
+	private static void residual(MeasurementOperator phiMatrix, SparseVector sCosampVector,
+			ColumnMajorMatrix measurementMatrix, ColumnMajorMatrix rCosampMatrix){
+
+		double[] r = rCosampMatrix.getValues();
+		double[] y = measurementMatrix.getValues();
+		phiMatrix.times(sCosampVector, r);
+		for (int row = 0; row < r.length; row++) {
+			r[row] = y[row] - r[row];
+		}
+	}
 
-		Matrix equalityMatrix = MatrixHelper.notEqual(sCosampMatrix, 0.0);
-		Matrix indiceMatrix = MatrixHelper.getIndices(indexMatrix, 1, (2*sparsity));
+	/**
+	 * The backprojection, cosamp.m starting at line 38, for a selector that has already been 
+	 * offered the proxy |phi' * r|, working in the workspace.
+	 * 
+	 * @param sCosampVector - the current estimate
+	 * @param workspace - its selector has been offered |phi' * r| for the current residual
+	 * @return the union support, which belongs to the workspace and is refilled by the next call
+	 */
+	private static SupportSet mergeSupport(SparseVector sCosampVector, CosampWorkspace workspace){
 
-		Matrix findMatrix = MatrixHelper.findNonzero(equalityMatrix);
+		int numLargest = workspace.selector.sortedRows(workspace.rowBuffer);
 
-		return MatrixHelper.union(findMatrix, indiceMatrix);
+		sCosampVector.nonzeroRows(workspace.estimateSupport);
+		workspace.proxySupport.setRows(workspace.rowBuffer, numLargest);
+		workspace.unionSupport.setUnion(workspace.estimateSupport, workspace.proxySupport);
+		return workspace.unionSupport;
 	}
 
 	/**
-	 * Corresponds to the function in cgsolve.m, step-by-step
+	 * Corresponds to the function in cgsolve.m, step-by-step, starting from zero.
 	 * 
-	 * @param firstMatrix
-	 * @param secondMatrix
+	 * @param firstMatrix - the symmetric positive definite matrix A, only ever multiplied by a vector,
+	 * so a NormalEquations operator works without forming phi_T' * phi_T
+	 * @param secondMatrix - the right hand side b
 	 * @param tolerance
 	 * @param maxIterations
 	 * @param verbose
 	 * @return a matrix that is an estimate to be used in reconstruction
 	 */
-	public static Matrix cgSolve(Matrix firstMatrix, Matrix secondMatrix,
+	public static ColumnMajorMatrix cgSolve(LinearOperator firstMatrix, ColumnMajorMatrix secondMatrix,
 			double tolerance, int maxIterations, int verbose){
 
-		Matrix temp = new SparseMatrix(1, 1);
-
-		Matrix xMatrix = new SparseMatrix(MatrixHelper.length(secondMatrix), 1);
-		xMatrix = MatrixHelper.fillWithZeros(xMatrix);
+		ColumnMajorMatrix xMatrix = new ColumnMajorMatrix(secondMatrix.rowSize(), 1);
+		return conjugateGradient(firstMatrix, secondMatrix, xMatrix, tolerance, maxIterations, 
+				verbose).getSolution();
+	}
 
-		Matrix rMatrix = secondMatrix;
-		Matrix dMatrix = rMatrix;
+	/**
+	 * Same as cgSolve, but starting from the given guess and handing back the residual and
+	 * iteration count along with the solution. A guess close to the answer, such as the solution
+	 * from the last iteration of the cosamp algorithm, needs fewer iterations to reach the
+	 * tolerance. The tolerance is still relative to ||b||, but a warm started solve also has to
+	 * shrink its starting residual 100 times over, otherwise a guess that already
+	 * meets the tolerance is handed straight back without fixing the rows that just joined the
+	 * support. From zero the starting residual is b, so cold solves stop exactly where they
+	 * always did. The vectors are updated in place, so nothing is allocated inside the loop.
+	 * 
+	 * @param firstMatrix - the symmetric positive definite matrix A
+	 * @param secondMatrix - the right hand side b
+	 * @param initialMatrix - the first guess at the solution, a column vector that is not changed
+	 * @param tolerance
+	 * @param maxIterations
+	 * @param verbose
+	 * @return the best solution along with its relative residual and the number of iterations
+	 */
+	public static CgResult conjugateGradient(LinearOperator firstMatrix, ColumnMajorMatrix secondMatrix,
+			ColumnMajorMatrix initialMatrix, double tolerance, int maxIterations, int verbose){
+		return conjugateGradient(firstMatrix, secondMatrix, initialMatrix, null, tolerance, 
+				maxIterations, verbose);
+	}
 
-		Matrix deltaMatrix = rMatrix.transpose().times(rMatrix);
-		double delta = deltaMatrix.get(0, 0);
-		Matrix deltaZeroMatrix = secondMatrix.transpose().times(secondMatrix);
-		double deltaZero = deltaZeroMatrix.get(0, 0);
+	/**
+	 * Preconditioned conjugate gradient. The search directions come from M^-1 * r instead of r,
+	 * but the stopping test is still on the true residual ||b - A * x|| so the tolerance means the
+	 * same thing with or without a preconditioner. With a null preconditioner this is exactly 
+	 * plain conjugate gradient.
+	 * 
+	 * @param firstMatrix - the symmetric positive definite matrix A
+	 * @param secondMatrix - the right hand side b
+	 * @param initialMatrix - the first guess at the solution, a column vector that is not changed
+	 * @param preconditioner - approximates A, or null for none
+	 * @param tolerance
+	 * @param maxIterations
+	 * @param verbose
+	 * @return the best solution along with its relative residual and the number of iterations
+	 */
+	public static CgResult conjugateGradient(LinearOperator firstMatrix, ColumnMajorMatrix secondMatrix,
+			ColumnMajorMatrix initialMatrix, Preconditioner preconditioner, double tolerance, 
+			int maxIterations, int verbose){
+
+		int length = secondMatrix.rowSize();
+		double[] x = initialMatrix.getValues().clone();
+		ConjugateGradient solver = new ConjugateGradient(length);
+		solver.solve(firstMatrix, secondMatrix.getValues(), x, length, preconditioner, tolerance, 
+				maxIterations);
+		return new CgResult(new ColumnMajorMatrix(length, 1, x), solver.getRelativeResidual(), 
+				solver.getIterations());
+	}
 
-		int numIters = 0;
+	/**
+	 * Everything one column needs to solve the least squares problem on its supports, kept
+	 * from one cosamp iteration to the next. It is all created with the column, every 
+	 * iteration after that works in the CosampWorkspace.
+	 */
+	private static class ColumnEstimator {
+
+		private final Signal sparse;
+		private final MeasurementOperator phiMatrix;
+		private final GramStore gramStore;
+		private final ColumnMajorMatrix measurementMatrix;
+		private final int sparsity;
+		//the factorization for the column, null when cgSolve is used
+		private final IncrementalCholesky solver;
+		//phi' * y, only needed when the right hand side is gathered from it
+		private final double[] correlation;
+		//the least squares solution from the last iteration, nonzero only on bb2Support
+		private final ColumnMajorMatrix bb2Matrix;
+		private final SupportSet bb2Support;
+		//the support of the latest estimate and the one before, and whether they match
+		private SupportSet prunedSupport;
+		private SupportSet previousSupport;
+		private boolean supportStable;
+		private boolean hasEstimate;
+
+		/**
+		 * @param sparse - the signal being reconstructed, which holds the solver settings and statistics
+		 * @param phiMatrix - the measurement matrix
+		 * @param gramStore - the Gram matrix of phiMatrix, or null
+		 * @param measurementMatrix - the measurements of the column
+		 * @param sparsity
+		 */
+		ColumnEstimator(Signal sparse, MeasurementOperator phiMatrix, GramStore gramStore,
+				ColumnMajorMatrix measurementMatrix, int sparsity){
+
+			this.sparse = sparse;
+			this.phiMatrix = phiMatrix;
+			this.measurementMatrix = measurementMatrix;
+			this.sparsity = sparsity;
+			int length = phiMatrix.columnSize();
+			this.bb2Matrix = new ColumnMajorMatrix(length, 1);
+			this.bb2Support = new SupportSet(length, Math.min(3 * sparsity, length));
+			this.prunedSupport = new SupportSet(length, Math.min(sparsity, length));
+			this.previousSupport = new SupportSet(length, Math.min(sparsity, length));
+
+			if(sparse.getLeastSquaresMethod() == LeastSquaresMethod.CHOLESKY){
+				this.solver = new IncrementalCholesky(phiMatrix);
+				this.gramStore = null;
+				this.correlation = null;
+			}
+			else{
+				this.solver = null;
+				this.gramStore = gramStore;
+				this.correlation = gramStore == null ? null : new double[phiMatrix.columnSize()];
+				if(gramStore != null){
+					phiMatrix.transposeTimes(measurementMatrix.getValues(), correlation);
+				}
+			}
+		}
 
-		Matrix bestXMatrix = xMatrix;
-		double bestRes = Math.sqrt(delta/deltaZero);
-		Matrix bestResMatrix = new SparseMatrix(1, 1);;
-		while((numIters < maxIterations) && (delta > (Math.pow(tolerance, 2) * deltaZero))){
-			Matrix qMatrix = firstMatrix.times(dMatrix);
-			double alpha= delta/(dMatrix.transpose().times(qMatrix).get(0, 0));
-			xMatrix = xMatrix.plus((dMatrix.times(alpha)));
+		/**
+		 * @return true if the latest estimate kept the rows of the one before it
+		 */
+		boolean isSupportStable(){
+			return supportStable;
+		}
 
-			if(((numIters+1) % 50) == 0){
-				rMatrix = secondMatrix.minus(firstMatrix.times(xMatrix));
+		/**
+		 * Estimate the signal on the given support, then prune the estimate back down to the
+		 * largest entries. The Matlab code for this can be found in cosamp.m, starting at line 45
+		 * 
+		 * @param unionSupport - the support from the backprojection
+		 * @param sCosampVector - set to the new estimate, nonzero only at the sparsity largest entries
+		 * @param workspace - the working space for the least squares problem
+		 */
+		void estimate(SupportSet unionSupport, SparseVector sCosampVector, CosampWorkspace workspace){
+
+			int size = unionSupport.size();
+			double[] wValues = workspace.solution;
+			if(solver != null){
+				ColumnMajorMatrix wCosampMatrix = solver.solve(unionSupport, measurementMatrix);
+				System.arraycopy(wCosampMatrix.getValues(), 0, wValues, 0, size);
 			}
 			else{
-				rMatrix = rMatrix.minus(qMatrix.times(alpha));
+				double tolerance = 0.001;
+
+				//phi_T' * phi_T and phi_T' * y, gathered from the Gram store when there is one
+				LinearOperator firstMatrix;
+				double[] secondValues = workspace.rightHandSide;
+				Preconditioner preconditioner = null;
+				PreconditionerType preconditionerType = sparse.getPreconditionerType();
+				if(gramStore != null){
+					workspace.gramSlice.gather(gramStore, unionSupport);
+					firstMatrix = workspace.gramSlice;
+					unionSupport.gather(correlation, secondValues);
+					if(preconditionerType != PreconditionerType.NONE){
+						preconditioner = preconditionerType.create(phiMatrix.gatherColumns(unionSupport));
+					}
+				}
+				else{
+					NormalEquations normalEquations = workspace.normalEquations;
+					normalEquations.gather(phiMatrix, unionSupport);
+					firstMatrix = normalEquations;
+					normalEquations.transposeTimes(measurementMatrix.getValues(), secondValues);
+					if(preconditionerType != PreconditionerType.NONE){
+						preconditioner = preconditionerType.create(normalEquations.toMatrix());
+					}
+				}
+
+				//start from the last solution on the rows it shares with the new support
+				if(sparse.isWarmStart()){
+					unionSupport.gather(bb2Matrix.getValues(), wValues);
+				}
+				else{
+					Arrays.fill(wValues, 0, size, 0);
+				}
+
+				//estimate using the cgSolve function
+				ConjugateGradient conjugateGradient = workspace.conjugateGradient;
+				conjugateGradient.solve(firstMatrix, secondValues, wValues, size, preconditioner, 
+						tolerance, ProcessSignals.getMaxIterations());
+				sparse.getSolverStatistics().record(conjugateGradient.getIterations(), 
+						conjugateGradient.getRelativeResidual());
 			}
-			double deltaOld = delta;
-			deltaMatrix = rMatrix.transpose().times(rMatrix);
-			delta = deltaMatrix.get(0, 0);
-			double beta = delta/deltaOld;
-			dMatrix = rMatrix.plus(dMatrix.times(beta));
-			numIters++;
-			if(Math.sqrt(delta/deltaZero) < bestRes){
-				bestXMatrix = xMatrix;
-				bestRes = Math.sqrt(delta/deltaZero) ;
+
+			//bb2 is only nonzero on the last union, so only those rows need clearing
+			double[] bb2Values = bb2Matrix.getValues();
+			for (int index = 0; index < bb2Support.size(); index++) {
+				bb2Values[bb2Support.getRow(index)] = 0;
 			}
+			unionSupport.scatter(wValues, bb2Values);
+			bb2Support.copyFrom(unionSupport);
 
+			//prune 
+			//corresponds to Matlab code at line 52 in cosamp.m
+			//bb2 is zero off the union, so the largest entries are found among the rows of w
+			double[] absValues = workspace.absValues;
+			for (int index = 0; index < size; index++) {
+				absValues[index] = Math.abs(wValues[index]);
+			}
+			int[] largest = workspace.rowBuffer;
+			int numLargest = MatrixHelper.topIndices(absValues, size, sparsity, workspace.order);
+			for (int index = 0; index < numLargest; index++) {
+				largest[index] = unionSupport.getRow(workspace.order[index]);
+			}
+			Arrays.sort(largest, 0, numLargest);
+
+			SupportSet swap = previousSupport;
+			previousSupport = prunedSupport;
+			prunedSupport = swap;
+			prunedSupport.setRows(largest, numLargest);
+			supportStable = hasEstimate && prunedSupport.equals(previousSupport);
+			hasEstimate = true;
+
+			//keep only the largest entries of bb2
+			prunedSupport.gather(bb2Values, workspace.prunedValues);
+			sCosampVector.set(prunedSupport, workspace.prunedValues);
 		}
-		temp.set(0, 0, numIters);
-		bestResMatrix.set(0, 0, bestRes);
-
-		return bestXMatrix;
 	}
 }
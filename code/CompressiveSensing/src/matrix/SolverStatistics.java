@@ -0,0 +1,75 @@
+package matrix;
+
+/**
+ * Totals for the least squares solves done while reconstructing a signal, so different
+ * solver settings can be compared by the work they do and how well they solve. Columns 
+ * reconstructed on different threads can record into the same statistics.
+ */
+public class SolverStatistics {
+
+	private long solveCount;
+	private long innerIterations;
+	private int maxIterations;
+	private double totalRelativeResidual;
+	private double maxRelativeResidual;
+
+	/**
+	 * Record one solve.
+	 * 
+	 * @param iterations - the number of iterations the solve took
+	 * @param relativeResidual - ||b - A * x|| / ||b|| for the solution it gave back
+	 */
+	public synchronized void record(int iterations, double relativeResidual){
+		solveCount++;
+		innerIterations += iterations;
+		maxIterations = Math.max(maxIterations, iterations);
+		totalRelativeResidual += relativeResidual;
+		maxRelativeResidual = Math.max(maxRelativeResidual, relativeResidual);
+	}
+
+	/**
+	 * @return the number of solves recorded
+	 */
+	public synchronized long getSolveCount(){
+		return solveCount;
+	}
+
+	/**
+	 * @return the total number of iterations over every solve recorded
+	 */
+	public synchronized long getInnerIterations(){
+		return innerIterations;
+	}
+
+	/**
+	 * @return the most iterations any one solve took
+	 */
+	public synchronized int getMaxIterations(){
+		return maxIterations;
+	}
+
+	/**
+	 * @return the average relative residual of the solutions, 0 if nothing was recorded
+	 */
+	public synchronized double getMeanRelativeResidual(){
+		return solveCount == 0 ? 0 : totalRelativeResidual / solveCount;
+	}
+
+	/**
+	 * @return the largest relative residual of any solution
+	 */
+	public synchronized double getMaxRelativeResidual(){
+		return maxRelativeResidual;
+	}
+
+	/**
+	 * Set every total back to zero.
+	 */
+	public synchronized void reset(){
+		solveCount = 0;
+		innerIterations = 0;
+		maxIterations = 0;
+		totalRelativeResidual = 0;
+		maxRelativeResidual = 0;
+	}
+}
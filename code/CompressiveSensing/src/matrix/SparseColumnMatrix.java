@@ -0,0 +1,226 @@
+package matrix;
+
+import java.util.Arrays;
+
+import org.apache.mahout.math.Matrix;
+import org.apache.mahout.math.SparseMatrix;
+
+/**
+ * A matrix stored as compressed sparse columns (CSC): only the nonzero values are kept, column
+ * by column, along with the row of each one, and columnPointers[column] is where a column
+ * starts, so it runs up to columnPointers[column + 1]. The signals are mostly zeros, so this
+ * takes memory for the nonzeros instead of every cell, the sparsity of a column is the
+ * difference of two pointers, and a column can be handed to a measurement matrix as a
+ * SparseVector without ever being written out in full.
+ */
+public class SparseColumnMatrix {
+
+	private final int numRows;
+	private final int numColumns;
+	private final int[] columnPointers;
+	private final int[] rowIndices;
+	private final double[] values;
+
+	/**
+	 * Create a matrix that wraps the given arrays, they are not copied.
+	 *
+	 * @param numRows - number of rows in the matrix
+	 * @param numColumns - number of columns in the matrix
+	 * @param columnPointers - numColumns + 1 positions, where each column starts in rowIndices
+	 * and values, and where the last one ends
+	 * @param rowIndices - the row of every stored value, increasing within each column
+	 * @param values - the stored values
+	 */
+	public SparseColumnMatrix(int numRows, int numColumns, int[] columnPointers, int[] rowIndices,
+			double[] values){
+
+		if(columnPointers.length != numColumns + 1 || columnPointers[0] != 0
+				|| rowIndices.length < columnPointers[numColumns] || values.length < columnPointers[numColumns]){
+			throw new IllegalArgumentException("Column pointers for " + numColumns + " columns don't match "
+					+ rowIndices.length + " rows and " + values.length + " values");
+		}
+
+		this.numRows = numRows;
+		this.numColumns = numColumns;
+		this.columnPointers = columnPointers;
+		this.rowIndices = rowIndices;
+		this.values = values;
+	}
+
+	/**
+	 * Keep the nonzero values of a dense matrix.
+	 *
+	 * @param mtrx
+	 * @return the matrix in compressed sparse columns
+	 */
+	public static SparseColumnMatrix fromColumnMajor(ColumnMajorMatrix mtrx){
+
+		double[] dense = mtrx.getValues();
+		int numRows = mtrx.rowSize();
+		int numStored = 0;
+		for (int index = 0; index < dense.length; index++) {
+			if(dense[index] != 0){
+				numStored++;
+			}
+		}
+
+		int[] columnPointers = new int[mtrx.columnSize() + 1];
+		int[] rowIndices = new int[numStored];
+		double[] values = new double[numStored];
+		int position = 0;
+		for (int column = 0; column < mtrx.columnSize(); column++) {
+			for (int row = 0; row < numRows; row++) {
+				double value = dense[column * numRows + row];
+				if(value != 0){
+					rowIndices[position] = row;
+					values[position++] = value;
+				}
+			}
+			columnPointers[column + 1] = position;
+		}
+		return new SparseColumnMatrix(numRows, mtrx.columnSize(), columnPointers, rowIndices, values);
+	}
+
+	/**
+	 * Keep the nonzero values of a Mahout matrix.
+	 *
+	 * @param mtrx
+	 * @return the matrix in compressed sparse columns
+	 */
+	public static SparseColumnMatrix fromMatrix(Matrix mtrx){
+		return fromColumnMajor(ColumnMajorMatrix.fromMatrix(mtrx));
+	}
+
+	/**
+	 * @return the number of rows in the matrix
+	 */
+	public int rowSize(){
+		return numRows;
+	}
+
+	/**
+	 * @return the number of columns in the matrix
+	 */
+	public int columnSize(){
+		return numColumns;
+	}
+
+	/**
+	 * @return the number of values stored in the whole matrix
+	 */
+	public int getNonzeroCount(){
+		return columnPointers[numColumns];
+	}
+
+	/**
+	 * @param column
+	 * @return the number of values stored in the column
+	 */
+	public int getNonzeroCount(int column){
+		return columnPointers[column + 1] - columnPointers[column];
+	}
+
+	/**
+	 * @param row
+	 * @param column
+	 * @return the value in that cell, 0 if it isn't stored
+	 */
+	public double get(int row, int column){
+
+		int position = Arrays.binarySearch(rowIndices, columnPointers[column], columnPointers[column + 1], row);
+		return position < 0 ? 0 : values[position];
+	}
+
+	/**
+	 * Similar to x(:, column) in Matlab, without writing out the zeros.
+	 *
+	 * @param column
+	 * @param target - a vector of length rowSize() that is set to the column
+	 */
+	public void getColumn(int column, SparseVector target){
+		target.set(rowIndices, values, columnPointers[column], getNonzeroCount(column));
+	}
+
+	/**
+	 * @param column
+	 * @return the column as a sparse vector
+	 */
+	public SparseVector getColumn(int column){
+
+		SparseVector result = new SparseVector(numRows, getNonzeroCount(column));
+		getColumn(column, result);
+		return result;
+	}
+
+	/**
+	 * Write out columns startColumn up to but not including endColumn in full.
+	 *
+	 * @param startColumn
+	 * @param endColumn
+	 * @return a dense matrix with those columns
+	 */
+	public ColumnMajorMatrix toColumnMajorMatrix(int startColumn, int endColumn){
+
+		ColumnMajorMatrix result = new ColumnMajorMatrix(numRows, endColumn - startColumn);
+		double[] dense = result.getValues();
+		for (int column = startColumn; column < endColumn; column++) {
+			int offset = (column - startColumn) * numRows;
+			for (int position = columnPointers[column]; position < columnPointers[column + 1]; position++) {
+				dense[offset + rowIndices[position]] = values[position];
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return the whole matrix written out in full
+	 */
+	public ColumnMajorMatrix toColumnMajorMatrix(){
+		return toColumnMajorMatrix(0, numColumns);
+	}
+
+	/**
+	 * Create a Mahout matrix with the same values as this matrix, only the stored values
+	 * are set.
+	 *
+	 * @return the Mahout matrix
+	 */
+	public Matrix toMatrix(){
+
+		Matrix mtrx = new SparseMatrix(numRows, numColumns);
+		for (int column = 0; column < numColumns; column++) {
+			for (int position = columnPointers[column]; position < columnPointers[column + 1]; position++) {
+				mtrx.set(rowIndices[position], column, values[position]);
+			}
+		}
+		return mtrx;
+	}
+
+	/**
+	 * @return the column pointers, numColumns + 1 of them
+	 */
+	public int[] getColumnPointers(){
+		return columnPointers;
+	}
+
+	/**
+	 * @return the row of every stored value
+	 */
+	public int[] getRowIndices(){
+		return rowIndices;
+	}
+
+	/**
+	 * @return the stored values
+	 */
+	public double[] getValues(){
+		return values;
+	}
+
+	/**
+	 * @return the memory taken by the arrays, in bytes
+	 */
+	public long getSizeInBytes(){
+		return 4L * columnPointers.length + 12L * getNonzeroCount();
+	}
+}
@@ -0,0 +1,177 @@
+package matrix;
+
+import java.util.Arrays;
+
+/**
+ * A vector of which only a few rows are nonzero, stored as the rows in increasing order and 
+ * a value for each. The estimates of the cosamp algorithm have at most sparsity nonzero rows 
+ * out of the whole signal length, so multiplying phi by one of these only has to touch those 
+ * columns of phi. The arrays grow as needed and are reused when the vector is set again.
+ */
+public class SparseVector {
+
+	private final int length;
+	private int[] indices;
+	private double[] values;
+	private int size;
+
+	/**
+	 * Create a vector of all zeros.
+	 *
+	 * @param length - the length of the vector
+	 * @param capacity - the number of nonzero rows to make room for
+	 */
+	public SparseVector(int length, int capacity){
+
+		this.length = length;
+		this.indices = new int[capacity];
+		this.values = new double[capacity];
+		this.size = 0;
+	}
+
+	/**
+	 * @return the length of the vector
+	 */
+	public int getLength(){
+		return length;
+	}
+
+	/**
+	 * @return the number of rows that are stored, some of them may hold a zero
+	 */
+	public int size(){
+		return size;
+	}
+
+	/**
+	 * @param position - between 0 and size() - 1
+	 * @return the row stored at the given position
+	 */
+	public int getIndex(int position){
+		return indices[position];
+	}
+
+	/**
+	 * @param position - between 0 and size() - 1
+	 * @return the value stored at the given position
+	 */
+	public double getValue(int position){
+		return values[position];
+	}
+
+	/**
+	 * @param row
+	 * @return the value at the row, 0 if it isn't stored
+	 */
+	public double get(int row){
+
+		int position = Arrays.binarySearch(indices, 0, size, row);
+		return position < 0 ? 0 : values[position];
+	}
+
+	/**
+	 * Set every value to 0.
+	 */
+	public void clear(){
+		size = 0;
+	}
+
+	/**
+	 * Similar to x = zeros(n, 1); x(T) = w in Matlab.
+	 *
+	 * @param support - the rows to store
+	 * @param supportValues - one value for each row in the support, in increasing order
+	 */
+	public void set(SupportSet support, double[] supportValues){
+
+		if(support.getLength() != length){
+			throw new IllegalArgumentException("Cannot set a vector of length " + length 
+					+ " from a support for length " + support.getLength());
+		}
+
+		size = support.size();
+		if(size > indices.length){
+			indices = new int[size];
+			values = new double[size];
+		}
+		for (int position = 0; position < size; position++) {
+			indices[position] = support.getRow(position);
+			values[position] = supportValues[position];
+		}
+	}
+
+	/**
+	 * Store count rows and their values taken from the given arrays.
+	 *
+	 * @param rows - the rows to store, in increasing order from offset
+	 * @param rowValues - the value of each row
+	 * @param offset - where the first row is in both arrays
+	 * @param count - the number of rows to store
+	 */
+	public void set(int[] rows, double[] rowValues, int offset, int count){
+
+		size = count;
+		if(size > indices.length){
+			indices = new int[size];
+			values = new double[size];
+		}
+		System.arraycopy(rows, offset, indices, 0, count);
+		System.arraycopy(rowValues, offset, values, 0, count);
+	}
+
+	/**
+	 * Similar to find(x ~= 0) in Matlab.
+	 *
+	 * @return the rows that hold a value other than 0
+	 */
+	public SupportSet nonzeroRows(){
+
+		int[] nonzero = new int[size];
+		int numNonzero = 0;
+		for (int position = 0; position < size; position++) {
+			if(values[position] != 0){
+				nonzero[numNonzero++] = indices[position];
+			}
+		}
+		return SupportSet.fromRows(length, Arrays.copyOf(nonzero, numNonzero));
+	}
+
+	/**
+	 * Same as nonzeroRows(), into a set that already exists.
+	 *
+	 * @param target - emptied, then filled with the rows that hold a value other than 0
+	 */
+	void nonzeroRows(SupportSet target){
+
+		target.clear();
+		for (int position = 0; position < size; position++) {
+			if(values[position] != 0){
+				target.add(indices[position]);
+			}
+		}
+	}
+
+	/**
+	 * Write the vector out in full.
+	 *
+	 * @param target - an array of length getLength() to fill
+	 * @param offset - where the vector starts in target
+	 */
+	public void toDense(double[] target, int offset){
+
+		Arrays.fill(target, offset, offset + length, 0);
+		for (int position = 0; position < size; position++) {
+			target[offset + indices[position]] = values[position];
+		}
+	}
+
+	/**
+	 * @return the vector in full, as a column vector
+	 */
+	public ColumnMajorMatrix toColumnMajorMatrix(){
+
+		ColumnMajorMatrix result = new ColumnMajorMatrix(length, 1);
+		toDense(result.getValues(), 0);
+		return result;
+	}
+}
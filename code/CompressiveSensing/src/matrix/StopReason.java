@@ -0,0 +1,32 @@
+package matrix;
+
+/**
+ * Why the cosamp algorithm stopped working on a column.
+ */
+public enum StopReason {
+
+	/**
+	 * The estimate barely changed from the last iteration
+	 */
+	CONVERGED,
+
+	/**
+	 * The estimate explains the measurements, ||y - phi * x|| is small next to ||y||
+	 */
+	RESIDUAL,
+
+	/**
+	 * The support of the estimate has stayed the same for several iterations
+	 */
+	SUPPORT_STABLE,
+
+	/**
+	 * The column ran out of iterations
+	 */
+	ITERATION_LIMIT,
+
+	/**
+	 * The column ran out of time
+	 */
+	TIME_LIMIT
+}
@@ -0,0 +1,153 @@
+package matrix;
+
+/**
+ * The stopping policies for the cosamp algorithm, each checking one thing. anyOf() combines
+ * them so a column stops as soon as one of them says so.
+ */
+public class StoppingPolicies {
+
+	private static final StoppingPolicy COSAMP = relativeChange(0.01, 10);
+
+	/**
+	 * The test from lines 56-61 of cosamp.m: stop once the estimate changes by less than 1%, 
+	 * but only look during the first 9 iterations. Like cosamp.m, a column stopped by this
+	 * policy ends on the estimate from the iteration before the last one. Every other policy
+	 * ends on the latest estimate, the one it looked at.
+	 * 
+	 * @return the policy
+	 */
+	public static StoppingPolicy cosamp(){
+		return COSAMP;
+	}
+
+	/**
+	 * @param policy
+	 * @return true if columns stopped by the policy end on the estimate before the last one
+	 */
+	static boolean keepsPreviousEstimate(StoppingPolicy policy){
+		return policy == COSAMP;
+	}
+
+	/**
+	 * Stop once ||x_k - x_k-1|| < tolerance * ||x_k||.
+	 * 
+	 * @param tolerance
+	 * @return the policy
+	 */
+	public static StoppingPolicy relativeChange(double tolerance){
+		return relativeChange(tolerance, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Stop once ||x_k - x_k-1|| < tolerance * ||x_k||, but only before the given iteration.
+	 * 
+	 * @param tolerance
+	 * @param untilIteration - the change is only looked at while fewer iterations than this are done
+	 * @return the policy
+	 */
+	public static StoppingPolicy relativeChange(final double tolerance, final int untilIteration){
+
+		return new StoppingPolicy(){
+			public StopReason check(CosampProgress progress){
+				if(progress.getIteration() < untilIteration 
+						&& progress.getChangeNorm() < tolerance * progress.getEstimateNorm()){
+					return StopReason.CONVERGED;
+				}
+				return null;
+			}
+		};
+	}
+
+	/**
+	 * Stop once ||y - phi * x_k|| < tolerance * ||y||.
+	 * 
+	 * @param tolerance
+	 * @return the policy
+	 */
+	public static StoppingPolicy residual(final double tolerance){
+
+		return new StoppingPolicy(){
+			public StopReason check(CosampProgress progress){
+				if(progress.getResidualNorm() < tolerance * progress.getMeasurementNorm()){
+					return StopReason.RESIDUAL;
+				}
+				return null;
+			}
+		};
+	}
+
+	/**
+	 * Stop once the support of the estimate has stayed the same for the given number of iterations.
+	 * 
+	 * @param iterations
+	 * @return the policy
+	 */
+	public static StoppingPolicy supportStable(final int iterations){
+
+		return new StoppingPolicy(){
+			public StopReason check(CosampProgress progress){
+				if(progress.getStableIterations() >= iterations){
+					return StopReason.SUPPORT_STABLE;
+				}
+				return null;
+			}
+		};
+	}
+
+	/**
+	 * Stop after the given number of iterations, on top of the limit passed to the algorithm.
+	 * 
+	 * @param iterations
+	 * @return the policy
+	 */
+	public static StoppingPolicy maxIterations(final int iterations){
+
+		return new StoppingPolicy(){
+			public StopReason check(CosampProgress progress){
+				if(progress.getIteration() >= iterations){
+					return StopReason.ITERATION_LIMIT;
+				}
+				return null;
+			}
+		};
+	}
+
+	/**
+	 * Stop once a column has been running for the given time.
+	 * 
+	 * @param nanos - the time limit in nanoseconds
+	 * @return the policy
+	 */
+	public static StoppingPolicy timeLimit(final long nanos){
+
+		return new StoppingPolicy(){
+			public StopReason check(CosampProgress progress){
+				if(progress.getElapsedNanos() >= nanos){
+					return StopReason.TIME_LIMIT;
+				}
+				return null;
+			}
+		};
+	}
+
+	/**
+	 * Stop as soon as any of the policies says so, the first one that does gives the reason.
+	 * 
+	 * @param policies
+	 * @return the policy
+	 */
+	public static StoppingPolicy anyOf(final StoppingPolicy... policies){
+
+		return new StoppingPolicy(){
+			public StopReason check(CosampProgress progress){
+				for(StoppingPolicy policy : policies){
+					StopReason reason = policy.check(progress);
+					if(reason != null){
+						return reason;
+					}
+				}
+				return null;
+			}
+		};
+	}
+}
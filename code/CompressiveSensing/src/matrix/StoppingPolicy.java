@@ -0,0 +1,15 @@
+package matrix;
+
+/**
+ * Decides when the cosamp algorithm can stop working on a column. It is asked once after every
+ * iteration and only gets to look at the running norms in CosampProgress, so checking it
+ * costs nothing. StoppingPolicies has the usual ones.
+ */
+public interface StoppingPolicy {
+
+	/**
+	 * @param progress - where the column is after the latest iteration
+	 * @return why the column should stop now, or null to keep going
+	 */
+	public StopReason check(CosampProgress progress);
+}
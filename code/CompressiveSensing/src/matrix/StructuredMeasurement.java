@@ -0,0 +1,244 @@
+package matrix;
+
+import java.util.Random;
+
+/**
+ * A measurement matrix built from a fast orthonormal transform instead of random values:
+ * phi = sqrt(n / m) * R * T * D, where D flips the sign of random entries of the signal,
+ * T is the transform and R keeps m random rows of the result. Multiplying by phi or phi'
+ * costs a single O(n log n) transform instead of the O(mn) of a stored matrix, and nothing
+ * but the signs and the kept rows has to be stored.
+ * 
+ * The transforms need a power of two length, so a signal whose length isn't a power of two
+ * is padded with zeros up to the next one.
+ */
+public abstract class StructuredMeasurement implements MeasurementOperator {
+
+	private final int numRows;
+	private final int numColumns;
+	private final int transformLength;
+	private final double[] signs;
+	private final int[] keptRows;
+	private final double scale;
+
+	/**
+	 * @param numRows - the number of measurements
+	 * @param numColumns - the length of the signal
+	 * @param seed - the signs and kept rows are determined by this seed
+	 */
+	protected StructuredMeasurement(int numRows, int numColumns, long seed){
+
+		this.numColumns = numColumns;
+		this.transformLength = nextPowerOfTwo(numColumns);
+		if(numRows > transformLength){
+			throw new IllegalArgumentException("Cannot take " + numRows 
+					+ " measurements of a signal of length " + numColumns);
+		}
+		this.numRows = numRows;
+		this.scale = Math.sqrt(transformLength / (double) numRows);
+
+		Random rand = new Random(seed);
+		signs = new double[numColumns];
+		for (int column = 0; column < numColumns; column++) {
+			signs[column] = rand.nextBoolean() ? 1 : -1;
+		}
+
+		//the first numRows entries of a partial Fisher-Yates shuffle are a random subset
+		int[] permutation = new int[transformLength];
+		for (int row = 0; row < transformLength; row++) {
+			permutation[row] = row;
+		}
+		keptRows = new int[numRows];
+		for (int row = 0; row < numRows; row++) {
+			int swapRow = row + rand.nextInt(transformLength - row);
+			int temp = permutation[row];
+			permutation[row] = permutation[swapRow];
+			permutation[swapRow] = temp;
+			keptRows[row] = permutation[row];
+		}
+	}
+
+	/**
+	 * Apply the orthonormal transform T in place.
+	 * 
+	 * @param values - transformLength values
+	 */
+	protected abstract void transform(double[] values);
+
+	/**
+	 * Apply the transpose of the transform, T', in place.
+	 * 
+	 * @param values - transformLength values
+	 */
+	protected abstract void transposeTransform(double[] values);
+
+	/**
+	 * @param row
+	 * @param column
+	 * @return the value of the transform matrix T at the given cell
+	 */
+	protected abstract double transformValue(int row, int column);
+
+	@Override
+	public int rowSize(){
+		return numRows;
+	}
+
+	@Override
+	public int columnSize(){
+		return numColumns;
+	}
+
+	/**
+	 * @return the length the transform works on, the signal length rounded up to a power of two
+	 */
+	public int getTransformLength(){
+		return transformLength;
+	}
+
+	@Override
+	public void times(double[] x, double[] result){
+
+		double[] values = new double[transformLength];
+		for (int column = 0; column < numColumns; column++) {
+			values[column] = signs[column] * x[column];
+		}
+		transform(values);
+		for (int row = 0; row < numRows; row++) {
+			result[row] = scale * values[keptRows[row]];
+		}
+	}
+
+	@Override
+	public void times(SparseVector x, double[] result){
+
+		//the transform touches every value anyway, so it's no cheaper for a sparse vector
+		double[] values = new double[transformLength];
+		for (int position = 0; position < x.size(); position++) {
+			int column = x.getIndex(position);
+			values[column] = signs[column] * x.getValue(position);
+		}
+		transform(values);
+		for (int row = 0; row < numRows; row++) {
+			result[row] = scale * values[keptRows[row]];
+		}
+	}
+
+	@Override
+	public void transposeTimes(double[] r, double[] result){
+
+		double[] values = new double[transformLength];
+		for (int row = 0; row < numRows; row++) {
+			values[keptRows[row]] = scale * r[row];
+		}
+		transposeTransform(values);
+		for (int column = 0; column < numColumns; column++) {
+			result[column] = signs[column] * values[column];
+		}
+	}
+
+	@Override
+	public void transposeTimes(double[] r, TopSelector selector){
+
+		double[] values = new double[transformLength];
+		for (int row = 0; row < numRows; row++) {
+			values[keptRows[row]] = scale * r[row];
+		}
+		transposeTransform(values);
+		for (int column = 0; column < numColumns; column++) {
+			selector.offer(column, Math.abs(signs[column] * values[column]));
+		}
+	}
+
+	@Override
+	public ColumnMajorMatrix gatherColumns(SupportSet support){
+
+		ColumnMajorMatrix slicedMatrix = new ColumnMajorMatrix(numRows, support.size());
+		gatherColumns(support, slicedMatrix.getValues());
+		return slicedMatrix;
+	}
+
+	@Override
+	public void gatherColumns(SupportSet support, double[] result){
+
+		for (int index = 0; index < support.size(); index++) {
+			int column = support.getRow(index);
+			double columnScale = scale * signs[column];
+			for (int row = 0; row < numRows; row++) {
+				result[index * numRows + row] = columnScale * transformValue(keptRows[row], column);
+			}
+		}
+	}
+
+	/**
+	 * The fast transform works on one vector at a time, so the columns of x are multiplied
+	 * one after the other.
+	 */
+	@Override
+	public ColumnMajorMatrix times(ColumnMajorMatrix x){
+
+		ColumnMajorMatrix product = new ColumnMajorMatrix(numRows, x.columnSize());
+		times(x.getValues(), x.columnSize(), product.getValues());
+		return product;
+	}
+
+	/**
+	 * The vectors of x are multiplied one after the other.
+	 */
+	@Override
+	public void times(double[] x, int numVectors, double[] result){
+
+		double[] column = new double[numColumns];
+		double[] product = new double[numRows];
+		for (int block = 0; block < numVectors; block++) {
+			System.arraycopy(x, block * numColumns, column, 0, numColumns);
+			times(column, product);
+			System.arraycopy(product, 0, result, block * numRows, numRows);
+		}
+	}
+
+	/**
+	 * The fast transform works on one vector at a time, so the columns of r are multiplied
+	 * one after the other.
+	 */
+	@Override
+	public ColumnMajorMatrix transposeTimes(ColumnMajorMatrix r){
+
+		ColumnMajorMatrix product = new ColumnMajorMatrix(numColumns, r.columnSize());
+		transposeTimes(r.getValues(), r.columnSize(), product.getValues());
+		return product;
+	}
+
+	/**
+	 * The vectors of r are multiplied one after the other.
+	 */
+	@Override
+	public void transposeTimes(double[] r, int numVectors, double[] result){
+
+		double[] column = new double[numRows];
+		double[] product = new double[numColumns];
+		for (int block = 0; block < numVectors; block++) {
+			System.arraycopy(r, block * numRows, column, 0, numRows);
+			transposeTimes(column, product);
+			System.arraycopy(product, 0, result, block * numColumns, numColumns);
+		}
+	}
+
+	@Override
+	public long getSizeInBytes(){
+		return 8L * signs.length + 4L * keptRows.length;
+	}
+
+	/**
+	 * @param length
+	 * @return the smallest power of two that is at least the length
+	 */
+	public static int nextPowerOfTwo(int length){
+
+		int power = 1;
+		while(power < length){
+			power <<= 1;
+		}
+		return power;
+	}
+}
@@ -0,0 +1,363 @@
+package matrix;
+
+import java.util.Arrays;
+
+/**
+ * A set of rows of a signal vector, such as the rows where the current estimate is nonzero
+ * or the rows picked out by the backprojection. The rows are kept both as a sorted int array,
+ * for iterating and merging, and as a bitset, for checking whether a row is in the set.
+ * Rows start at 0, unlike the 1-based index matrices used by the Matlab style functions
+ * in MatrixHelper.
+ * Sets handed out by the static methods never change. A CosampWorkspace also keeps sets with
+ * room for a fixed number of rows that it refills in every iteration instead of creating new ones.
+ */
+public class SupportSet {
+
+	private final int length;
+	private final int[] rows;
+	private final long[] words;
+	//the first size values of rows are in the set
+	private int size;
+
+	/**
+	 * @param length - the length of the signal, every row has to be less than this
+	 * @param rows - sorted rows without dupes, the array is not copied
+	 */
+	private SupportSet(int length, int[] rows){
+
+		this.length = length;
+		this.rows = rows;
+		this.size = rows.length;
+		this.words = new long[(length + 63) >>> 6];
+		for(int row : rows){
+			words[row >>> 6] |= 1L << row;
+		}
+	}
+
+	/**
+	 * An empty set that can be refilled with up to capacity rows.
+	 *
+	 * @param length - the length of the signal, every row has to be less than this
+	 * @param capacity - the most rows the set will ever hold
+	 */
+	SupportSet(int length, int capacity){
+
+		this.length = length;
+		this.rows = new int[capacity];
+		this.size = 0;
+		this.words = new long[(length + 63) >>> 6];
+	}
+
+	/**
+	 * Create a set from rows in any order, dupes are dropped.
+	 *
+	 * @param length - the length of the signal
+	 * @param rows - the rows in the set, starting at 0
+	 * @return the new set
+	 */
+	public static SupportSet fromRows(int length, int[] rows){
+
+		int[] sortedRows = rows.clone();
+		Arrays.sort(sortedRows);
+
+		int size = 0;
+		for (int index = 0; index < sortedRows.length; index++) {
+			if(sortedRows[index] < 0 || sortedRows[index] >= length){
+				throw new IllegalArgumentException("Row " + sortedRows[index]
+						+ " is outside a signal of length " + length);
+			}
+			if(size == 0 || sortedRows[index] != sortedRows[size - 1]){
+				sortedRows[size++] = sortedRows[index];
+			}
+		}
+
+		return new SupportSet(length, Arrays.copyOf(sortedRows, size));
+	}
+
+	/**
+	 * Similar to start:end-1 in Matlab, every row from start up to but not including end.
+	 *
+	 * @param length - the length of the signal
+	 * @param start - the first row in the set
+	 * @param end - one past the last row in the set
+	 * @return the new set
+	 */
+	public static SupportSet range(int length, int start, int end){
+
+		if(start < 0 || end > length || start > end){
+			throw new IllegalArgumentException("Rows " + start + " to " + end 
+					+ " are outside a signal of length " + length);
+		}
+
+		int[] rows = new int[end - start];
+		for (int index = 0; index < rows.length; index++) {
+			rows[index] = start + index;
+		}
+		return new SupportSet(length, rows);
+	}
+
+	/**
+	 * Similar to find(x ~= 0) in Matlab, the set of rows where the vector is nonzero.
+	 *
+	 * @param values - the values of a column vector
+	 * @return the set of nonzero rows
+	 */
+	public static SupportSet nonzeroRows(double[] values){
+
+		int size = 0;
+		for (int row = 0; row < values.length; row++) {
+			if(values[row] != 0){
+				size++;
+			}
+		}
+
+		int[] nonzero = new int[size];
+		size = 0;
+		for (int row = 0; row < values.length; row++) {
+			if(values[row] != 0){
+				nonzero[size++] = row;
+			}
+		}
+
+		return new SupportSet(values.length, nonzero);
+	}
+
+	/**
+	 * Union of the two sets. Both row arrays are already sorted, so they are merged
+	 * in a single pass.
+	 *
+	 * @param other - the other set in the union, must be for a signal of the same length
+	 * @return a new set with every row that is in either set
+	 */
+	public SupportSet union(SupportSet other){
+
+		if(length != other.length){
+			throw new IllegalArgumentException("Cannot union sets for signals of length "
+					+ length + " and " + other.length);
+		}
+
+		int[] merged = new int[size + other.size];
+		int mergedSize = merge(this, other, merged);
+		return new SupportSet(length, Arrays.copyOf(merged, mergedSize));
+	}
+
+	/**
+	 * Refill this set with the union of two others, without creating anything.
+	 *
+	 * @param first - must be for a signal of the same length
+	 * @param second - must be for a signal of the same length
+	 */
+	void setUnion(SupportSet first, SupportSet second){
+
+		clear();
+		size = merge(first, second, rows);
+		for (int index = 0; index < size; index++) {
+			words[rows[index] >>> 6] |= 1L << rows[index];
+		}
+	}
+
+	/**
+	 * Merge the sorted rows of two sets into the target array.
+	 *
+	 * @return the number of rows in the union
+	 */
+	private static int merge(SupportSet firstSet, SupportSet secondSet, int[] merged){
+
+		int[] firstRows = firstSet.rows;
+		int[] secondRows = secondSet.rows;
+		int first = 0;
+		int second = 0;
+		int size = 0;
+		while(first < firstSet.size && second < secondSet.size){
+			if(firstRows[first] < secondRows[second]){
+				merged[size++] = firstRows[first++];
+			}
+			else if(firstRows[first] > secondRows[second]){
+				merged[size++] = secondRows[second++];
+			}
+			else{
+				merged[size++] = firstRows[first++];
+				second++;
+			}
+		}
+		while(first < firstSet.size){
+			merged[size++] = firstRows[first++];
+		}
+		while(second < secondSet.size){
+			merged[size++] = secondRows[second++];
+		}
+		return size;
+	}
+
+	/**
+	 * Refill this set with the given rows, without creating anything.
+	 *
+	 * @param sortedRows - rows in increasing order, without dupes
+	 * @param count - the number of rows to take from the start of sortedRows
+	 */
+	void setRows(int[] sortedRows, int count){
+
+		clear();
+		System.arraycopy(sortedRows, 0, rows, 0, count);
+		size = count;
+		for (int index = 0; index < size; index++) {
+			words[rows[index] >>> 6] |= 1L << rows[index];
+		}
+	}
+
+	/**
+	 * Add a row after the ones already in the set.
+	 *
+	 * @param row - larger than every row already in the set
+	 */
+	void add(int row){
+
+		rows[size++] = row;
+		words[row >>> 6] |= 1L << row;
+	}
+
+	/**
+	 * Refill this set with the rows of another one.
+	 *
+	 * @param other - must be for a signal of the same length
+	 */
+	void copyFrom(SupportSet other){
+		setRows(other.rows, other.size);
+	}
+
+	/**
+	 * Empty the set.
+	 */
+	void clear(){
+
+		for (int index = 0; index < size; index++) {
+			words[rows[index] >>> 6] = 0;
+		}
+		size = 0;
+	}
+
+	/**
+	 * @return the number of rows in the set
+	 */
+	public int size(){
+		return size;
+	}
+
+	/**
+	 * @return the length of the signal this set is for
+	 */
+	public int getLength(){
+		return length;
+	}
+
+	/**
+	 * @param position - between 0 and size() - 1
+	 * @return the row at that position, rows are in increasing order
+	 */
+	public int getRow(int position){
+		return rows[position];
+	}
+
+	/**
+	 * @param row
+	 * @return true if the row is in the set
+	 */
+	public boolean contains(int row){
+		return row >= 0 && row < length && (words[row >>> 6] & (1L << row)) != 0;
+	}
+
+	/**
+	 * @return a copy of the rows in the set, in increasing order
+	 */
+	public int[] toArray(){
+		return Arrays.copyOf(rows, size);
+	}
+
+	/**
+	 * Similar to phi(:, T) in Matlab, a matrix with just the columns of phi that are in this set.
+	 *
+	 * @param phiMatrix - the matrix to take the columns from
+	 * @return a matrix with one column for each row in the set, in increasing order
+	 */
+	public ColumnMajorMatrix gatherColumns(ColumnMajorMatrix phiMatrix){
+
+		int numRows = phiMatrix.rowSize();
+		ColumnMajorMatrix slicedMatrix = new ColumnMajorMatrix(numRows, size);
+		for (int index = 0; index < size; index++) {
+			System.arraycopy(phiMatrix.getValues(), rows[index] * numRows, slicedMatrix.getValues(),
+					index * numRows, numRows);
+		}
+		return slicedMatrix;
+	}
+
+	/**
+	 * Similar to x(T) in Matlab, the values of a vector at the rows in this set.
+	 *
+	 * @param values - the full vector
+	 * @return the values at the rows in the set, in increasing order
+	 */
+	public double[] gather(double[] values){
+
+		double[] gathered = new double[size];
+		gather(values, gathered);
+		return gathered;
+	}
+
+	/**
+	 * Same as gather(double[]), into an array that already exists.
+	 *
+	 * @param values - the full vector
+	 * @param target - filled with the values at the rows in the set, in increasing order
+	 */
+	public void gather(double[] values, double[] target){
+
+		for (int index = 0; index < size; index++) {
+			target[index] = values[rows[index]];
+		}
+	}
+
+	/**
+	 * Similar to x(T) = w in Matlab, sets the rows in this set to the given values.
+	 * Rows that aren't in the set are left alone.
+	 *
+	 * @param values - one value for each row in the set, in increasing order
+	 * @param target - the full vector to set the values in
+	 */
+	public void scatter(double[] values, double[] target){
+
+		for (int index = 0; index < size; index++) {
+			target[rows[index]] = values[index];
+		}
+	}
+
+	/**
+	 * @return true if the other object is a set with the same rows for a signal of the same length
+	 */
+	@Override
+	public boolean equals(Object obj){
+
+		if(!(obj instanceof SupportSet)){
+			return false;
+		}
+		SupportSet other = (SupportSet) obj;
+		if(length != other.length || size != other.size){
+			return false;
+		}
+		for (int index = 0; index < size; index++) {
+			if(rows[index] != other.rows[index]){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public int hashCode(){
+
+		int hash = length;
+		for (int index = 0; index < size; index++) {
+			hash = 31 * hash + rows[index];
+		}
+		return hash;
+	}
+}
@@ -0,0 +1,142 @@
+package matrix;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the rows of the k largest values it has been offered, so the largest values of a
+ * vector can be found while the vector is being worked out instead of after it has been
+ * stored. The rows are held in a heap with the smallest kept value on top, so a value that
+ * doesn't make the cut costs one comparison. Ties go to the smaller row, the same order
+ * MatrixHelper.topIndices() uses, so both pick exactly the same rows.
+ */
+public class TopSelector {
+
+	//how many values an operator works out before offering them
+	static final int BLOCK_SIZE = 64;
+
+	private final int[] rows;
+	private final double[] values;
+	private int k;
+	private int size;
+
+	//room for an operator to work out BLOCK_SIZE values at a time
+	final double[] block = new double[BLOCK_SIZE];
+	//room for an operator that works out all of phi' * r before offering it, created by the
+	//first one that needs it
+	double[] proxy;
+
+	/**
+	 * @param capacity - the largest k the selector will be reset to
+	 */
+	public TopSelector(int capacity){
+		this.rows = new int[capacity];
+		this.values = new double[capacity];
+	}
+
+	/**
+	 * Forget every row and start keeping the rows of the k largest values.
+	 *
+	 * @param k - the number of rows to keep, no more than the capacity
+	 */
+	public void reset(int k){
+
+		if(k < 0 || k > rows.length){
+			throw new IllegalArgumentException("Cannot keep " + k + " rows in a selector for "
+					+ rows.length);
+		}
+		this.k = k;
+		this.size = 0;
+	}
+
+	/**
+	 * @param row
+	 * @param value - the value at that row
+	 */
+	public void offer(int row, double value){
+
+		if(size < k){
+			//add to the bottom and move up past every kept value that is larger
+			int position = size++;
+			while(position > 0){
+				int parent = (position - 1) >>> 1;
+				if(!comesBefore(rows[parent], values[parent], row, value)){
+					break;
+				}
+				rows[position] = rows[parent];
+				values[position] = values[parent];
+				position = parent;
+			}
+			rows[position] = row;
+			values[position] = value;
+		}
+		else if(k > 0 && comesBefore(row, value, rows[0], values[0])){
+			siftDown(row, value);
+		}
+	}
+
+	/**
+	 * @return the number of rows kept, k once at least k values have been offered
+	 */
+	public int size(){
+		return size;
+	}
+
+	/**
+	 * @param target - filled with the rows that were kept, in increasing order
+	 * @return the number of rows
+	 */
+	public int sortedRows(int[] target){
+
+		System.arraycopy(rows, 0, target, 0, size);
+		Arrays.sort(target, 0, size);
+		return size;
+	}
+
+	/**
+	 * @param length - the number of values
+	 * @return room for length values that belongs to this selector, created again only when
+	 * it is too small
+	 */
+	double[] proxy(int length){
+
+		if(proxy == null || proxy.length < length){
+			proxy = new double[length];
+		}
+		return proxy;
+	}
+
+	/**
+	 * Replace the top of the heap and move the new value down past every smaller one.
+	 */
+	private void siftDown(int row, double value){
+
+		int position = 0;
+		while(true){
+			int child = 2 * position + 1;
+			if(child >= size){
+				break;
+			}
+			if(child + 1 < size && comesBefore(rows[child], values[child], rows[child + 1], values[child + 1])){
+				child++;
+			}
+			if(!comesBefore(row, value, rows[child], values[child])){
+				break;
+			}
+			rows[position] = rows[child];
+			values[position] = values[child];
+			position = child;
+		}
+		rows[position] = row;
+		values[position] = value;
+	}
+
+	/**
+	 * The order of MatrixHelper.topIndices(), a larger value comes first and equal values go
+	 * by row.
+	 */
+	private static boolean comesBefore(int firstRow, double firstValue, int secondRow, double secondValue){
+
+		int comparison = Double.compare(firstValue, secondValue);
+		return comparison > 0 || (comparison == 0 && firstRow < secondRow);
+	}
+}
@@ -0,0 +1,391 @@
+package matrix;
+
+/**
+ * The handful of loops every product in the cosamp algorithm comes down to: dot products,
+ * y += alpha * x, y = x + beta * y, squared lengths, the largest absolute value and matrix
+ * vector products on a column major array, both phi * x (a sum of columns) and phi' * r (one
+ * dot product per column). Which version runs is picked once, from the cosamp.kernels
+ * property, and get() hands it back.
+ *
+ * The methods written out here are the plain loops, which is all SCALAR uses. The JIT already
+ * turns the element by element loops (axpy, scaledAdd, absMax) into SIMD instructions, but it
+ * has to keep a dot product's single running sum in order, so UNROLLED only replaces the sums:
+ * dot products keep four partial sums, and both matrix vector products work on four columns
+ * at a time, so the result or r is only passed over once for every four columns. The matrix
+ * vector products still add every value in the same order as SCALAR and give exactly the same
+ * results, only dot() and squaredNorm() can differ from SCALAR in the last bits.
+ *
+ * VECTOR is written with the Vector API, which is still an incubator module, so it is kept in
+ * the vector source folder and loaded by name (see VectorApiKernels and the README). It is 
+ * the default whenever it was compiled and the JVM was started with --add-modules 
+ * jdk.incubator.vector, and is the same as UNROLLED otherwise. Its dot products give exactly
+ * the same results as UNROLLED's, and phi' * r is worked out the same way, on four lanes, so 
+ * it can differ from SCALAR and UNROLLED in the last bits. Every product of a measurement 
+ * matrix goes through the same kernels, so a column still comes out the same whether it is
+ * reconstructed on its own or in a batch.
+ */
+public enum VectorKernels implements Kernels {
+
+	/**
+	 * The plain loops, the fallback
+	 */
+	SCALAR,
+
+	/**
+	 * Four partial sums or four columns at a time
+	 */
+	UNROLLED {
+
+		@Override
+		public double dot(double[] x, int xOffset, double[] y, int yOffset, int length){
+
+			double sum0 = 0;
+			double sum1 = 0;
+			double sum2 = 0;
+			double sum3 = 0;
+			int index = 0;
+			for (; index + 3 < length; index += 4) {
+				sum0 += x[xOffset + index] * y[yOffset + index];
+				sum1 += x[xOffset + index + 1] * y[yOffset + index + 1];
+				sum2 += x[xOffset + index + 2] * y[yOffset + index + 2];
+				sum3 += x[xOffset + index + 3] * y[yOffset + index + 3];
+			}
+			for (; index < length; index++) {
+				sum0 += x[xOffset + index] * y[yOffset + index];
+			}
+			return (sum0 + sum1) + (sum2 + sum3);
+		}
+
+		@Override
+		public double squaredNorm(double[] x, int offset, int length){
+			return dot(x, offset, x, offset, length);
+		}
+
+		/**
+		 * Adds four nonzero columns into the result in each pass over it. Java adds left to
+		 * right, so every value is summed in the same order as one column at a time.
+		 */
+		@Override
+		public void gemvRows(double[] a, int numRows, int startRow, int endRow, int numColumns, 
+				double[] x, double[] result){
+
+			for (int row = startRow; row < endRow; row++) {
+				result[row] = 0;
+			}
+			int column0 = nextNonzero(x, 0, numColumns);
+			while(column0 < numColumns){
+				int column1 = nextNonzero(x, column0 + 1, numColumns);
+				int column2 = nextNonzero(x, column1 + 1, numColumns);
+				int column3 = nextNonzero(x, column2 + 1, numColumns);
+				if(column3 >= numColumns){
+					//fewer than four left, add them one at a time
+					for (int column = column0; column < numColumns; column++) {
+						if(x[column] != 0){
+							axpy(x[column], a, column * numRows + startRow, result, startRow, 
+									endRow - startRow);
+						}
+					}
+					return;
+				}
+
+				double scale0 = x[column0];
+				double scale1 = x[column1];
+				double scale2 = x[column2];
+				double scale3 = x[column3];
+				int offset0 = column0 * numRows;
+				int offset1 = column1 * numRows;
+				int offset2 = column2 * numRows;
+				int offset3 = column3 * numRows;
+				for (int row = startRow; row < endRow; row++) {
+					result[row] = result[row] + scale0 * a[offset0 + row] + scale1 * a[offset1 + row]
+							+ scale2 * a[offset2 + row] + scale3 * a[offset3 + row];
+				}
+				column0 = nextNonzero(x, column3 + 1, numColumns);
+			}
+		}
+
+		/**
+		 * Four dot products at once, so r is read once for every four columns. Each one still
+		 * has a single running sum, the same as SCALAR's.
+		 */
+		@Override
+		public void gemvTranspose(double[] a, int aOffset, int numRows, int numColumns, double[] r, 
+				int rOffset, double[] result, int resultOffset){
+
+			int column = 0;
+			for (; column + 3 < numColumns; column += 4) {
+				int offset0 = aOffset + column * numRows;
+				int offset1 = offset0 + numRows;
+				int offset2 = offset1 + numRows;
+				int offset3 = offset2 + numRows;
+				double sum0 = 0;
+				double sum1 = 0;
+				double sum2 = 0;
+				double sum3 = 0;
+				for (int row = 0; row < numRows; row++) {
+					double value = r[rOffset + row];
+					sum0 += a[offset0 + row] * value;
+					sum1 += a[offset1 + row] * value;
+					sum2 += a[offset2 + row] * value;
+					sum3 += a[offset3 + row] * value;
+				}
+				result[resultOffset + column] = sum0;
+				result[resultOffset + column + 1] = sum1;
+				result[resultOffset + column + 2] = sum2;
+				result[resultOffset + column + 3] = sum3;
+			}
+			for (; column < numColumns; column++) {
+				double sum = 0;
+				int offset = aOffset + column * numRows;
+				for (int row = 0; row < numRows; row++) {
+					sum += a[offset + row] * r[rOffset + row];
+				}
+				result[resultOffset + column] = sum;
+			}
+		}
+	},
+
+	/**
+	 * The Vector API versions, UNROLLED when they aren't there
+	 */
+	VECTOR {
+
+		@Override
+		public double dot(double[] x, int xOffset, double[] y, int yOffset, int length){
+			return VectorApi.KERNELS.dot(x, xOffset, y, yOffset, length);
+		}
+
+		@Override
+		public void axpy(double alpha, double[] x, int xOffset, double[] y, int yOffset, int length){
+			VectorApi.KERNELS.axpy(alpha, x, xOffset, y, yOffset, length);
+		}
+
+		@Override
+		public void scaledAdd(double[] x, int xOffset, double beta, double[] y, int yOffset, int length){
+			VectorApi.KERNELS.scaledAdd(x, xOffset, beta, y, yOffset, length);
+		}
+
+		@Override
+		public double squaredNorm(double[] x, int offset, int length){
+			return VectorApi.KERNELS.squaredNorm(x, offset, length);
+		}
+
+		@Override
+		public double absMax(double[] x, int offset, int length){
+			return VectorApi.KERNELS.absMax(x, offset, length);
+		}
+
+		@Override
+		public void gemvRows(double[] a, int numRows, int startRow, int endRow, int numColumns, 
+				double[] x, double[] result){
+			VectorApi.KERNELS.gemvRows(a, numRows, startRow, endRow, numColumns, x, result);
+		}
+
+		@Override
+		public void gemvTranspose(double[] a, int aOffset, int numRows, int numColumns, double[] r, 
+				int rOffset, double[] result, int resultOffset){
+			VectorApi.KERNELS.gemvTranspose(a, aOffset, numRows, numColumns, r, rOffset, result, 
+					resultOffset);
+		}
+	};
+
+	private static final VectorKernels SELECTED = select(System.getProperty("cosamp.kernels"));
+
+	/**
+	 * @return the kernels picked by the cosamp.kernels property, if it isn't set VECTOR when 
+	 * the Vector API kernels can be used and UNROLLED when they can't
+	 */
+	public static VectorKernels get(){
+		return SELECTED;
+	}
+
+	/**
+	 * @return true if VECTOR runs the Vector API kernels rather than UNROLLED's loops
+	 */
+	public static boolean isVectorApiAvailable(){
+		return VectorApi.KERNELS != UNROLLED;
+	}
+
+	/**
+	 * @param name - scalar, unrolled or vector, in any case, or null for the default
+	 * @return the kernels with that name
+	 */
+	static VectorKernels select(String name){
+
+		if(name == null){
+			return isVectorApiAvailable() ? VECTOR : UNROLLED;
+		}
+		for(VectorKernels kernels : values()){
+			if(kernels.name().equalsIgnoreCase(name.trim())){
+				if(kernels == VECTOR && !isVectorApiAvailable()){
+					throw new IllegalArgumentException("cosamp.kernels=" + name + " needs the classes "
+							+ "from the vector source folder and --add-modules jdk.incubator.vector");
+				}
+				return kernels;
+			}
+		}
+		throw new IllegalArgumentException("Unknown cosamp.kernels: " + name);
+	}
+
+	/**
+	 * @return the first column from start on where x isn't 0, or end if there isn't one
+	 */
+	static int nextNonzero(double[] x, int start, int end){
+
+		while(start < end && x[start] == 0){
+			start++;
+		}
+		return start;
+	}
+
+	/**
+	 * x' * y over length values.
+	 */
+	@Override
+	public double dot(double[] x, int xOffset, double[] y, int yOffset, int length){
+
+		double sum = 0;
+		for (int index = 0; index < length; index++) {
+			sum += x[xOffset + index] * y[yOffset + index];
+		}
+		return sum;
+	}
+
+	/**
+	 * y = y + alpha * x over length values.
+	 */
+	@Override
+	public void axpy(double alpha, double[] x, int xOffset, double[] y, int yOffset, int length){
+
+		for (int index = 0; index < length; index++) {
+			y[yOffset + index] += alpha * x[xOffset + index];
+		}
+	}
+
+	/**
+	 * y = x + y * beta over length values, the update of the search direction in cgSolve.
+	 */
+	@Override
+	public void scaledAdd(double[] x, int xOffset, double beta, double[] y, int yOffset, int length){
+
+		for (int index = 0; index < length; index++) {
+			y[yOffset + index] = x[xOffset + index] + y[yOffset + index] * beta;
+		}
+	}
+
+	/**
+	 * x' * x over length values.
+	 */
+	@Override
+	public double squaredNorm(double[] x, int offset, int length){
+
+		double sum = 0;
+		for (int index = 0; index < length; index++) {
+			sum += x[offset + index] * x[offset + index];
+		}
+		return sum;
+	}
+
+	/**
+	 * The largest absolute value over length values, 0 if there are none.
+	 */
+	@Override
+	public double absMax(double[] x, int offset, int length){
+
+		double max = 0;
+		for (int index = 0; index < length; index++) {
+			max = Math.max(max, Math.abs(x[offset + index]));
+		}
+		return max;
+	}
+
+	/**
+	 * result = A * x, adding up the columns of A, the ones where x is 0 are skipped.
+	 *
+	 * @param a - the matrix, stored column by column
+	 * @param numRows
+	 * @param numColumns
+	 * @param x - numColumns values
+	 * @param result - filled with numRows values
+	 */
+	public void gemv(double[] a, int numRows, int numColumns, double[] x, double[] result){
+		gemvRows(a, numRows, 0, numRows, numColumns, x, result);
+	}
+
+	/**
+	 * Rows startRow up to but not including endRow of A * x, the rest of the result is left
+	 * alone. Every row is summed in the same order as gemv() sums it.
+	 *
+	 * @param a - the matrix, stored column by column
+	 * @param numRows
+	 * @param startRow
+	 * @param endRow
+	 * @param numColumns
+	 * @param x - numColumns values
+	 * @param result - rows startRow to endRow are filled
+	 */
+	@Override
+	public void gemvRows(double[] a, int numRows, int startRow, int endRow, int numColumns, 
+			double[] x, double[] result){
+
+		for (int row = startRow; row < endRow; row++) {
+			result[row] = 0;
+		}
+		for (int column = 0; column < numColumns; column++) {
+			if(x[column] != 0){
+				axpy(x[column], a, column * numRows + startRow, result, startRow, endRow - startRow);
+			}
+		}
+	}
+
+	/**
+	 * result = A' * r, one dot product with r for each column of A.
+	 *
+	 * @param a - the matrix, stored column by column
+	 * @param numRows
+	 * @param numColumns
+	 * @param r - numRows values
+	 * @param result - filled with numColumns values
+	 */
+	public void gemvTranspose(double[] a, int numRows, int numColumns, double[] r, double[] result){
+		gemvTranspose(a, 0, numRows, numColumns, r, 0, result, 0);
+	}
+
+	/**
+	 * Same as gemvTranspose(double[], int, int, double[], double[]) for a matrix that starts
+	 * at aOffset, such as a block of columns of a bigger matrix, and an r that starts at 
+	 * rOffset, such as one vector of a block, with the product written from resultOffset on.
+	 */
+	@Override
+	public void gemvTranspose(double[] a, int aOffset, int numRows, int numColumns, double[] r, 
+			int rOffset, double[] result, int resultOffset){
+
+		for (int column = 0; column < numColumns; column++) {
+			result[resultOffset + column] = dot(a, aOffset + column * numRows, r, rOffset, numRows);
+		}
+	}
+
+	/**
+	 * Loads the Vector API kernels the first time VECTOR is used or picked.
+	 */
+	private static class VectorApi {
+
+		static final Kernels KERNELS = load();
+
+		/**
+		 * @return the Vector API kernels, or UNROLLED if they weren't compiled or the 
+		 * jdk.incubator.vector module isn't there
+		 */
+		private static Kernels load(){
+
+			try{
+				return (Kernels) Class.forName("matrix.VectorApiKernels").getDeclaredConstructor()
+						.newInstance();
+			} catch (Exception e) {
+				return UNROLLED;
+			} catch (LinkageError e) {
+				return UNROLLED;
+			}
+		}
+	}
+}
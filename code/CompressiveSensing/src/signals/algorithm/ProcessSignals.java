@@ -1,6 +1,8 @@
 package signals.algorithm;
 
 import java.io.File;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 import matrix.MatrixHelper;
 
@@ -40,12 +42,65 @@ public class ProcessSignals {
 		return MAX_ITERATIONS;
 	}
 
+	/**
+	 * Returns the number of threads used to reconstruct the columns of a signal,
+	 * which can be set with the cosamp.threads system property
+	 * 
+	 * @return the number of threads
+	 */
+	public static int getNumThreads(){
+		return Integer.getInteger("cosamp.threads", Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Returns the number of columns reconstructed together with a single shared measurement
+	 * matrix, which can be set with the cosamp.batch system property. 0 means every column
+	 * gets its own measurement matrix.
+	 * 
+	 * @return the batch size
+	 */
+	public static int getBatchSize(){
+		return Integer.getInteger("cosamp.batch", 0);
+	}
+
+	/**
+	 * Returns the most memory a precomputed Gram matrix of the measurement matrix may take,
+	 * which can be set in bytes with the cosamp.gram.budget system property. The default
+	 * of 16 MB is enough for a signal length of 1024.
+	 * 
+	 * @return the budget in bytes
+	 */
+	public static long getGramBudget(){
+		return Long.getLong("cosamp.gram.budget", 16L << 20);
+	}
+
+	/**
+	 * Returns the folder that every estimate of every column is written to, for debugging,
+	 * which can be set with the cosamp.trace system property. Nothing is traced by default.
+	 * 
+	 * @return the folder, or null if estimates shouldn't be traced
+	 */
+	public static File getTraceDirectory(){
+		String directory = System.getProperty("cosamp.trace");
+		return directory == null ? null : new File(directory);
+	}
+
 	public static void main(String[] args){
 		
 		//run the cosamp algorithm on the signal represented in the file
 		Signal sparseSignal = new Signal(new File("nMatrix.txt"));
 		long startTime = System.currentTimeMillis();
-		Matrix reconstructedMatrix = sparseSignal.runCosamp(NUM_ITERATIONS);
+		Matrix reconstructedMatrix;
+		if(getBatchSize() > 0){
+			reconstructedMatrix = sparseSignal.runCosampBatched(NUM_ITERATIONS, 
+					new Random().nextLong(), getBatchSize());
+		}
+		else{
+			ForkJoinPool pool = new ForkJoinPool(getNumThreads());
+			reconstructedMatrix = sparseSignal.runCosamp(NUM_ITERATIONS, 
+					new Random().nextLong(), pool);
+			pool.shutdown();
+		}
 		MatrixHelper.printMatrix(reconstructedMatrix);
 		long endTime = System.currentTimeMillis();
 		long duration = endTime - startTime;
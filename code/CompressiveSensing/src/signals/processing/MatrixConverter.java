@@ -0,0 +1,75 @@
+package signals.processing;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import matrix.ColumnMajorMatrix;
+import matrix.MatrixFile;
+import matrix.MatrixWriter;
+
+/**
+ * Converts matrix files between the tab separated text of the signal files and the binary
+ * format of MatrixFile. The direction comes from the input: a binary file is written out as
+ * text, and anything else is read as text by SignalLoader and written out as binary.
+ *
+ * Usage: MatrixConverter input output
+ */
+public class MatrixConverter {
+
+	public static void main(String[] args){
+
+		if(args.length != 2){
+			System.out.println("Usage: MatrixConverter input output");
+			return;
+		}
+
+		File input = new File(args[0]);
+		File output = new File(args[1]);
+		try{
+			if(MatrixFile.isMatrixFile(input)){
+				toText(input, output);
+			}
+			else{
+				toBinary(input, output);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * @param textFile - a signal file, one row per line with the values separated by tabs
+	 * @param binaryFile - where the matrix is written in the binary format
+	 * @throws IOException
+	 */
+	public static void toBinary(File textFile, File binaryFile) throws IOException{
+		MatrixFile.write(binaryFile, new SignalLoader(textFile).getSparseColumns());
+	}
+
+	/**
+	 * @param binaryFile - a matrix in the binary format
+	 * @param textFile - where the matrix is written like the signal files, one row per line
+	 * with the values separated by tabs
+	 * @throws IOException
+	 */
+	public static void toText(File binaryFile, File textFile) throws IOException{
+
+		ColumnMajorMatrix matrix = MatrixFile.read(binaryFile);
+		MatrixWriter writer = new MatrixWriter(new FileOutputStream(textFile));
+		try{
+			for (int row = 0; row < matrix.rowSize(); row++) {
+				for (int column = 0; column < matrix.columnSize(); column++) {
+					if(column > 0){
+						writer.write('\t');
+					}
+					writer.write(matrix.get(row, column));
+				}
+				writer.newLine();
+			}
+		}
+		finally{
+			writer.close();
+		}
+	}
+}
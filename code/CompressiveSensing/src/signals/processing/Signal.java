@@ -4,18 +4,43 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
-
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import matrix.CachedMeasurement;
+import matrix.ColumnMajorMatrix;
+import matrix.CosampProgress;
+import matrix.GramStore;
+import matrix.IterateTrace;
+import matrix.LeastSquaresMethod;
 import matrix.MatrixHelper;
+import matrix.MeasurementCache;
+import matrix.MeasurementEnsemble;
+import matrix.MeasurementOperator;
+import matrix.OffHeapArena;
+import matrix.OffHeapMatrix;
+import matrix.ParallelMeasurement;
+import matrix.ParallelMode;
+import matrix.PreconditionerType;
 import matrix.SignalHelper;
+import matrix.SparseColumnMatrix;
+import matrix.SparseVector;
+import matrix.SolverStatistics;
+import matrix.StopReason;
+import matrix.StoppingPolicies;
+import matrix.StoppingPolicy;
 
 import org.apache.mahout.math.Matrix;
-import org.apache.mahout.math.SparseMatrix;
+
+import signals.algorithm.ProcessSignals;
 
 /**
  * This encapsulates all the important information for the signal.
- * It includes the matrix that represents the signal, an array that represents
- * the sparsity of each column in the matrix, the length of the signal and the
- * number of measurements to take for reconstructing each column vector in the signal.
+ * It includes the matrix that represents the signal, kept as compressed sparse columns
+ * so the sparsity of each column in the matrix comes straight from it, the length of the 
+ * signal and the number of measurements to take for reconstructing each column vector in 
+ * the signal.
  * 
  * @author Jason Halpern
  * @version 1.0 12/09/12
@@ -23,33 +48,60 @@ import org.apache.mahout.math.SparseMatrix;
 
 public class Signal {
 
-	protected Matrix signalMatrix;
-	protected int[] sparsityMatrix; //holds the sparsity of each column vector
+	protected Matrix signalMatrix; //only made when it is asked for
+	private SparseColumnMatrix signalColumns; //the sparsity of each column comes from its pointers
 	private int SIGNAL_LENGTH = 1024; //number of rows in the signal
 	private final int NUM_MEASUREMENTS = 240;
+	private MeasurementEnsemble ensemble = MeasurementEnsemble.DENSE_GAUSSIAN;
+	private MeasurementCache measurementCache;
+	private OffHeapArena offHeapArena;
+	private LeastSquaresMethod leastSquaresMethod = LeastSquaresMethod.CONJUGATE_GRADIENT;
+	private boolean warmStart = true;
+	private PreconditionerType preconditionerType = PreconditionerType.NONE;
+	private long gramBudget = ProcessSignals.getGramBudget();
+	private final SolverStatistics solverStatistics = new SolverStatistics();
+	private StoppingPolicy stoppingPolicy = StoppingPolicies.cosamp();
+	private File traceDirectory = ProcessSignals.getTraceDirectory();
+	//null to pick by the shape of the problem
+	private ParallelMode parallelMode;
+	//how each column of the last reconstruction went
+	private CosampProgress[] columnProgress = new CosampProgress[0];
 
 	/**
 	 * Public constructor to create a Signal object from the signal
-	 * represented by the matrix in the file.
+	 * represented by the matrix in the file. The file is read once, by SignalLoader.
 	 */
 	public Signal(File matrixFile){
-
-		int numColumns = getNumColumns(matrixFile);
-		int numRows = getNumRows(matrixFile);
-		signalMatrix = new SparseMatrix(numRows, numColumns);
-		signalMatrix = MatrixHelper.fillWithZeros(signalMatrix);
 		matrixFromFile(matrixFile);
 	}
 
 	/**
-	 * Return the matrix that represents the signal
+	 * Return the matrix that represents the signal. The Mahout matrix is made the first time
+	 * it is asked for, from then on the signal is read back from it, so changes to it are
+	 * reconstructed.
 	 * 
 	 * @return the signal matrix
 	 */
 	public Matrix getSignalMatrix(){
+
+		if(signalMatrix == null){
+			signalMatrix = signalColumns.toMatrix();
+		}
 		return signalMatrix;
 	}
 
+	/**
+	 * @return the signal as it was loaded, or a copy of the Mahout matrix once that has been
+	 * handed out
+	 */
+	private SparseColumnMatrix getSignalColumns(){
+
+		if(signalMatrix != null){
+			return SparseColumnMatrix.fromMatrix(signalMatrix);
+		}
+		return signalColumns;
+	}
+
 	/**
 	 * @return the length of the signal
 	 */
@@ -77,13 +129,13 @@ public class Signal {
 	}
 
 	/**
-	 * Return the sparsity of the given column.
+	 * Return the sparsity of the given column, the number of nonzeros stored for it.
 	 * 
 	 * @param columnNum
 	 * @return the sparsity of that column
 	 */
 	public int getSparsityMatrix(int columnNum){
-		return sparsityMatrix[columnNum];
+		return signalColumns.getNonzeroCount(columnNum);
 	}
 
 	/**
@@ -92,15 +144,255 @@ public class Signal {
 	 * 
 	 * @return a matrix to be used for measurements
 	 */
-	public Matrix getMeasurements(){
+	public ColumnMajorMatrix getMeasurements(){
+		return getMeasurements(new Random().nextLong());
+	}
+
+	/**
+	 * Same as getMeasurements(), but the random values are drawn from a generator with
+	 * the given seed so the same seed always gives the same matrix.
+	 * 
+	 * @param seed - seed for the random number generator
+	 * @return a matrix to be used for measurements
+	 */
+	public ColumnMajorMatrix getMeasurements(long seed){
 
-		Matrix gaussDistMatrix = new SparseMatrix(getNumMeasurements(), getSignalLength());
 		//form a matrix similar to the way Matlab uses randn(x) to create a matrix
 		//based on a normal distribution
-		gaussDistMatrix = MatrixHelper.randN(gaussDistMatrix);
-		double x = (1 / Math.sqrt(getNumMeasurements()));
+		return MatrixHelper.gaussianMeasurements(getNumMeasurements(), getSignalLength(), seed);
+	}
+
+	/**
+	 * @return the kind of measurement matrix used to reconstruct the signal
+	 */
+	public MeasurementEnsemble getMeasurementEnsemble(){
+		return ensemble;
+	}
+
+	/**
+	 * Set the kind of measurement matrix used to reconstruct the signal.
+	 * 
+	 * @param ensemble
+	 */
+	public void setMeasurementEnsemble(MeasurementEnsemble ensemble){
+		this.ensemble = ensemble;
+	}
+
+	/**
+	 * Create the measurement matrix for the current measurement ensemble. Anyone who 
+	 * calls this with the same seed, signal length and ensemble gets the same matrix.
+	 * A stored matrix allocated from the off-heap arena belongs to the caller, who should
+	 * close it when done with it.
+	 * 
+	 * @param seed - seed for the random values of the matrix
+	 * @return the measurement matrix
+	 */
+	public MeasurementOperator getMeasurementOperator(long seed){
+
+		if(offHeapArena != null){
+			return ensemble.createOperator(getNumMeasurements(), getSignalLength(), seed, offHeapArena);
+		}
+		CachedMeasurement cached = getCachedMeasurement(seed);
+		if(cached != null){
+			return cached.getOperator();
+		}
+		return ensemble.createOperator(getNumMeasurements(), getSignalLength(), seed);
+	}
+
+	/**
+	 * @param seed - seed for the random values of the matrix
+	 * @return the cache entry getMeasurementOperator(seed) takes its matrix from, or null if 
+	 * the matrix isn't taken from the cache
+	 */
+	private CachedMeasurement getCachedMeasurement(long seed){
+
+		if(offHeapArena != null || measurementCache == null){
+			return null;
+		}
+		return measurementCache.get(getNumMeasurements(), getSignalLength(), seed, ensemble);
+	}
+
+	/**
+	 * @return how the least squares problem on each support is solved
+	 */
+	public LeastSquaresMethod getLeastSquaresMethod(){
+		return leastSquaresMethod;
+	}
+
+	/**
+	 * @param leastSquaresMethod - how the least squares problem on each support is solved
+	 */
+	public void setLeastSquaresMethod(LeastSquaresMethod leastSquaresMethod){
+		this.leastSquaresMethod = leastSquaresMethod;
+	}
+
+	/**
+	 * @return true if cgSolve starts from the solution of the last cosamp iteration
+	 */
+	public boolean isWarmStart(){
+		return warmStart;
+	}
+
+	/**
+	 * @param warmStart - true to start cgSolve from the solution of the last cosamp iteration,
+	 * false to start it from zero every time like cosamp.m
+	 */
+	public void setWarmStart(boolean warmStart){
+		this.warmStart = warmStart;
+	}
 
-		return gaussDistMatrix.times(x);
+	/**
+	 * @return the preconditioner cgSolve uses on each support
+	 */
+	public PreconditionerType getPreconditionerType(){
+		return preconditionerType;
+	}
+
+	/**
+	 * @param preconditionerType - the preconditioner cgSolve uses on each support
+	 */
+	public void setPreconditionerType(PreconditionerType preconditionerType){
+		this.preconditionerType = preconditionerType;
+	}
+
+	/**
+	 * @return the number of cgSolve calls, their iterations and residuals, for every column 
+	 * reconstructed so far
+	 */
+	public SolverStatistics getSolverStatistics(){
+		return solverStatistics;
+	}
+
+	/**
+	 * @return the most memory a precomputed Gram matrix may take, in bytes
+	 */
+	public long getGramBudget(){
+		return gramBudget;
+	}
+
+	/**
+	 * @param gramBudget - the most memory a precomputed Gram matrix may take, in bytes, 
+	 * 0 to never precompute it
+	 */
+	public void setGramBudget(long gramBudget){
+		this.gramBudget = gramBudget;
+	}
+
+	/**
+	 * @return the test that decides when a column has been reconstructed
+	 */
+	public StoppingPolicy getStoppingPolicy(){
+		return stoppingPolicy;
+	}
+
+	/**
+	 * A column always stops after the number of iterations it is run with, the policy 
+	 * can stop it before that.
+	 * 
+	 * @param stoppingPolicy - the test that decides when a column has been reconstructed, 
+	 * see StoppingPolicies
+	 */
+	public void setStoppingPolicy(StoppingPolicy stoppingPolicy){
+		this.stoppingPolicy = stoppingPolicy;
+	}
+
+	/**
+	 * @return how runCosamp() with a pool uses its threads, null if it picks by the shape of 
+	 * the problem
+	 */
+	public ParallelMode getParallelMode(){
+		return parallelMode;
+	}
+
+	/**
+	 * @param parallelMode - how runCosamp() with a pool uses its threads, or null to let 
+	 * ParallelMode.choose() pick
+	 */
+	public void setParallelMode(ParallelMode parallelMode){
+		this.parallelMode = parallelMode;
+	}
+
+	/**
+	 * @return the folder every estimate is written to, null if estimates aren't traced
+	 */
+	public File getTraceDirectory(){
+		return traceDirectory;
+	}
+
+	/**
+	 * Write every estimate of every column to trace_column.txt in the given folder, one 
+	 * line per iteration. This is only meant for debugging, the algorithm itself only
+	 * keeps the latest two estimates.
+	 * 
+	 * @param traceDirectory - the folder, which is created if it doesn't exist, or null to stop 
+	 * tracing
+	 */
+	public void setTraceDirectory(File traceDirectory){
+		this.traceDirectory = traceDirectory;
+	}
+
+	/**
+	 * @param column
+	 * @return why the column stopped in the last reconstruction
+	 */
+	public StopReason getStopReason(int column){
+		return columnProgress[column].getStopReason();
+	}
+
+	/**
+	 * @param column
+	 * @return the number of iterations the column ran in the last reconstruction
+	 */
+	public int getIterationCount(int column){
+		return columnProgress[column].getIteration();
+	}
+
+	/**
+	 * @return the cache that measurement matrices are taken from, null if they aren't cached
+	 */
+	public MeasurementCache getMeasurementCache(){
+		return measurementCache;
+	}
+
+	/**
+	 * Take measurement matrices from the given cache, so signals reconstructed with the same
+	 * dimensions, seed and ensemble share a single measurement matrix.
+	 * 
+	 * @param measurementCache - the cache, or null to create a new matrix every time
+	 */
+	public void setMeasurementCache(MeasurementCache measurementCache){
+		this.measurementCache = measurementCache;
+	}
+
+	/**
+	 * @return the arena that measurement matrices are allocated from, null if they are kept
+	 * on the heap
+	 */
+	public OffHeapArena getOffHeapArena(){
+		return offHeapArena;
+	}
+
+	/**
+	 * Keep stored measurement matrices off the heap, allocated from the given arena. Each one
+	 * is released as soon as the reconstruction is done with it, and they are not cached.
+	 * The results are exactly the same as with the matrices on the heap.
+	 * 
+	 * @param offHeapArena - the arena, or null to keep the matrices on the heap
+	 */
+	public void setOffHeapArena(OffHeapArena offHeapArena){
+		this.offHeapArena = offHeapArena;
+	}
+
+	/**
+	 * Release a measurement matrix that getMeasurementOperator() allocated off the heap.
+	 * 
+	 * @param phiMatrix
+	 */
+	private static void releaseMeasurements(MeasurementOperator phiMatrix){
+
+		if(phiMatrix instanceof OffHeapMatrix){
+			((OffHeapMatrix) phiMatrix).close();
+		}
 	}
 
 	/**
@@ -110,78 +402,283 @@ public class Signal {
 	 * @return the reconstructed matrix
 	 */
 	public Matrix runCosamp(int numIterations){
+		return runCosamp(numIterations, new Random().nextLong());
+	}
+
+	/**
+	 * Run the cosamp algorithm on the signal object to reconstruct it, one column at a time.
+	 * The measurements for each column are seeded from the given seed and the column number,
+	 * so the same seed always gives the same reconstruction.
+	 * 
+	 * @param numIterations
+	 * @param seed - seed that the measurements for every column are derived from
+	 * @return the reconstructed matrix
+	 */
+	public Matrix runCosamp(int numIterations, long seed){
 
-		Matrix signalMatrix = getSignalMatrix();
-		Matrix finalMatrix = new SparseMatrix(signalMatrix.rowSize(), signalMatrix.columnSize());
+		SparseColumnMatrix signalColumns = getSignalColumns();
+		ColumnMajorMatrix finalMatrix = new ColumnMajorMatrix(signalColumns.rowSize(), 
+				signalColumns.columnSize());
 
 		setSignalLength(finalMatrix.rowSize());
+		startProgress(signalColumns.columnSize());
 
 		//reconstruct one column vector at a time
-		for(int i = 0; i < signalMatrix.columnSize(); i++){
+		for(int i = 0; i < signalColumns.columnSize(); i++){
+			reconstructColumn(signalColumns, finalMatrix, i, numIterations, seed, null);
+		}
 
-			//create column vector that is a random permutation of numbers 1 through signal_length
-			Matrix randomMatrix = new SparseMatrix(this.getSignalLength(), 1);
-			randomMatrix = MatrixHelper.randomPermutation(randomMatrix);
+		return finalMatrix.toMatrix();
+	}
 
-			Matrix slicedMatrix = MatrixHelper.getColumn(signalMatrix, i);
+	/**
+	 * Run the cosamp algorithm on the signal object to reconstruct it, with the columns
+	 * spread across the threads of the pool. Each column gets the same seed it would get 
+	 * from runCosamp(numIterations, seed), so the result does not depend on the number of threads.
+	 * With fewer columns than threads and a big enough dense measurement matrix, the products 
+	 * of each column are spread across the pool as well (see ParallelMode), which gives 
+	 * exactly the same result.
+	 * 
+	 * @param numIterations
+	 * @param seed - seed that the measurements for every column are derived from
+	 * @param pool - the pool that reconstructs the columns
+	 * @return the reconstructed matrix
+	 */
+	public Matrix runCosamp(int numIterations, long seed, ForkJoinPool pool){
 
-			//measurements
-			Matrix phiMatrix = getMeasurements();
-			Matrix measurementMatrix = phiMatrix.times(slicedMatrix);
+		SparseColumnMatrix signalColumns = getSignalColumns();
+		ColumnMajorMatrix finalMatrix = new ColumnMajorMatrix(signalColumns.rowSize(), 
+				signalColumns.columnSize());
 
-			//reconstruct using the cosamp algorithm
-			Matrix xHat = SignalHelper.cosampAlgo(this, measurementMatrix, phiMatrix, 
-					getSparsityMatrix(i), numIterations);
+		setSignalLength(finalMatrix.rowSize());
+		startProgress(signalColumns.columnSize());
 
-			//set column in the final matrix to reflect reconstructed vector
-			finalMatrix = MatrixHelper.fillColumn(finalMatrix, xHat ,i);
+		ParallelMode mode = parallelMode;
+		if(mode == null){
+			mode = ParallelMode.choose(getNumMeasurements(), getSignalLength(), 
+					signalColumns.columnSize(), pool.getParallelism());
 		}
+		ForkJoinPool productPool = mode == ParallelMode.INTRA_COLUMN ? pool : null;
 
-		return finalMatrix;
+		pool.invoke(new ColumnTask(signalColumns, finalMatrix, 0, signalColumns.columnSize(), 
+				numIterations, seed, productPool));
+
+		return finalMatrix.toMatrix();
 	}
 
 	/**
-	 * Create a matrix from the signal represented in the file.
-	 * The sparsity is also determined as we read from the file.
+	 * Run the cosamp algorithm on the signal object with every column measured by the same 
+	 * matrix, seeded directly from the given seed. The columns are reconstructed in blocks of 
+	 * batchSize that advance together, so the products with the measurement matrix are done 
+	 * for a whole block at once. If its Gram matrix fits in the Gram budget, it is worked out 
+	 * first, or taken from the measurement cache along with the matrix, and every support's 
+	 * least squares problem is gathered from it.
 	 * 
-	 * @param fileName - file that contains the matrix.
+	 * @param numIterations
+	 * @param seed - seed for the measurement matrix shared by every column
+	 * @param batchSize - the number of columns reconstructed together
+	 * @return the reconstructed matrix
 	 */
-	public void matrixFromFile(File fileName){
-		int rowNumber = 0;
+	public Matrix runCosampBatched(int numIterations, long seed, int batchSize){
 
-		try {
-			String currentLine;
-			BufferedReader br = new BufferedReader(new FileReader(fileName));
-			while ((currentLine = br.readLine()) != null) {
-				String[] columnValues = currentLine.split("\t");
+		if(batchSize < 1){
+			throw new IllegalArgumentException("The batch size has to be at least 1: " + batchSize);
+		}
 
-				//initialize sparsity matrix on the first turn
-				if(rowNumber == 0){
-					sparsityMatrix = new int[columnValues.length];
+		SparseColumnMatrix signalColumns = getSignalColumns();
+		ColumnMajorMatrix finalMatrix = new ColumnMajorMatrix(signalColumns.rowSize(), 
+				signalColumns.columnSize());
+
+		setSignalLength(finalMatrix.rowSize());
+		startProgress(signalColumns.columnSize());
+		//a matrix from the cache keeps its Gram matrix there too, so it is only worked out once
+		CachedMeasurement cached = getCachedMeasurement(seed);
+		MeasurementOperator phiMatrix = cached != null ? cached.getOperator() 
+				: getMeasurementOperator(seed);
+		try{
+			GramStore gramStore = cached != null 
+					? cached.getGramStore(gramBudget, ProcessSignals.getNumThreads()) 
+					: createGramStore(phiMatrix);
+
+			for(int start = 0; start < signalColumns.columnSize(); start += batchSize){
+				int end = Math.min(start + batchSize, signalColumns.columnSize());
+
+				ColumnMajorMatrix blockMatrix = signalColumns.toColumnMajorMatrix(start, end);
+				int[] sparsity = new int[end - start];
+				for(int column = start; column < end; column++){
+					sparsity[column - start] = getSparsityMatrix(column);
 				}
 
-				//build the signal matrix from the values in the file
-				if(columnValues.length == 1){
-					signalMatrix.set(rowNumber, 0, Double.parseDouble(columnValues[0]));
-					if(signalMatrix.get(rowNumber, 0) != 0){
-						sparsityMatrix[0]++;
-					}
-				}	
-				else{
-					for(int i = 0; i < signalMatrix.columnSize(); i++){
-						signalMatrix.set(rowNumber, i, Double.parseDouble(columnValues[i]));
-						if(signalMatrix.get(rowNumber, i) != 0){
-							sparsityMatrix[i]++;
-						}
-					}
+				//measurements for the whole block, then reconstruct using the cosamp algorithm
+				CosampProgress[] progress = new CosampProgress[end - start];
+				System.arraycopy(columnProgress, start, progress, 0, end - start);
+				ColumnMajorMatrix xHat = SignalHelper.cosampBatch(this, phiMatrix.times(blockMatrix), 
+						phiMatrix, gramStore, sparsity, numIterations, progress);
+				for(int column = start; column < end; column++){
+					MatrixHelper.fillColumn(finalMatrix, MatrixHelper.getColumn(xHat, column - start), column);
 				}
-				rowNumber++;
 			}
-			setSignalLength(rowNumber); //set the signal length for this matrix
-			br.close();
-		} catch (IOException e) {
-			e.printStackTrace();
 		}
+		finally{
+			releaseMeasurements(phiMatrix);
+		}
+
+		return finalMatrix.toMatrix();
+	}
+
+	/**
+	 * Make a fresh progress for every column, before the columns are handed to any threads,
+	 * along with its trace if estimates are being traced.
+	 * 
+	 * @param numColumns
+	 * @throws IllegalArgumentException if the trace folder doesn't exist and can't be created
+	 */
+	private void startProgress(int numColumns){
+		if(traceDirectory != null && !traceDirectory.isDirectory() && !traceDirectory.mkdirs()){
+			throw new IllegalArgumentException("The trace folder can't be created: " + traceDirectory);
+		}
+		columnProgress = new CosampProgress[numColumns];
+		for(int column = 0; column < numColumns; column++){
+			columnProgress[column] = new CosampProgress();
+			if(traceDirectory != null){
+				columnProgress[column].setTrace(new IterateTrace(
+						new File(traceDirectory, "trace_" + column + ".txt")));
+			}
+		}
+	}
+
+	/**
+	 * Work out the Gram matrix of a measurement matrix that will be shared by many solves,
+	 * spread over ProcessSignals.getNumThreads() threads.
+	 * 
+	 * @param phiMatrix - the measurement matrix
+	 * @return the Gram matrix, or null if it doesn't fit in the Gram budget
+	 */
+	public GramStore createGramStore(MeasurementOperator phiMatrix){
+
+		if(!GramStore.fits(phiMatrix.columnSize(), gramBudget)){
+			return null;
+		}
+
+		ForkJoinPool pool = new ForkJoinPool(ProcessSignals.getNumThreads());
+		try{
+			return new GramStore(phiMatrix, pool);
+		}
+		finally{
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Reconstruct a single column of the signal and copy it into the final matrix.
+	 * Every column only writes to its own part of the final matrix, so columns can be
+	 * reconstructed at the same time without any locking.
+	 * 
+	 * @param signalColumns - the signal matrix
+	 * @param finalMatrix - the reconstructed column is copied into this matrix
+	 * @param column - the column to reconstruct
+	 * @param numIterations
+	 * @param seed - seed that the measurements for every column are derived from
+	 * @param productPool - the pool to spread a dense measurement matrix's products over, 
+	 * or null to work them out in this thread
+	 */
+	private void reconstructColumn(SparseColumnMatrix signalColumns, ColumnMajorMatrix finalMatrix,
+			int column, int numIterations, long seed, ForkJoinPool productPool){
+
+		SparseVector slicedVector = signalColumns.getColumn(column);
+
+		//measurements
+		MeasurementOperator storedMatrix = getMeasurementOperator(columnSeed(seed, column));
+		ColumnMajorMatrix xHat;
+		try{
+			MeasurementOperator phiMatrix = storedMatrix;
+			if(productPool != null && phiMatrix instanceof ColumnMajorMatrix){
+				phiMatrix = new ParallelMeasurement((ColumnMajorMatrix) phiMatrix, productPool);
+			}
+			ColumnMajorMatrix measurementMatrix = new ColumnMajorMatrix(phiMatrix.rowSize(), 1);
+			phiMatrix.times(slicedVector, measurementMatrix.getValues());
+
+			//reconstruct using the cosamp algorithm
+			xHat = SignalHelper.cosampAlgo(this, measurementMatrix, phiMatrix, null,
+					getSparsityMatrix(column), numIterations, columnProgress[column]);
+		}
+		finally{
+			releaseMeasurements(storedMatrix);
+		}
+
+		//set column in the final matrix to reflect reconstructed vector
+		MatrixHelper.fillColumn(finalMatrix, xHat, column);
+	}
+
+	/**
+	 * Derive the seed for one column from the seed for the whole signal. The bits are mixed
+	 * (the SplitMix64 finalizer) so neighbouring columns don't get related generators.
+	 * 
+	 * @param seed - seed for the whole signal
+	 * @param column
+	 * @return the seed for the column
+	 */
+	public static long columnSeed(long seed, int column){
+		return MatrixHelper.mix64(seed + (column + 1) * MatrixHelper.GOLDEN_GAMMA);
+	}
+
+	/**
+	 * Splits a range of columns in half until there is a single column left to reconstruct.
+	 */
+	private class ColumnTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final SparseColumnMatrix signalColumns;
+		private final ColumnMajorMatrix finalMatrix;
+		private final int startColumn;
+		private final int endColumn;
+		private final int numIterations;
+		private final long seed;
+		private final ForkJoinPool productPool;
+
+		ColumnTask(SparseColumnMatrix signalColumns, ColumnMajorMatrix finalMatrix, 
+				int startColumn, int endColumn, int numIterations, long seed, ForkJoinPool productPool){
+			this.signalColumns = signalColumns;
+			this.finalMatrix = finalMatrix;
+			this.startColumn = startColumn;
+			this.endColumn = endColumn;
+			this.numIterations = numIterations;
+			this.seed = seed;
+			this.productPool = productPool;
+		}
+
+		@Override
+		protected void compute(){
+
+			if(endColumn - startColumn <= 1){
+				if(startColumn < endColumn){
+					reconstructColumn(signalColumns, finalMatrix, startColumn, numIterations, seed, 
+							productPool);
+				}
+				return;
+			}
+
+			int middleColumn = (startColumn + endColumn) >>> 1;
+			invokeAll(new ColumnTask(signalColumns, finalMatrix, startColumn, middleColumn, 
+							numIterations, seed, productPool),
+					new ColumnTask(signalColumns, finalMatrix, middleColumn, endColumn, 
+							numIterations, seed, productPool));
+		}
+	}
+
+	/**
+	 * Create a matrix from the signal represented in the file.
+	 * The sparsity is also determined as we read from the file.
+	 * 
+	 * @param fileName - file that contains the matrix.
+	 */
+	public void matrixFromFile(File fileName){
+
+		SignalLoader loader = new SignalLoader(fileName);
+		signalColumns = loader.getSparseColumns();
+		signalMatrix = null;
+		setSignalLength(loader.getNumRows()); //set the signal length for this matrix
 	}
 
 	/**
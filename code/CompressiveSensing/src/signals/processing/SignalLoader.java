@@ -0,0 +1,175 @@
+package signals.processing;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import matrix.ColumnMajorMatrix;
+import matrix.MatrixFile;
+import matrix.MatrixReader;
+import matrix.SparseColumnMatrix;
+
+/**
+ * Reads a signal file in a single pass: one row of the signal per line, with the columns
+ * separated by tabs or spaces. The number of columns comes from the first line, and the values
+ * are parsed by a MatrixReader. Only the nonzero values are kept, each column in its own
+ * buffers of rows and values that double in size whenever they fill up, and at the end the
+ * columns are put together as compressed sparse columns, so the memory taken grows with the
+ * number of nonzeros rather than the size of the signal. A line with a single value only sets
+ * the first column, like Signal always did, and blank lines, such as the one
+ * MatrixHelper.writeToFile() ends with, are skipped. Binary files written by MatrixFile are
+ * read with MatrixFile.readSparse() instead of being parsed.
+ */
+public class SignalLoader {
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	private int numRows;
+	private int numColumns;
+	//the nonzeros of each column while the file is read
+	private int[][] columnRows = new int[0][];
+	private double[][] columnValues = new double[0][];
+	private int[] counts = new int[0];
+	private SparseColumnMatrix signalColumns;
+
+	/**
+	 * Read the signal in the file.
+	 *
+	 * @param matrixFile - the file with the signal
+	 */
+	public SignalLoader(File matrixFile){
+
+		if(MatrixFile.isMatrixFile(matrixFile)){
+			readBinary(matrixFile);
+			return;
+		}
+
+		try{
+			MatrixReader reader = new MatrixReader(new FileInputStream(matrixFile));
+			try{
+				while(reader.nextLine()){
+					if(!reader.hasNextValue()){
+						continue;
+					}
+					if(numRows == 0){
+						start(reader.countValues());
+					}
+					addRow(reader);
+				}
+			}
+			finally{
+				reader.close();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		finish();
+	}
+
+	/**
+	 * @return the signal, one column of the matrix for each column in the file
+	 */
+	public SparseColumnMatrix getSparseColumns(){
+		return signalColumns;
+	}
+
+	/**
+	 * @return the signal written out in full
+	 */
+	public ColumnMajorMatrix getSignalColumns(){
+		return signalColumns.toColumnMajorMatrix();
+	}
+
+	/**
+	 * @return the number of nonzero values in each column
+	 */
+	public int[] getSparsity(){
+
+		int[] sparsity = new int[signalColumns.columnSize()];
+		for (int column = 0; column < sparsity.length; column++) {
+			sparsity[column] = signalColumns.getNonzeroCount(column);
+		}
+		return sparsity;
+	}
+
+	/**
+	 * @return the number of rows read, the length of the signal
+	 */
+	public int getNumRows(){
+		return numRows;
+	}
+
+	/**
+	 * Take the whole signal from a binary file.
+	 */
+	private void readBinary(File matrixFile){
+
+		try{
+			signalColumns = MatrixFile.readSparse(matrixFile);
+			numRows = signalColumns.rowSize();
+			numColumns = signalColumns.columnSize();
+		} catch (IOException e) {
+			e.printStackTrace();
+			finish();
+		}
+	}
+
+	private void start(int columns){
+
+		numColumns = columns;
+		columnRows = new int[columns][INITIAL_CAPACITY];
+		columnValues = new double[columns][INITIAL_CAPACITY];
+		counts = new int[columns];
+	}
+
+	/**
+	 * Parse the current line into the next row, keeping its nonzeros.
+	 */
+	private void addRow(MatrixReader reader){
+
+		int row = numRows;
+		for (int column = 0; column < numColumns; column++) {
+			if(!reader.hasNextValue()){
+				if(column == 1){
+					//a line with a single value only sets the first column
+					break;
+				}
+				throw new IllegalArgumentException("Row " + row + " has " + column
+						+ " values, expected " + numColumns);
+			}
+			double value = reader.nextValue();
+			if(value != 0){
+				int count = counts[column];
+				if(count == columnRows[column].length){
+					columnRows[column] = Arrays.copyOf(columnRows[column], 2 * count);
+					columnValues[column] = Arrays.copyOf(columnValues[column], 2 * count);
+				}
+				columnRows[column][count] = row;
+				columnValues[column][count] = value;
+				counts[column] = count + 1;
+			}
+		}
+		numRows++;
+	}
+
+	/**
+	 * Put the columns together one after the other.
+	 */
+	private void finish(){
+
+		int[] columnPointers = new int[numColumns + 1];
+		for (int column = 0; column < numColumns; column++) {
+			columnPointers[column + 1] = columnPointers[column] + counts[column];
+		}
+		int[] rowIndices = new int[columnPointers[numColumns]];
+		double[] values = new double[columnPointers[numColumns]];
+		for (int column = 0; column < numColumns; column++) {
+			System.arraycopy(columnRows[column], 0, rowIndices, columnPointers[column], counts[column]);
+			System.arraycopy(columnValues[column], 0, values, columnPointers[column], counts[column]);
+		}
+		signalColumns = new SparseColumnMatrix(numRows, numColumns, columnPointers, rowIndices, values);
+		columnRows = null;
+		columnValues = null;
+	}
+}
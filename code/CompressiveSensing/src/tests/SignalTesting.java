@@ -1,16 +1,59 @@
 package tests;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 import junit.framework.TestCase;
 
+import matrix.BlockJacobiPreconditioner;
+import matrix.CachedMeasurement;
+import matrix.CgResult;
+import matrix.ColumnMajorMatrix;
+import matrix.DctMeasurement;
+import matrix.DoubleText;
+import matrix.GaussianMeasurement;
+import matrix.GramStore;
+import matrix.IncrementalCholesky;
+import matrix.HadamardMeasurement;
+import matrix.IterateBuffer;
+import matrix.MatrixFile;
 import matrix.MatrixHelper;
+import matrix.MatrixReader;
+import matrix.MeasurementCache;
+import matrix.MeasurementEnsemble;
+import matrix.MeasurementOperator;
+import matrix.NormalEquations;
+import matrix.OffHeapArena;
+import matrix.OffHeapMatrix;
+import matrix.ParallelMeasurement;
+import matrix.ParallelMode;
+import matrix.PreconditionerType;
+import matrix.SignalHelper;
+import matrix.SparseColumnMatrix;
+import matrix.SparseVector;
+import matrix.SupportSet;
+import matrix.TopSelector;
+import matrix.VectorKernels;
 
 import org.apache.mahout.math.Matrix;
 import org.apache.mahout.math.SparseMatrix;
 import org.junit.Test;
 
+import signals.processing.MatrixConverter;
+import signals.processing.Signal;
+import signals.processing.SignalLoader;
+
 /**
  * Tests for all the functions that were written to simulate Matlab matrix manipulation.
  * 
@@ -409,4 +452,922 @@ public class SignalTesting extends TestCase {
 		assertEquals(newMatrix.get(1,0), 3, DELTA);
 		assertEquals(newMatrix.get(2,0), 2, DELTA);
 	}
+
+	@Test
+	public void testColumnMajorProducts(){
+		
+		Matrix test = new SparseMatrix(2,3);
+		test.set(0, 0, 1);
+		test.set(0, 1, 2);
+		test.set(0, 2, 3);
+		test.set(1, 0, 4);
+		test.set(1, 1, 5);
+		test.set(1, 2, 6);
+		
+		Matrix vector = new SparseMatrix(3,1);
+		vector.set(0, 0, 1);
+		vector.set(1, 0, 0);
+		vector.set(2, 0, -1);
+		
+		ColumnMajorMatrix denseMatrix = ColumnMajorMatrix.fromMatrix(test);
+		assertEquals(denseMatrix.get(1, 2), 6, DELTA);
+		assertEquals(denseMatrix.getValues()[1], 4, DELTA);
+		
+		ColumnMajorMatrix product = denseMatrix.times(ColumnMajorMatrix.fromMatrix(vector));
+		Matrix expected = test.times(vector);
+		assertEquals(product.get(0, 0), expected.get(0, 0), DELTA);
+		assertEquals(product.get(1, 0), expected.get(1, 0), DELTA);
+		
+		ColumnMajorMatrix transposeProduct = denseMatrix.transposeTimes(product);
+		Matrix expectedTranspose = test.transpose().times(expected);
+		for(int row = 0; row < 3; row++){
+			assertEquals(transposeProduct.get(row, 0), expectedTranspose.get(row, 0), DELTA);
+		}
+		
+		Matrix roundTrip = denseMatrix.toMatrix();
+		assertEquals(roundTrip.get(0, 2), 3, DELTA);
+		assertEquals(MatrixHelper.norm(denseMatrix), MatrixHelper.norm(test), DELTA);
+	}
+
+	@Test
+	public void testTopIndices(){
+		
+		double[] values = {3, 9, 1, 7, 9, 0, 7, 2};
+		
+		int[] rows = MatrixHelper.topIndices(values, 4);
+		assertEquals(rows.length, 4);
+		//equal values keep their row order
+		assertEquals(rows[0], 1);
+		assertEquals(rows[1], 4);
+		assertEquals(rows[2], 3);
+		assertEquals(rows[3], 6);
+		
+		//should match the first rows from sortDescending
+		Matrix test = new SparseMatrix(values.length, 1);
+		for(int row = 0; row < values.length; row++){
+			test.set(row, 0, values[row]);
+		}
+		Matrix indexMatrix = MatrixHelper.sortDescending(test).get(1);
+		int[] allRows = MatrixHelper.topIndices(values, values.length);
+		for(int row = 0; row < values.length; row++){
+			assertEquals(allRows[row] + 1, (int) indexMatrix.get(row, 0));
+		}
+		
+		assertEquals(MatrixHelper.topIndices(values, 0).length, 0);
+		assertEquals(MatrixHelper.topIndices(values, 20).length, values.length);
+	}
+
+	@Test
+	public void testSupportSet(){
+		
+		double[] values = {0, 3, 0, 0, -2, 0, 1};
+		SupportSet findSupport = SupportSet.nonzeroRows(values);
+		assertEquals(findSupport.size(), 3);
+		assertEquals(findSupport.getRow(0), 1);
+		assertEquals(findSupport.getRow(2), 6);
+		assertTrue(findSupport.contains(4));
+		assertFalse(findSupport.contains(3));
+		
+		SupportSet indiceSupport = SupportSet.fromRows(values.length, new int[] {5, 1, 0, 5});
+		assertEquals(indiceSupport.size(), 3);
+		
+		SupportSet unionSupport = findSupport.union(indiceSupport);
+		int[] rows = unionSupport.toArray();
+		assertEquals(rows.length, 5);
+		assertEquals(rows[0], 0);
+		assertEquals(rows[1], 1);
+		assertEquals(rows[2], 4);
+		assertEquals(rows[3], 5);
+		assertEquals(rows[4], 6);
+		
+		//gather and scatter should put the values back where they came from
+		double[] gathered = unionSupport.gather(values);
+		assertEquals(gathered[2], -2, DELTA);
+		double[] target = new double[values.length];
+		unionSupport.scatter(gathered, target);
+		for(int row = 0; row < values.length; row++){
+			assertEquals(target[row], values[row], DELTA);
+		}
+		
+		Matrix test = new SparseMatrix(2, 7);
+		test.set(0, 4, 9);
+		test.set(1, 6, 3);
+		ColumnMajorMatrix slicedMatrix = unionSupport.gatherColumns(ColumnMajorMatrix.fromMatrix(test));
+		assertEquals(slicedMatrix.columnSize(), 5);
+		assertEquals(slicedMatrix.get(0, 2), 9, DELTA);
+		assertEquals(slicedMatrix.get(1, 4), 3, DELTA);
+	}
+
+	@Test
+	public void testGaussianMeasurement(){
+		
+		GaussianMeasurement phiMatrix = new GaussianMeasurement(5, 8, 42);
+		
+		//all the columns together should give the same products as the operator
+		SupportSet allColumns = SupportSet.fromRows(8, new int[] {0, 1, 2, 3, 4, 5, 6, 7});
+		ColumnMajorMatrix fullMatrix = phiMatrix.gatherColumns(allColumns);
+		
+		double[] x = {1, 0, -2, 0, 0, 3, 0, 0.5};
+		double[] product = new double[5];
+		double[] expected = new double[5];
+		phiMatrix.times(x, product);
+		fullMatrix.times(x, expected);
+		for(int row = 0; row < 5; row++){
+			assertEquals(product[row], expected[row], 1e-12);
+		}
+		
+		double[] r = {0.5, -1, 2, 0, 1};
+		double[] transposeProduct = new double[8];
+		double[] expectedTranspose = new double[8];
+		phiMatrix.transposeTimes(r, transposeProduct);
+		fullMatrix.transposeTimes(r, expectedTranspose);
+		for(int column = 0; column < 8; column++){
+			assertEquals(transposeProduct[column], expectedTranspose[column], 1e-12);
+		}
+		
+		//the same seed always gives the same columns, no matter the order they are asked for
+		ColumnMajorMatrix someColumns = new GaussianMeasurement(5, 8, 42).gatherColumns(
+				SupportSet.fromRows(8, new int[] {6, 2}));
+		for(int row = 0; row < 5; row++){
+			assertEquals(someColumns.get(row, 0), fullMatrix.get(row, 2), 0);
+			assertEquals(someColumns.get(row, 1), fullMatrix.get(row, 6), 0);
+		}
+		ColumnMajorMatrix otherSeed = new GaussianMeasurement(5, 8, 43).gatherColumns(allColumns);
+		assertTrue(otherSeed.get(0, 0) != fullMatrix.get(0, 0));
+	}
+
+	@Test
+	public void testStructuredMeasurement(){
+		
+		//12 is not a power of two, so this also checks the padding
+		int signalLength = 12;
+		int[] all = new int[signalLength];
+		for(int column = 0; column < signalLength; column++){
+			all[column] = column;
+		}
+		double[] x = {1, 0, -2, 0, 0, 3, 0, 0.5, 0, 0, 1, -1};
+		double[] r = {0.5, -1, 2, 0, 1};
+		
+		MeasurementOperator[] operators = {new HadamardMeasurement(5, signalLength, 3), 
+				new DctMeasurement(5, signalLength, 3)};
+		for(MeasurementOperator phiMatrix : operators){
+			//the fast transforms should match multiplying by the columns one at a time
+			ColumnMajorMatrix fullMatrix = phiMatrix.gatherColumns(SupportSet.fromRows(signalLength, all));
+			
+			double[] product = new double[5];
+			double[] expected = new double[5];
+			phiMatrix.times(x, product);
+			fullMatrix.times(x, expected);
+			for(int row = 0; row < 5; row++){
+				assertEquals(product[row], expected[row], 1e-12);
+			}
+			
+			double[] transposeProduct = new double[signalLength];
+			double[] expectedTranspose = new double[signalLength];
+			phiMatrix.transposeTimes(r, transposeProduct);
+			fullMatrix.transposeTimes(r, expectedTranspose);
+			for(int column = 0; column < signalLength; column++){
+				assertEquals(transposeProduct[column], expectedTranspose[column], 1e-12);
+			}
+		}
+		
+		//the orthonormal Walsh-Hadamard transform is its own inverse
+		double[] values = {1, 2, 3, 4, 5, 6, 7, 8};
+		HadamardMeasurement.fastHadamard(values);
+		assertEquals(values[0], 36 / Math.sqrt(8), 1e-12);
+		HadamardMeasurement.fastHadamard(values);
+		for(int index = 0; index < values.length; index++){
+			assertEquals(values[index], index + 1, 1e-12);
+		}
+	}
+
+	@Test
+	public void testBlockProducts(){
+
+		int signalLength = 8;
+		ColumnMajorMatrix xMatrix = MatrixHelper.randN(new ColumnMajorMatrix(signalLength, 2), new Random(4));
+		xMatrix.set(3, 1, 0);
+		ColumnMajorMatrix rMatrix = MatrixHelper.randN(new ColumnMajorMatrix(5, 2), new Random(5));
+
+		MeasurementOperator[] operators = {MatrixHelper.randN(new ColumnMajorMatrix(5, signalLength),
+				new Random(6)), new GaussianMeasurement(5, signalLength, 42),
+				new HadamardMeasurement(5, signalLength, 3)};
+		for(MeasurementOperator phiMatrix : operators){
+			//the blocks are longer than the vectors in them, and start out full of old values
+			double[] x = Arrays.copyOf(xMatrix.getValues(), 3 * signalLength);
+			double[] product = new double[3 * 5];
+			Arrays.fill(product, 7);
+			phiMatrix.times(x, 2, product);
+			ColumnMajorMatrix expected = phiMatrix.times(xMatrix);
+			for(int index = 0; index < 2 * 5; index++){
+				assertEquals(product[index], expected.getValues()[index], 0);
+			}
+			assertEquals(product[2 * 5], 7, 0);
+
+			double[] r = Arrays.copyOf(rMatrix.getValues(), 3 * 5);
+			double[] transposeProduct = new double[3 * signalLength];
+			Arrays.fill(transposeProduct, 7);
+			phiMatrix.transposeTimes(r, 2, transposeProduct);
+			ColumnMajorMatrix expectedTranspose = phiMatrix.transposeTimes(rMatrix);
+			for(int index = 0; index < 2 * signalLength; index++){
+				assertEquals(transposeProduct[index], expectedTranspose.getValues()[index], 0);
+			}
+			assertEquals(transposeProduct[2 * signalLength], 7, 0);
+		}
+	}
+
+	@Test
+	public void testMeasurementCache(){
+		
+		//a 4x8 dense matrix takes 256 bytes, so the budget holds two of them
+		MeasurementCache cache = new MeasurementCache(600);
+		CachedMeasurement first = cache.get(4, 8, 1, MeasurementEnsemble.DENSE_GAUSSIAN);
+		assertSame(first, cache.get(4, 8, 1, MeasurementEnsemble.DENSE_GAUSSIAN));
+		assertEquals(cache.getHitCount(), 1);
+		assertEquals(cache.getMissCount(), 1);
+		assertEquals(cache.getSizeInBytes(), 256);
+		
+		//using the first matrix again makes the second one the least recently used
+		CachedMeasurement second = cache.get(4, 8, 2, MeasurementEnsemble.DENSE_GAUSSIAN);
+		cache.get(4, 8, 1, MeasurementEnsemble.DENSE_GAUSSIAN);
+		cache.get(4, 8, 3, MeasurementEnsemble.DENSE_GAUSSIAN);
+		assertEquals(cache.getEvictionCount(), 1);
+		assertEquals(cache.size(), 2);
+		assertNotSame(second, cache.get(4, 8, 2, MeasurementEnsemble.DENSE_GAUSSIAN));
+		
+		//an entry bigger than the budget is handed back but not kept, and doesn't push out
+		//the entries that fit
+		long evictions = cache.getEvictionCount();
+		CachedMeasurement large = cache.get(40, 8, 1, MeasurementEnsemble.DENSE_GAUSSIAN);
+		assertEquals(large.getOperator().rowSize(), 40);
+		assertEquals(cache.size(), 2);
+		assertEquals(cache.getSizeInBytes(), 512);
+		assertEquals(cache.getEvictionCount(), evictions);
+		assertNotSame(large, cache.get(40, 8, 1, MeasurementEnsemble.DENSE_GAUSSIAN));
+
+		//the 8x8 Gram matrix takes another 512 bytes, it is kept with its matrix when the 
+		//budget has room for both, and handed back without being kept when it doesn't
+		MeasurementCache gramCache = new MeasurementCache(1000);
+		CachedMeasurement entry = gramCache.get(4, 8, 1, MeasurementEnsemble.DENSE_GAUSSIAN);
+		assertNull(entry.getGramStore(100, 1));
+		GramStore gramStore = entry.getGramStore(1 << 20, 1);
+		assertSame(gramStore, entry.getGramStore(1 << 20, 1));
+		assertEquals(gramCache.getSizeInBytes(), 768);
+		MeasurementOperator phiMatrix = entry.getOperator();
+		assertEquals(gramStore.get(2, 5), phiMatrix.gatherColumns(SupportSet.range(8, 2, 3))
+				.transposeTimes(phiMatrix.gatherColumns(SupportSet.range(8, 5, 6))).get(0, 0), 0);
+		CachedMeasurement full = cache.get(4, 8, 3, MeasurementEnsemble.DENSE_GAUSSIAN);
+		assertNotSame(full.getGramStore(1 << 20, 1), full.getGramStore(1 << 20, 1));
+		assertEquals(cache.getSizeInBytes(), 512);
+
+		//threads asking for the same matrix at once should all get the one that was built
+		final MeasurementCache sharedCache = new MeasurementCache(1 << 20);
+		final CachedMeasurement[] results = new CachedMeasurement[4];
+		Thread[] threads = new Thread[results.length];
+		for(int index = 0; index < threads.length; index++){
+			final int slot = index;
+			threads[index] = new Thread(new Runnable() {
+				@Override
+				public void run(){
+					results[slot] = sharedCache.get(100, 400, 9, MeasurementEnsemble.DENSE_GAUSSIAN);
+					results[slot].getOperator();
+				}
+			});
+			threads[index].start();
+		}
+		for(Thread thread : threads){
+			try{
+				thread.join();
+			} catch (InterruptedException e) {
+				fail("Interrupted");
+			}
+		}
+		for(CachedMeasurement result : results){
+			assertSame(result.getOperator(), results[0].getOperator());
+		}
+		assertEquals(sharedCache.getMissCount(), 1);
+	}
+
+	@Test
+	public void testIncrementalCholesky(){
+		
+		ColumnMajorMatrix phiMatrix = MatrixHelper.randN(new ColumnMajorMatrix(20, 12), new Random(4));
+		ColumnMajorMatrix yMatrix = MatrixHelper.randN(new ColumnMajorMatrix(20, 1), new Random(5));
+		IncrementalCholesky solver = new IncrementalCholesky(phiMatrix);
+		
+		//rows join and leave the support the way they do between cosamp iterations
+		int[][] supports = {{0, 3, 5}, {0, 3, 5, 7, 9}, {3, 7, 9, 11}, {1, 2, 3, 4, 7, 9, 11}, {10}};
+		for(int[] rows : supports){
+			SupportSet support = SupportSet.fromRows(12, rows);
+			ColumnMajorMatrix wMatrix = solver.solve(support, yMatrix);
+			assertEquals(solver.size(), rows.length);
+			
+			//should match solving the normal equations directly
+			ColumnMajorMatrix slicedMatrix = phiMatrix.gatherColumns(support);
+			ColumnMajorMatrix expected = SignalHelper.cgSolve(slicedMatrix.transposeTimes(slicedMatrix), 
+					slicedMatrix.transposeTimes(yMatrix), 1e-14, 1000, 0);
+			for(int index = 0; index < rows.length; index++){
+				assertEquals(wMatrix.get(index, 0), expected.get(index, 0), 1e-9);
+			}
+		}
+	}
+
+	@Test
+	public void testNormalEquations(){
+		
+		ColumnMajorMatrix slicedMatrix = MatrixHelper.randN(new ColumnMajorMatrix(20, 6), new Random(8));
+		ColumnMajorMatrix gramMatrix = slicedMatrix.transposeTimes(slicedMatrix);
+		NormalEquations normalEquations = new NormalEquations(slicedMatrix);
+		
+		//multiplying by the operator should be the same as multiplying by the Gram matrix
+		double[] x = {1, -2, 0, 0.5, 3, -1};
+		double[] product = new double[6];
+		double[] expected = new double[6];
+		normalEquations.times(x, product);
+		gramMatrix.times(x, expected);
+		for(int row = 0; row < 6; row++){
+			assertEquals(product[row], expected[row], 1e-10);
+		}
+		
+		//so cgSolve should find the same solution either way
+		ColumnMajorMatrix yMatrix = slicedMatrix.transposeTimes(MatrixHelper.randN(new ColumnMajorMatrix(20, 1), 
+				new Random(9)));
+		ColumnMajorMatrix one = SignalHelper.cgSolve(normalEquations, yMatrix, 1e-12, 100, 0);
+		ColumnMajorMatrix two = SignalHelper.cgSolve(gramMatrix, yMatrix, 1e-12, 100, 0);
+		for(int row = 0; row < 6; row++){
+			assertEquals(one.get(row, 0), two.get(row, 0), 1e-9);
+		}
+	}
+
+	@Test
+	public void testPreconditioners(){
+		
+		//columns of very different lengths make the Gram matrix badly conditioned
+		ColumnMajorMatrix slicedMatrix = MatrixHelper.randN(new ColumnMajorMatrix(30, 8), new Random(11));
+		for(int column = 0; column < 8; column++){
+			for(int row = 0; row < 30; row++){
+				slicedMatrix.set(row, column, slicedMatrix.get(row, column) * Math.pow(4, column));
+			}
+		}
+		ColumnMajorMatrix yMatrix = slicedMatrix.transposeTimes(MatrixHelper.randN(new ColumnMajorMatrix(30, 1), 
+				new Random(12)));
+		ColumnMajorMatrix initialMatrix = new ColumnMajorMatrix(8, 1);
+		NormalEquations normalEquations = new NormalEquations(slicedMatrix);
+		
+		CgResult plain = SignalHelper.conjugateGradient(normalEquations, yMatrix, initialMatrix, 
+				null, 1e-10, 1000, 0);
+		CgResult jacobi = SignalHelper.conjugateGradient(normalEquations, yMatrix, initialMatrix, 
+				PreconditionerType.JACOBI.create(slicedMatrix), 1e-10, 1000, 0);
+		CgResult block = SignalHelper.conjugateGradient(normalEquations, yMatrix, initialMatrix, 
+				new BlockJacobiPreconditioner(slicedMatrix, 8), 1e-10, 1000, 0);
+		assertTrue(jacobi.getIterations() < plain.getIterations());
+		assertTrue(jacobi.getRelativeResidual() < 1e-10);
+		
+		//a single block is the whole Gram matrix, so one iteration solves it
+		assertEquals(block.getIterations(), 1);
+		for(int row = 0; row < 8; row++){
+			double scale = Math.abs(block.getSolution().get(row, 0));
+			assertEquals(jacobi.getSolution().get(row, 0), block.getSolution().get(row, 0), 1e-6 * scale);
+		}
+		
+		//blocks of one column are the same as Jacobi
+		double[] r = {1, 2, 3, 4, 5, 6, 7, 8};
+		double[] one = new double[8];
+		double[] two = new double[8];
+		new BlockJacobiPreconditioner(slicedMatrix, 1).solve(r, one);
+		PreconditionerType.JACOBI.create(slicedMatrix).solve(r, two);
+		for(int row = 0; row < 8; row++){
+			assertEquals(one[row], two[row], 1e-12 * Math.abs(two[row]));
+		}
+		
+		//a column that is all but a copy of another gets its pivot clamped to a small fraction 
+		//of its squared length, without the clamp the solve comes out around 1e14
+		for(int row = 0; row < 30; row++){
+			slicedMatrix.set(row, 1, slicedMatrix.get(row, 0) * (1 + 1e-10 * (row % 3)));
+		}
+		new BlockJacobiPreconditioner(slicedMatrix, 2).solve(r, one);
+		for(int row = 0; row < 8; row++){
+			assertTrue(Math.abs(one[row]) < 1e12);
+		}
+	}
+
+	@Test
+	public void testGramStore(){
+		
+		//150 columns don't divide into blocks evenly, so this also checks the edge blocks
+		ColumnMajorMatrix phiMatrix = MatrixHelper.randN(new ColumnMajorMatrix(20, 150), new Random(13));
+		ForkJoinPool pool = new ForkJoinPool(3);
+		GramStore gramStore = new GramStore(phiMatrix, pool);
+		pool.shutdown();
+		
+		SupportSet support = SupportSet.fromRows(150, new int[] {149, 0, 63, 64, 100, 7});
+		ColumnMajorMatrix slicedMatrix = phiMatrix.gatherColumns(support);
+		ColumnMajorMatrix expected = slicedMatrix.transposeTimes(slicedMatrix);
+		ColumnMajorMatrix gramMatrix = gramStore.gather(support);
+		for(int column = 0; column < support.size(); column++){
+			for(int row = 0; row < support.size(); row++){
+				assertEquals(gramMatrix.get(row, column), expected.get(row, column), 1e-12);
+			}
+		}
+		assertEquals(gramStore.get(3, 140), gramStore.get(140, 3));
+		
+		assertTrue(GramStore.fits(1024, 8L << 20));
+		assertFalse(GramStore.fits(1025, 8L << 20));
+		//50000^2 doubles would fit in the budget, but not in an array
+		assertFalse(GramStore.fits(50000, Long.MAX_VALUE));
+		assertTrue(GramStore.fits(46340, Long.MAX_VALUE));
+	}
+
+	@Test
+	public void testIterateBuffer(){
+		
+		IterateBuffer buffer = new IterateBuffer(3);
+		assertEquals(buffer.getCurrent().size(), 0);
+		
+		//each estimate is written into the vector that held the one before the previous one
+		SparseVector first = buffer.advance();
+		first.set(SupportSet.fromRows(3, new int[] {1}), new double[] {2});
+		SparseVector second = buffer.advance();
+		assertNotSame(first, second);
+		second.set(SupportSet.fromRows(3, new int[] {2}), new double[] {5});
+		assertSame(buffer.getPrevious(), first);
+		assertSame(buffer.getCurrent(), second);
+		
+		SparseVector third = buffer.advance();
+		assertSame(third, first);
+		assertEquals(third.get(1), 0.0);
+		assertSame(buffer.getPrevious(), second);
+	}
+
+	@Test
+	public void testSparseVector(){
+		
+		SparseVector vector = new SparseVector(300, 2);
+		vector.set(SupportSet.fromRows(300, new int[] {250, 4, 77}), new double[] {1.5, 0, -2});
+		assertEquals(vector.size(), 3);
+		assertEquals(vector.get(4), 1.5);
+		assertEquals(vector.get(250), -2.0);
+		assertEquals(vector.get(5), 0.0);
+		assertEquals(vector.nonzeroRows().toArray()[1], 250);
+		assertEquals(vector.nonzeroRows().size(), 2);
+		
+		//phi * s on the support alone should be exactly the dense product
+		double[] dense = vector.toColumnMajorMatrix().getValues();
+		MeasurementOperator[] operators = {MatrixHelper.gaussianMeasurements(40, 300, 6), 
+				new GaussianMeasurement(40, 300, 6), new DctMeasurement(40, 300, 6)};
+		for(MeasurementOperator phiMatrix : operators){
+			double[] expected = new double[40];
+			double[] result = new double[40];
+			phiMatrix.times(dense, expected);
+			phiMatrix.times(vector, result);
+			for(int row = 0; row < 40; row++){
+				assertEquals(result[row], expected[row], 1e-12);
+			}
+		}
+	}
+
+	@Test
+	public void testVectorKernels(){
+
+		//lengths that do and don't fill the unrolled loops, and a vector with zeros to skip
+		Random rand = new Random(9);
+		for(int length : new int[] {0, 1, 3, 4, 7, 240}){
+			double[] x = MatrixHelper.randN(new ColumnMajorMatrix(length + 2, 1), rand).getValues();
+			double[] y = MatrixHelper.randN(new ColumnMajorMatrix(length + 2, 1), rand).getValues();
+			double[] a = MatrixHelper.randN(new ColumnMajorMatrix(length, 9), rand).getValues();
+			double[] s = new double[9];
+			s[1] = 2;
+			s[4] = -1;
+			s[5] = 0.5;
+			s[6] = 3;
+			s[8] = -4;
+
+			VectorKernels scalar = VectorKernels.SCALAR;
+			VectorKernels unrolled = VectorKernels.UNROLLED;
+			assertEquals(unrolled.dot(x, 1, y, 2, length), scalar.dot(x, 1, y, 2, length), 1e-12);
+			assertEquals(unrolled.squaredNorm(x, 1, length), scalar.squaredNorm(x, 1, length), 1e-12);
+			assertEquals(unrolled.absMax(x, 2, length), scalar.absMax(x, 2, length));
+
+			//everything else adds in the same order, so it matches exactly
+			double[] one = y.clone();
+			double[] two = y.clone();
+			scalar.axpy(1.5, x, 1, one, 2, length);
+			unrolled.axpy(1.5, x, 1, two, 2, length);
+			assertTrue(Arrays.equals(one, two));
+			scalar.scaledAdd(x, 0, -0.5, one, 1, length);
+			unrolled.scaledAdd(x, 0, -0.5, two, 1, length);
+			assertTrue(Arrays.equals(one, two));
+
+			one = new double[length];
+			two = new double[length];
+			scalar.gemv(a, length, 9, s, one);
+			unrolled.gemv(a, length, 9, s, two);
+			assertTrue(Arrays.equals(one, two));
+			one = new double[9];
+			two = new double[9];
+			scalar.gemvTranspose(a, length, 9, x, one);
+			unrolled.gemvTranspose(a, length, 9, x, two);
+			assertTrue(Arrays.equals(one, two));
+			//r can start part way into an array
+			unrolled.gemvTranspose(a, 0, length, 9, y, 2, two, 0);
+			for(int column = 0; column < 9; column++){
+				assertEquals(two[column], scalar.dot(a, column * length, y, 2, length), 0);
+			}
+
+			//the Vector API sums the same way as UNROLLED's dot products, and is UNROLLED 
+			//itself when the module isn't there
+			VectorKernels vector = VectorKernels.VECTOR;
+			assertEquals(vector.dot(x, 1, y, 2, length), unrolled.dot(x, 1, y, 2, length), 0);
+			assertEquals(vector.squaredNorm(x, 1, length), unrolled.squaredNorm(x, 1, length), 0);
+			assertEquals(vector.absMax(x, 2, length), scalar.absMax(x, 2, length), 0);
+			one = y.clone();
+			two = y.clone();
+			scalar.axpy(1.5, x, 1, one, 2, length);
+			vector.axpy(1.5, x, 1, two, 2, length);
+			scalar.scaledAdd(x, 0, -0.5, one, 1, length);
+			vector.scaledAdd(x, 0, -0.5, two, 1, length);
+			assertTrue(Arrays.equals(one, two));
+			one = new double[length];
+			two = new double[length];
+			scalar.gemv(a, length, 9, s, one);
+			vector.gemv(a, length, 9, s, two);
+			assertTrue(Arrays.equals(one, two));
+			two = new double[9];
+			vector.gemvTranspose(a, 0, length, 9, y, 2, two, 0);
+			for(int column = 0; column < 9; column++){
+				VectorKernels sums = VectorKernels.isVectorApiAvailable() ? unrolled : scalar;
+				assertEquals(two[column], sums.dot(a, column * length, y, 2, length), 0);
+			}
+		}
+	}
+
+	@Test
+	public void testTopSelector(){
+
+		//ties and repeated values should pick the same rows as topIndices
+		Random rand = new Random(10);
+		double[] values = new double[500];
+		for(int row = 0; row < values.length; row++){
+			values[row] = rand.nextInt(40);
+		}
+		TopSelector selector = new TopSelector(60);
+		for(int k : new int[] {0, 1, 17, 60}){
+			selector.reset(k);
+			for(int row = 0; row < values.length; row++){
+				selector.offer(row, values[row]);
+			}
+			int[] rows = new int[k];
+			assertEquals(selector.sortedRows(rows), k);
+			int[] expected = MatrixHelper.topIndices(values, k);
+			Arrays.sort(expected);
+			assertTrue(Arrays.equals(rows, expected));
+		}
+
+		//the fused backprojection should pick the largest values of |phi' * r|
+		double[] r = MatrixHelper.randN(new ColumnMajorMatrix(40, 1), rand).getValues();
+		MeasurementOperator[] operators = {MatrixHelper.gaussianMeasurements(40, 300, 6), 
+				new GaussianMeasurement(40, 300, 6), new DctMeasurement(40, 300, 6)};
+		for(MeasurementOperator phiMatrix : operators){
+			double[] proxy = new double[300];
+			phiMatrix.transposeTimes(r, proxy);
+			int[] expected = MatrixHelper.topIndices(
+					MatrixHelper.getAbsMatrix(new ColumnMajorMatrix(300, 1, proxy)).getValues(), 20);
+			Arrays.sort(expected);
+			selector.reset(20);
+			phiMatrix.transposeTimes(r, selector);
+			int[] rows = new int[20];
+			selector.sortedRows(rows);
+			assertTrue(Arrays.equals(rows, expected));
+		}
+	}
+
+	@Test
+	public void testParallelMeasurement(){
+
+		//sizes that don't split evenly, every product should match the single thread exactly
+		Random rand = new Random(11);
+		ColumnMajorMatrix phiMatrix = MatrixHelper.randN(new ColumnMajorMatrix(301, 700), rand);
+		ForkJoinPool pool = new ForkJoinPool(3);
+		ParallelMeasurement parallel = new ParallelMeasurement(phiMatrix, pool);
+
+		double[] x = MatrixHelper.randN(new ColumnMajorMatrix(700, 1), rand).getValues();
+		x[5] = 0;
+		double[] r = MatrixHelper.randN(new ColumnMajorMatrix(301, 1), rand).getValues();
+		double[] one = new double[301];
+		double[] two = new double[301];
+		phiMatrix.times(x, one);
+		parallel.times(x, two);
+		assertTrue(Arrays.equals(one, two));
+
+		SupportSet support = SupportSet.fromRows(700, new int[] {3, 250, 699});
+		SparseVector s = new SparseVector(700, 3);
+		s.set(support, support.gather(x));
+		phiMatrix.times(s, one);
+		parallel.times(s, two);
+		assertTrue(Arrays.equals(one, two));
+
+		one = new double[700];
+		two = new double[700];
+		phiMatrix.transposeTimes(r, one);
+		parallel.transposeTimes(r, two);
+		assertTrue(Arrays.equals(one, two));
+
+		TopSelector first = new TopSelector(40);
+		TopSelector second = new TopSelector(40);
+		first.reset(40);
+		second.reset(40);
+		phiMatrix.transposeTimes(r, first);
+		parallel.transposeTimes(r, second);
+		int[] firstRows = new int[40];
+		int[] secondRows = new int[40];
+		first.sortedRows(firstRows);
+		second.sortedRows(secondRows);
+		assertTrue(Arrays.equals(firstRows, secondRows));
+		pool.shutdown();
+
+		//only split the products when there are spare threads and a big matrix
+		assertEquals(ParallelMode.choose(240, 1024, 1, 8), ParallelMode.INTER_COLUMN);
+		assertEquals(ParallelMode.choose(2400, 100000, 8, 8), ParallelMode.INTER_COLUMN);
+		assertEquals(ParallelMode.choose(2400, 100000, 2, 8), ParallelMode.INTRA_COLUMN);
+	}
+
+	@Test
+	public void testSignalLoader() throws IOException{
+
+		//the single pass should read the same values and sparsity as splitting every line
+		File matrixFile = new File("src/tests/input/test_2.txt");
+		SignalLoader loader = new SignalLoader(matrixFile);
+		ColumnMajorMatrix signalColumns = loader.getSignalColumns();
+		BufferedReader br = new BufferedReader(new FileReader(matrixFile));
+		int[] sparsity = new int[signalColumns.columnSize()];
+		int row = 0;
+		String currentLine;
+		while((currentLine = br.readLine()) != null){
+			String[] columnValues = currentLine.split("\t");
+			for(int column = 0; column < columnValues.length; column++){
+				double value = Double.parseDouble(columnValues[column]);
+				assertEquals(signalColumns.get(row, column), value, 0);
+				if(value != 0){
+					sparsity[column]++;
+				}
+			}
+			row++;
+		}
+		br.close();
+		assertEquals(loader.getNumRows(), 1024);
+		assertEquals(signalColumns.rowSize(), 1024);
+		assertEquals(signalColumns.columnSize(), 10);
+		assertTrue(Arrays.equals(loader.getSparsity(), sparsity));
+
+		//a line with a single value only sets the first column
+		File shortFile = File.createTempFile("signal", ".txt");
+		shortFile.deleteOnExit();
+		BufferedWriter bw = new BufferedWriter(new FileWriter(shortFile));
+		bw.write("1.5\t0\t-2\n3\n0\t4\t0\n");
+		bw.close();
+		Signal signal = new Signal(shortFile);
+		Matrix signalMatrix = signal.getSignalMatrix();
+		assertEquals(signal.getSignalLength(), 3);
+		assertEquals(signalMatrix.columnSize(), 3);
+		assertEquals(signalMatrix.get(1, 0), 3.0, 0);
+		assertEquals(signalMatrix.get(1, 2), 0.0, 0);
+		assertEquals(signalMatrix.get(2, 1), 4.0, 0);
+		assertEquals(signal.getSparsityMatrix(0), 2);
+		assertEquals(signal.getSparsityMatrix(1), 1);
+		assertEquals(signal.getSparsityMatrix(2), 1);
+	}
+
+	@Test
+	public void testDoubleText() throws IOException{
+
+		//values are written the way the test files write them
+		byte[] buffer = new byte[DoubleText.MAX_LENGTH];
+		double[] values = {0, 1.7502, -0.063566, 3, 1e21, 1.5e-7, 1e-6, 0.1 + 0.2, 
+				Double.MIN_VALUE, -Double.MAX_VALUE};
+		String[] expected = {"0", "1.7502", "-0.063566", "3", "1e21", "1.5e-7", 
+				"0.000001", "0.30000000000000004", "5e-324", "-1.7976931348623157e308"};
+		for(int index = 0; index < values.length; index++){
+			int end = DoubleText.format(values[index], buffer, 0);
+			assertEquals(new String(buffer, 0, end, "US-ASCII"), expected[index]);
+			assertEquals(DoubleText.parse(buffer, 0, end), values[index], 0);
+		}
+
+		//every value should read back exactly, and parse exactly like Double.parseDouble()
+		Random rand = new Random(12);
+		for(int index = 0; index < 10000; index++){
+			double value = rand.nextGaussian() * Math.pow(10, rand.nextInt(40) - 20);
+			int end = DoubleText.format(value, buffer, 0);
+			assertEquals(DoubleText.parse(buffer, 0, end), value, 0);
+			assertEquals(Double.parseDouble(new String(buffer, 0, end, "US-ASCII")), value, 0);
+			byte[] text = Double.toString(value).getBytes("US-ASCII");
+			assertEquals(DoubleText.parse(text, 0, text.length), value, 0);
+		}
+
+		//a matrix written by writeToFile() should load back exactly
+		ColumnMajorMatrix original = MatrixHelper.randN(new ColumnMajorMatrix(300, 4), rand);
+		original.set(7, 2, 0);
+		File matrixFile = File.createTempFile("matrix", ".txt");
+		matrixFile.deleteOnExit();
+		MatrixHelper.writeToFile(matrixFile.getPath(), original.toMatrix());
+		ColumnMajorMatrix loaded = new SignalLoader(matrixFile).getSignalColumns();
+		assertTrue(Arrays.equals(loaded.getValues(), original.getValues()));
+
+		MatrixReader reader = new MatrixReader(new ByteArrayInputStream(
+				"1\t-2.5 3e2\r\n\n4".getBytes("US-ASCII")));
+		assertTrue(reader.nextLine());
+		assertEquals(reader.countValues(), 3);
+		assertEquals(reader.nextValue(), 1.0, 0);
+		assertEquals(reader.nextValue(), -2.5, 0);
+		assertEquals(reader.nextValue(), 300.0, 0);
+		assertFalse(reader.hasNextValue());
+		assertTrue(reader.nextLine());
+		assertFalse(reader.hasNextValue());
+		assertTrue(reader.nextLine());
+		assertEquals(reader.nextValue(), 4.0, 0);
+		assertFalse(reader.nextLine());
+		reader.close();
+	}
+
+	@Test
+	public void testMatrixFile() throws IOException{
+
+		//both layouts should read back exactly
+		Random rand = new Random(13);
+		ColumnMajorMatrix original = MatrixHelper.randN(new ColumnMajorMatrix(70, 9), rand);
+		for(int index = 0; index < original.getValues().length; index += 1 + rand.nextInt(3)){
+			original.getValues()[index] = 0;
+		}
+		File binaryFile = File.createTempFile("matrix", ".csm");
+		binaryFile.deleteOnExit();
+		for(boolean sparse : new boolean[] {false, true}){
+			MatrixFile.write(binaryFile, original, sparse);
+			assertTrue(MatrixFile.isMatrixFile(binaryFile));
+			ColumnMajorMatrix read = MatrixFile.read(binaryFile);
+			assertEquals(read.rowSize(), 70);
+			assertEquals(read.columnSize(), 9);
+			assertTrue(Arrays.equals(read.getValues(), original.getValues()));
+		}
+
+		//a signal converted to binary and back should load exactly like the text
+		File textFile = new File("src/tests/input/test_2.txt");
+		assertFalse(MatrixFile.isMatrixFile(textFile));
+		MatrixConverter.toBinary(textFile, binaryFile);
+		assertTrue(binaryFile.length() < textFile.length());
+		SignalLoader text = new SignalLoader(textFile);
+		SignalLoader binary = new SignalLoader(binaryFile);
+		assertTrue(Arrays.equals(binary.getSignalColumns().getValues(), text.getSignalColumns().getValues()));
+		assertTrue(Arrays.equals(binary.getSparsity(), text.getSparsity()));
+		assertEquals(binary.getNumRows(), 1024);
+
+		File convertedFile = File.createTempFile("matrix", ".txt");
+		convertedFile.deleteOnExit();
+		MatrixConverter.toText(binaryFile, convertedFile);
+		assertTrue(Arrays.equals(new SignalLoader(convertedFile).getSignalColumns().getValues(), 
+				text.getSignalColumns().getValues()));
+
+		//a column pointer past the stored values should be reported as a bad file
+		ColumnMajorMatrix small = new ColumnMajorMatrix(4, 2, new double[] {1, 2, 0, 0, 0, 0, 3, 4});
+		MatrixFile.write(binaryFile, small, true);
+		RandomAccessFile corrupt = new RandomAccessFile(binaryFile, "rw");
+		//the second column pointer, just after the 32 byte header and the first pointer
+		corrupt.seek(32 + 4);
+		corrupt.writeInt(Integer.reverseBytes(5));
+		corrupt.close();
+		try{
+			MatrixFile.readSparse(binaryFile);
+			fail("A bad column pointer should not be read");
+		} catch (IOException e) {
+			//expected
+		}
+	}
+
+	@Test
+	public void testSparseColumnMatrix() throws IOException{
+
+		//only the nonzeros should be kept, and every column should come back exactly
+		Random rand = new Random(14);
+		ColumnMajorMatrix dense = new ColumnMajorMatrix(50, 6);
+		for(int index = 0; index < 40; index++){
+			dense.set(rand.nextInt(50), rand.nextInt(5), rand.nextGaussian());
+		}
+		SparseColumnMatrix sparse = SparseColumnMatrix.fromColumnMajor(dense);
+		assertTrue(Arrays.equals(sparse.toColumnMajorMatrix().getValues(), dense.getValues()));
+		assertEquals(sparse.getNonzeroCount(5), 0);
+		int numStored = 0;
+		for(int column = 0; column < 6; column++){
+			double[] expected = MatrixHelper.getColumn(dense, column).getValues();
+			assertTrue(Arrays.equals(sparse.getColumn(column).toColumnMajorMatrix().getValues(), expected));
+			int nonzeros = 0;
+			for(int row = 0; row < 50; row++){
+				assertEquals(sparse.get(row, column), dense.get(row, column), 0);
+				if(expected[row] != 0){
+					nonzeros++;
+				}
+			}
+			assertEquals(sparse.getNonzeroCount(column), nonzeros);
+			numStored += sparse.getNonzeroCount(column);
+		}
+		assertEquals(sparse.getNonzeroCount(), numStored);
+		assertTrue(Arrays.equals(ColumnMajorMatrix.fromMatrix(sparse.toMatrix()).getValues(), dense.getValues()));
+
+		//the loader should only keep the nonzeros of a signal file, and a CSC file should
+		//load back the same
+		SignalLoader loader = new SignalLoader(new File("src/tests/input/test_1.txt"));
+		SparseColumnMatrix signalColumns = loader.getSparseColumns();
+		assertEquals(signalColumns.rowSize(), 1024);
+		assertEquals(signalColumns.getNonzeroCount(), loader.getSparsity()[0]);
+		assertTrue(signalColumns.getNonzeroCount() < 100);
+		File binaryFile = File.createTempFile("signal", ".csm");
+		binaryFile.deleteOnExit();
+		MatrixFile.write(binaryFile, signalColumns);
+		SparseColumnMatrix read = MatrixFile.readSparse(binaryFile);
+		assertTrue(Arrays.equals(read.getColumnPointers(), signalColumns.getColumnPointers()));
+		assertTrue(Arrays.equals(read.getRowIndices(), signalColumns.getRowIndices()));
+		assertTrue(Arrays.equals(read.getValues(), signalColumns.getValues()));
+	}
+
+	@Test
+	public void testOffHeapMatrix() throws IOException{
+
+		//a size that doesn't split into even blocks, every product should match the heap exactly
+		Random rand = new Random(15);
+		ColumnMajorMatrix phiMatrix = MatrixHelper.randN(new ColumnMajorMatrix(37, 150), rand);
+		OffHeapArena arena = new OffHeapArena();
+		OffHeapMatrix offHeap = arena.copyOf(phiMatrix);
+		assertTrue(Arrays.equals(offHeap.toColumnMajorMatrix().getValues(), phiMatrix.getValues()));
+		assertEquals(offHeap.get(36, 149), phiMatrix.get(36, 149), 0);
+
+		double[] x = MatrixHelper.randN(new ColumnMajorMatrix(150, 1), rand).getValues();
+		Arrays.fill(x, 64, 128, 0);
+		double[] r = MatrixHelper.randN(new ColumnMajorMatrix(37, 1), rand).getValues();
+		double[] one = new double[37];
+		double[] two = new double[37];
+		phiMatrix.times(x, one);
+		offHeap.times(x, two);
+		assertTrue(Arrays.equals(one, two));
+
+		SupportSet support = SupportSet.fromRows(150, new int[] {0, 70, 149});
+		SparseVector s = new SparseVector(150, 3);
+		s.set(support, support.gather(x));
+		phiMatrix.times(s, one);
+		offHeap.times(s, two);
+		assertTrue(Arrays.equals(one, two));
+		assertTrue(Arrays.equals(offHeap.gatherColumns(support).getValues(), 
+				phiMatrix.gatherColumns(support).getValues()));
+
+		one = new double[150];
+		two = new double[150];
+		phiMatrix.transposeTimes(r, one);
+		offHeap.transposeTimes(r, two);
+		assertTrue(Arrays.equals(one, two));
+
+		TopSelector first = new TopSelector(10);
+		TopSelector second = new TopSelector(10);
+		first.reset(10);
+		second.reset(10);
+		phiMatrix.transposeTimes(r, first);
+		offHeap.transposeTimes(r, second);
+		int[] firstRows = new int[10];
+		int[] secondRows = new int[10];
+		first.sortedRows(firstRows);
+		second.sortedRows(secondRows);
+		assertTrue(Arrays.equals(firstRows, secondRows));
+
+		ColumnMajorMatrix block = MatrixHelper.randN(new ColumnMajorMatrix(150, 3), rand);
+		block.set(5, 1, 0);
+		assertTrue(Arrays.equals(offHeap.times(block).getValues(), phiMatrix.times(block).getValues()));
+		ColumnMajorMatrix residuals = MatrixHelper.randN(new ColumnMajorMatrix(37, 3), rand);
+		assertTrue(Arrays.equals(offHeap.transposeTimes(residuals).getValues(), 
+				phiMatrix.transposeTimes(residuals).getValues()));
+
+		//the same seed should give the same measurement matrix on and off the heap
+		assertTrue(Arrays.equals(MatrixHelper.gaussianMeasurements(20, 90, 4, arena).toColumnMajorMatrix().getValues(),
+				MatrixHelper.gaussianMeasurements(20, 90, 4).getValues()));
+
+		//a dense file should map without a copy, and a created file should keep what is written
+		File binaryFile = File.createTempFile("matrix", ".csm");
+		binaryFile.deleteOnExit();
+		MatrixFile.write(binaryFile, phiMatrix, false);
+		OffHeapMatrix mapped = arena.map(binaryFile, false);
+		assertTrue(Arrays.equals(mapped.toColumnMajorMatrix().getValues(), phiMatrix.getValues()));
+		mapped.close();
+		assertFalse(mapped.isOpen());
+		OffHeapMatrix created = MatrixFile.create(binaryFile, 37, 150, arena);
+		created.setColumns(0, 150, phiMatrix.getValues(), 0);
+		created.close();
+		assertTrue(Arrays.equals(MatrixFile.read(binaryFile).getValues(), phiMatrix.getValues()));
+
+		//closing the arena should release everything left in it
+		assertEquals(arena.getMatrixCount(), 2);
+		assertEquals(arena.getSizeInBytes(), 8L * (37 * 150 + 20 * 90));
+		arena.close();
+		assertFalse(offHeap.isOpen());
+		assertEquals(arena.getMatrixCount(), 0);
+		try{
+			offHeap.times(x, two);
+			fail("A closed matrix should not be usable");
+		} catch (IllegalStateException e) {
+			//expected
+		}
+	}
 }
@@ -1,10 +1,30 @@
 package tests;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ForkJoinPool;
 
 import junit.framework.TestCase;
 
+import matrix.ColumnMajorMatrix;
+import matrix.CosampProgress;
+import matrix.GramStore;
+import matrix.LeastSquaresMethod;
 import matrix.MatrixHelper;
+import matrix.MeasurementCache;
+import matrix.MeasurementEnsemble;
+import matrix.MeasurementOperator;
+import matrix.OffHeapArena;
+import matrix.ParallelMeasurement;
+import matrix.ParallelMode;
+import matrix.SignalHelper;
+import matrix.StopReason;
+import matrix.StoppingPolicies;
+import matrix.StoppingPolicy;
 
 import org.apache.mahout.math.Matrix;
 import org.junit.Test;
@@ -63,4 +83,376 @@ public class TestCases extends TestCase{
 			}
 		}	
 	}
+
+	@Test
+	public void testParallelMatchesSequential(){
+
+		//the reconstruction should not depend on how many threads are used
+		Signal sparse = new Signal(new File("src/tests/input/test_2.txt"));
+		long seed = 12;
+		Matrix one = sparse.runCosamp(ProcessSignals.getNumIterations(), seed);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		Matrix two = sparse.runCosamp(ProcessSignals.getNumIterations(), seed, pool);
+		//splitting the products of every column over the pool as well
+		sparse.setParallelMode(ParallelMode.INTRA_COLUMN);
+		Matrix three = sparse.runCosamp(ProcessSignals.getNumIterations(), seed, pool);
+		pool.shutdown();
+
+		for(int row = 0; row < one.rowSize(); row++){
+			for(int column = 0; column < one.columnSize(); column++){
+				assertEquals(one.get(row, column), two.get(row, column), 0);
+				assertEquals(one.get(row, column), three.get(row, column), 0);
+			}
+		}
+	}
+
+	@Test
+	public void testNestedColumnsMatchSequential() throws IOException{
+
+		//a thread waiting for the pieces of its column's products can pick up another column,
+		//which must not touch the first column's workspace. With more columns than threads 
+		//that happens on most runs, so the pool is run several times
+		File file = new File(System.getProperty("java.io.tmpdir"), "cosamp_nested.txt");
+		BufferedReader reader = new BufferedReader(new FileReader("src/tests/input/test_2.txt"));
+		FileWriter writer = new FileWriter(file);
+		for(String line = reader.readLine(); line != null; line = reader.readLine()){
+			writer.write(line + "\t" + line + "\t" + line + "\n");
+		}
+		writer.close();
+		reader.close();
+		Signal sparse = new Signal(file);
+		assertTrue(file.delete());
+
+		long seed = 21;
+		Matrix one = sparse.runCosamp(ProcessSignals.getNumIterations(), seed);
+		ForkJoinPool pool = new ForkJoinPool(8);
+		sparse.setParallelMode(ParallelMode.INTRA_COLUMN);
+		for(int run = 0; run < 5; run++){
+			Matrix two = sparse.runCosamp(ProcessSignals.getNumIterations(), seed, pool);
+			for(int row = 0; row < one.rowSize(); row++){
+				for(int column = 0; column < one.columnSize(); column++){
+					assertEquals(one.get(row, column), two.get(row, column), 0);
+				}
+			}
+		}
+		pool.shutdown();
+	}
+
+	@Test
+	public void testNestedColumn(){
+
+		//the same thing made to happen every time, the second column is reconstructed by the
+		//first column's thread in the middle of the first column's first product
+		final Signal sparse = new Signal(new File("src/tests/input/test_2.txt"));
+		final ColumnMajorMatrix phiMatrix = (ColumnMajorMatrix) sparse.getMeasurementOperator(5);
+		final ColumnMajorMatrix[] yMatrix = new ColumnMajorMatrix[2];
+		final int[] sparsity = new int[2];
+		final int iterations = ProcessSignals.getNumIterations();
+		ColumnMajorMatrix[] expected = new ColumnMajorMatrix[2];
+		for(int column = 0; column < 2; column++){
+			ColumnMajorMatrix xMatrix = ColumnMajorMatrix.fromMatrix(
+					MatrixHelper.getColumn(sparse.getSignalMatrix(), column));
+			yMatrix[column] = new ColumnMajorMatrix(phiMatrix.rowSize(), 1);
+			phiMatrix.times(xMatrix.getValues(), yMatrix[column].getValues());
+			sparsity[column] = sparse.getSparsityMatrix(column);
+			expected[column] = SignalHelper.cosampAlgo(sparse, yMatrix[column], phiMatrix, 
+					sparsity[column], iterations);
+		}
+
+		final ColumnMajorMatrix[] nested = new ColumnMajorMatrix[1];
+		ForkJoinPool pool = new ForkJoinPool(2);
+		MeasurementOperator nesting = new ParallelMeasurement(phiMatrix, pool){
+			@Override
+			public void transposeTimes(double[] r, double[] result){
+				if(nested[0] == null){
+					nested[0] = SignalHelper.cosampAlgo(sparse, yMatrix[1], phiMatrix, sparsity[1], 
+							iterations);
+				}
+				super.transposeTimes(r, result);
+			}
+		};
+		ColumnMajorMatrix outer = SignalHelper.cosampAlgo(sparse, yMatrix[0], nesting, sparsity[0], 
+				iterations);
+		pool.shutdown();
+
+		for(int row = 0; row < outer.rowSize(); row++){
+			assertEquals(expected[0].get(row, 0), outer.get(row, 0), 0);
+			assertEquals(expected[1].get(row, 0), nested[0].get(row, 0), 0);
+		}
+	}
+
+	@Test
+	public void testImplicitMeasurements(){
+
+		//reconstructing with a measurement matrix that is never stored should be just as accurate
+		for(String number : new String[] {"1", "3"}){
+			Signal sparse = new Signal(new File("src/tests/input/test_" + number + ".txt"));
+			sparse.setMeasurementEnsemble(MeasurementEnsemble.IMPLICIT_GAUSSIAN);
+			Matrix one = sparse.runCosamp(ProcessSignals.getNumIterations(), 7);
+			Matrix two = new Signal(new File("src/tests/output/results_" + number + ".txt"))
+					.getSignalMatrix();
+
+			double ERROR_RATE = 0.065;
+			for(int row = 0; row < two.rowSize(); row++){
+				assertEquals(one.get(row, 0), two.get(row, 0), ERROR_RATE);
+			}
+		}
+	}
+
+	@Test
+	public void testBatchedMatchesSingleColumn(){
+
+		//columns that advance together should end up exactly where they would on their own,
+		//a 1024 long signal is well within the default Gram budget so both use the Gram store
+		for(MeasurementEnsemble ensemble : new MeasurementEnsemble[] {MeasurementEnsemble.DENSE_GAUSSIAN,
+				MeasurementEnsemble.IMPLICIT_GAUSSIAN}){
+			Signal sparse = new Signal(new File("src/tests/input/test_2.txt"));
+			sparse.setMeasurementEnsemble(ensemble);
+			long seed = 5;
+			Matrix batched = sparse.runCosampBatched(ProcessSignals.getNumIterations(), seed, 4);
+
+			MeasurementOperator phiMatrix = sparse.getMeasurementOperator(seed);
+			GramStore gramStore = sparse.createGramStore(phiMatrix);
+			assertNotNull(gramStore);
+			ColumnMajorMatrix signalColumns = ColumnMajorMatrix.fromMatrix(sparse.getSignalMatrix());
+			for(int column = 0; column < signalColumns.columnSize(); column++){
+				ColumnMajorMatrix measurementMatrix = new ColumnMajorMatrix(phiMatrix.rowSize(), 1);
+				phiMatrix.times(MatrixHelper.getColumn(signalColumns, column).getValues(), 
+						measurementMatrix.getValues());
+				ColumnMajorMatrix xHat = SignalHelper.cosampAlgo(sparse, measurementMatrix, phiMatrix, 
+						gramStore, sparse.getSparsityMatrix(column), ProcessSignals.getNumIterations());
+				for(int row = 0; row < xHat.rowSize(); row++){
+					assertEquals(batched.get(row, column), xHat.get(row, 0), 0);
+				}
+			}
+		}
+
+		//with a measurement cache the Gram matrix is kept with the matrix, so the second run
+		//doesn't work it out again
+		Signal sparse = new Signal(new File("src/tests/input/test_2.txt"));
+		MeasurementCache cache = new MeasurementCache(1L << 25);
+		sparse.setMeasurementCache(cache);
+		Matrix one = sparse.runCosampBatched(ProcessSignals.getNumIterations(), 5, 4);
+		long cachedBytes = cache.getSizeInBytes();
+		Matrix two = sparse.runCosampBatched(ProcessSignals.getNumIterations(), 5, 4);
+		assertEquals(cache.getMissCount(), 1);
+		assertEquals(cache.getSizeInBytes(), cachedBytes);
+		assertEquals(cachedBytes, sparse.getMeasurementOperator(5).getSizeInBytes() + 8L * 1024 * 1024);
+		for(int row = 0; row < one.rowSize(); row++){
+			for(int column = 0; column < one.columnSize(); column++){
+				assertEquals(one.get(row, column), two.get(row, column), 0);
+			}
+		}
+	}
+
+	@Test
+	public void testCholeskySolver(){
+
+		//solving each support exactly should be at least as accurate as cgSolve
+		for(String number : new String[] {"1", "2", "3"}){
+			Signal sparse = new Signal(new File("src/tests/input/test_" + number + ".txt"));
+			sparse.setLeastSquaresMethod(LeastSquaresMethod.CHOLESKY);
+			Matrix one = sparse.runCosamp(ProcessSignals.getNumIterations(), 3);
+			Matrix two = new Signal(new File("src/tests/output/results_" + number + ".txt"))
+					.getSignalMatrix();
+
+			double ERROR_RATE = 0.065;
+			for(int column = 0; column < two.columnSize(); column++){
+				for(int row = 0; row < two.rowSize(); row++){
+					assertEquals(one.get(row, column), two.get(row, column), ERROR_RATE);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testWarmStart(){
+
+		//starting cgSolve from the last solution should save inner iterations without losing accuracy
+		long[] innerIterations = new long[2];
+		for(int warm = 0; warm < 2; warm++){
+			Signal sparse = new Signal(new File("src/tests/input/test_2.txt"));
+			sparse.setWarmStart(warm == 1);
+			Matrix one = sparse.runCosamp(ProcessSignals.getNumIterations(), 3);
+			Matrix two = new Signal(new File("src/tests/output/results_2.txt")).getSignalMatrix();
+			innerIterations[warm] = sparse.getSolverStatistics().getInnerIterations();
+
+			double ERROR_RATE = 0.065;
+			for(int column = 0; column < two.columnSize(); column++){
+				for(int row = 0; row < two.rowSize(); row++){
+					assertEquals(one.get(row, column), two.get(row, column), ERROR_RATE);
+				}
+			}
+		}
+		assertTrue(innerIterations[1] < innerIterations[0]);
+	}
+
+	@Test
+	public void testStoppingPolicies(){
+
+		//the default policy is the test from cosamp.m, every column records why it stopped
+		Signal sparse = new Signal(new File("src/tests/input/test_2.txt"));
+		sparse.runCosamp(ProcessSignals.getNumIterations(), 3);
+		for(int column = 0; column < sparse.getSignalMatrix().columnSize(); column++){
+			assertNotNull(sparse.getStopReason(column));
+			assertTrue(sparse.getIterationCount(column) <= ProcessSignals.getNumIterations());
+		}
+
+		//stopping on a small residual or a support that stays put should still be accurate
+		sparse.setStoppingPolicy(StoppingPolicies.anyOf(StoppingPolicies.residual(1e-6), 
+				StoppingPolicies.supportStable(2)));
+		Matrix one = sparse.runCosamp(ProcessSignals.getNumIterations(), 3);
+		Matrix two = new Signal(new File("src/tests/output/results_2.txt")).getSignalMatrix();
+		double ERROR_RATE = 0.065;
+		for(int column = 0; column < two.columnSize(); column++){
+			StopReason reason = sparse.getStopReason(column);
+			assertTrue(reason == StopReason.RESIDUAL || reason == StopReason.SUPPORT_STABLE 
+					|| reason == StopReason.ITERATION_LIMIT);
+			for(int row = 0; row < two.rowSize(); row++){
+				assertEquals(one.get(row, column), two.get(row, column), ERROR_RATE);
+			}
+		}
+
+		//a column stopped on its residual hands back the estimate that passed the test
+		sparse.setStoppingPolicy(StoppingPolicies.residual(1e-6));
+		MeasurementOperator phiMatrix = sparse.getMeasurementOperator(3);
+		ColumnMajorMatrix xMatrix = ColumnMajorMatrix.fromMatrix(
+				MatrixHelper.getColumn(sparse.getSignalMatrix(), 0));
+		ColumnMajorMatrix yMatrix = new ColumnMajorMatrix(phiMatrix.rowSize(), 1);
+		phiMatrix.times(xMatrix.getValues(), yMatrix.getValues());
+		CosampProgress progress = new CosampProgress();
+		ColumnMajorMatrix xHat = SignalHelper.cosampAlgo(sparse, yMatrix, phiMatrix, null,
+				sparse.getSparsityMatrix(0), ProcessSignals.getNumIterations(), progress);
+		assertEquals(StopReason.RESIDUAL, progress.getStopReason());
+		ColumnMajorMatrix rMatrix = new ColumnMajorMatrix(phiMatrix.rowSize(), 1);
+		phiMatrix.times(xHat.getValues(), rMatrix.getValues());
+		assertTrue(MatrixHelper.norm(yMatrix.minus(rMatrix)) < 1e-6 * MatrixHelper.norm(yMatrix));
+
+		//columns run in a batch stop for the same reasons as on their own
+		sparse.setStoppingPolicy(StoppingPolicies.cosamp());
+		sparse.runCosampBatched(ProcessSignals.getNumIterations(), 5, 4);
+		StopReason[] reasons = new StopReason[two.columnSize()];
+		int[] counts = new int[two.columnSize()];
+		for(int column = 0; column < two.columnSize(); column++){
+			reasons[column] = sparse.getStopReason(column);
+			counts[column] = sparse.getIterationCount(column);
+		}
+		sparse.runCosampBatched(ProcessSignals.getNumIterations(), 5, 1);
+		for(int column = 0; column < two.columnSize(); column++){
+			assertEquals(reasons[column], sparse.getStopReason(column));
+			assertEquals(counts[column], sparse.getIterationCount(column));
+		}
+	}
+
+	@Test
+	public void testSteadyStateAllocation(){
+
+		//only the HotSpot thread bean can count the bytes a thread has allocated
+		if(!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)){
+			return;
+		}
+		com.sun.management.ThreadMXBean threads = 
+				(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+
+		//a column that never stops early, so it always runs every iteration it is given
+		Signal sparse = new Signal(new File("src/tests/input/test_2.txt"));
+		sparse.setStoppingPolicy(StoppingPolicies.anyOf(new StoppingPolicy[0]));
+		MeasurementOperator phiMatrix = sparse.getMeasurementOperator(3);
+		ColumnMajorMatrix xMatrix = ColumnMajorMatrix.fromMatrix(
+				MatrixHelper.getColumn(sparse.getSignalMatrix(), 0));
+		ColumnMajorMatrix yMatrix = new ColumnMajorMatrix(phiMatrix.rowSize(), 1);
+		phiMatrix.times(xMatrix.getValues(), yMatrix.getValues());
+		int sparsity = sparse.getSparsityMatrix(0);
+
+		//the workspace and the column's own state are allocated up front, the iterations 
+		//themselves should add nothing once the workspace is warm. The Vector API kernels 
+		//allocate until the JIT has compiled them, which takes longer than the plain loops, 
+		//so the runs are repeated until that has happened
+		long[] allocated = new long[2];
+		int[] iterations = {10, 40};
+		for(int warmup = 0; warmup < 20; warmup++){
+			for(int run = 0; run < 2; run++){
+				long before = threads.getThreadAllocatedBytes(threadId);
+				SignalHelper.cosampAlgo(sparse, yMatrix, phiMatrix, sparsity, iterations[run]);
+				allocated[run] = threads.getThreadAllocatedBytes(threadId) - before;
+			}
+			if(warmup >= 2 && allocated[1] - allocated[0] < 1024){
+				break;
+			}
+		}
+		assertTrue("30 more iterations allocated " + (allocated[1] - allocated[0]) + " bytes", 
+				allocated[1] - allocated[0] < 1024);
+	}
+
+	@Test
+	public void testTrace() throws IOException{
+
+		//every estimate of every column is written out, and the reconstruction is the 
+		//estimate before the last one, the same as cosamp.m. The folder is created on the way.
+		File directory = new File(System.getProperty("java.io.tmpdir"), "cosamp_trace");
+		Signal sparse = new Signal(new File("src/tests/input/test_4.txt"));
+		sparse.setTraceDirectory(directory);
+		Matrix one = sparse.runCosamp(ProcessSignals.getNumIterations(), 3);
+
+		for(int column = 0; column < one.columnSize(); column++){
+			File file = new File(directory, "trace_" + column + ".txt");
+			BufferedReader reader = new BufferedReader(new FileReader(file));
+			String[] previous = null;
+			String[] last = null;
+			int numLines = 0;
+			for(String line = reader.readLine(); line != null; line = reader.readLine()){
+				previous = last;
+				last = line.split(" ");
+				numLines++;
+				assertEquals(Integer.parseInt(last[0]), numLines);
+				assertEquals(last.length, one.rowSize() + 1);
+			}
+			reader.close();
+			assertTrue(file.delete());
+
+			assertEquals(numLines, sparse.getIterationCount(column));
+			for(int row = 0; row < one.rowSize(); row++){
+				double expected = previous == null ? 0 : Double.parseDouble(previous[row + 1]);
+				assertEquals(one.get(row, column), expected, 0);
+			}
+		}
+		assertTrue(directory.delete());
+
+		//a folder that can't be created should be reported before any column runs
+		File notFolder = File.createTempFile("cosamp_trace", ".txt");
+		notFolder.deleteOnExit();
+		sparse.setTraceDirectory(new File(notFolder, "trace"));
+		try{
+			sparse.runCosamp(ProcessSignals.getNumIterations(), 3);
+			fail("The trace folder can't be created inside a file");
+		} catch (IllegalArgumentException e) {
+			//expected
+		}
+	}
+
+	@Test
+	public void testOffHeapMeasurements(){
+
+		//measurement matrices off the heap should give exactly the same reconstruction,
+		//and each one should be released once it has been used
+		Signal sparse = new Signal(new File("src/tests/input/test_2.txt"));
+		long seed = 9;
+		Matrix one = sparse.runCosamp(ProcessSignals.getNumIterations(), seed);
+		Matrix batchedOne = sparse.runCosampBatched(ProcessSignals.getNumIterations(), seed, 4);
+
+		OffHeapArena arena = new OffHeapArena();
+		sparse.setOffHeapArena(arena);
+		Matrix two = sparse.runCosamp(ProcessSignals.getNumIterations(), seed);
+		Matrix batchedTwo = sparse.runCosampBatched(ProcessSignals.getNumIterations(), seed, 4);
+		assertEquals(arena.getMatrixCount(), 0);
+		arena.close();
+
+		for(int row = 0; row < one.rowSize(); row++){
+			for(int column = 0; column < one.columnSize(); column++){
+				assertEquals(one.get(row, column), two.get(row, column), 0);
+				assertEquals(batchedOne.get(row, column), batchedTwo.get(row, column), 0);
+			}
+		}
+	}
 }
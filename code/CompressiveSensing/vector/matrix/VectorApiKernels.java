@@ -0,0 +1,204 @@
+package matrix;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * VectorKernels.VECTOR, written with the Vector API so every loop is spelled out in SIMD
+ * registers instead of left to the JIT. This folder is compiled on its own with Java 17 or
+ * later and --add-modules jdk.incubator.vector, and the module has to be added when the
+ * program runs as well (see the README). VectorKernels loads this class by name and uses
+ * UNROLLED when it can't.
+ *
+ * Every sum runs on four lanes whatever the machine, and the lanes are added up as
+ * (0 + 1) + (2 + 3), never with reduceLanes(), whose order isn't fixed. dot() and
+ * squaredNorm() therefore give exactly what UNROLLED's four partial sums give, and every
+ * column of gemvTranspose() is summed the same way, which is where the speed up over
+ * UNROLLED's single running sum per column comes from. The element by element loops multiply
+ * and add separately rather than with fma(), so they match SCALAR exactly and can use as many
+ * lanes as the machine has.
+ */
+class VectorApiKernels implements Kernels {
+
+	//four lanes for every sum
+	private static final VectorSpecies<Double> SUMS = DoubleVector.SPECIES_256;
+	//the widest vectors the machine has, for everything else
+	private static final VectorSpecies<Double> LANES = DoubleVector.SPECIES_PREFERRED;
+
+	@Override
+	public double dot(double[] x, int xOffset, double[] y, int yOffset, int length){
+
+		int bound = SUMS.loopBound(length);
+		DoubleVector sums = DoubleVector.zero(SUMS);
+		for (int index = 0; index < bound; index += SUMS.length()) {
+			sums = sums.add(DoubleVector.fromArray(SUMS, x, xOffset + index)
+					.mul(DoubleVector.fromArray(SUMS, y, yOffset + index)));
+		}
+		return finish(sums.lane(0), sums.lane(1), sums.lane(2), sums.lane(3), x, xOffset + bound,
+				y, yOffset + bound, length - bound);
+	}
+
+	@Override
+	public void axpy(double alpha, double[] x, int xOffset, double[] y, int yOffset, int length){
+
+		int bound = LANES.loopBound(length);
+		int index = 0;
+		for (; index < bound; index += LANES.length()) {
+			DoubleVector.fromArray(LANES, y, yOffset + index)
+					.add(DoubleVector.fromArray(LANES, x, xOffset + index).mul(alpha))
+					.intoArray(y, yOffset + index);
+		}
+		for (; index < length; index++) {
+			y[yOffset + index] += alpha * x[xOffset + index];
+		}
+	}
+
+	@Override
+	public void scaledAdd(double[] x, int xOffset, double beta, double[] y, int yOffset, int length){
+
+		int bound = LANES.loopBound(length);
+		int index = 0;
+		for (; index < bound; index += LANES.length()) {
+			DoubleVector.fromArray(LANES, x, xOffset + index)
+					.add(DoubleVector.fromArray(LANES, y, yOffset + index).mul(beta))
+					.intoArray(y, yOffset + index);
+		}
+		for (; index < length; index++) {
+			y[yOffset + index] = x[xOffset + index] + y[yOffset + index] * beta;
+		}
+	}
+
+	@Override
+	public double squaredNorm(double[] x, int offset, int length){
+		return dot(x, offset, x, offset, length);
+	}
+
+	/**
+	 * The largest value doesn't depend on the order the values are looked at, so the lanes
+	 * can be reduced in any order.
+	 */
+	@Override
+	public double absMax(double[] x, int offset, int length){
+
+		int bound = LANES.loopBound(length);
+		DoubleVector maxima = DoubleVector.zero(LANES);
+		int index = 0;
+		for (; index < bound; index += LANES.length()) {
+			maxima = maxima.max(DoubleVector.fromArray(LANES, x, offset + index).abs());
+		}
+		double max = maxima.reduceLanes(VectorOperators.MAX);
+		for (; index < length; index++) {
+			max = Math.max(max, Math.abs(x[offset + index]));
+		}
+		return max;
+	}
+
+	/**
+	 * Four nonzero columns at a time like UNROLLED, with the rows in vectors. Every value is
+	 * still summed left to right, column after column.
+	 */
+	@Override
+	public void gemvRows(double[] a, int numRows, int startRow, int endRow, int numColumns,
+			double[] x, double[] result){
+
+		for (int row = startRow; row < endRow; row++) {
+			result[row] = 0;
+		}
+		int bound = startRow + LANES.loopBound(endRow - startRow);
+		int column0 = VectorKernels.nextNonzero(x, 0, numColumns);
+		while(column0 < numColumns){
+			int column1 = VectorKernels.nextNonzero(x, column0 + 1, numColumns);
+			int column2 = VectorKernels.nextNonzero(x, column1 + 1, numColumns);
+			int column3 = VectorKernels.nextNonzero(x, column2 + 1, numColumns);
+			if(column3 >= numColumns){
+				//fewer than four left, add them one at a time
+				for (int column = column0; column < numColumns; column++) {
+					if(x[column] != 0){
+						axpy(x[column], a, column * numRows + startRow, result, startRow,
+								endRow - startRow);
+					}
+				}
+				return;
+			}
+
+			double scale0 = x[column0];
+			double scale1 = x[column1];
+			double scale2 = x[column2];
+			double scale3 = x[column3];
+			int offset0 = column0 * numRows;
+			int offset1 = column1 * numRows;
+			int offset2 = column2 * numRows;
+			int offset3 = column3 * numRows;
+			int row = startRow;
+			for (; row < bound; row += LANES.length()) {
+				DoubleVector.fromArray(LANES, result, row)
+						.add(DoubleVector.fromArray(LANES, a, offset0 + row).mul(scale0))
+						.add(DoubleVector.fromArray(LANES, a, offset1 + row).mul(scale1))
+						.add(DoubleVector.fromArray(LANES, a, offset2 + row).mul(scale2))
+						.add(DoubleVector.fromArray(LANES, a, offset3 + row).mul(scale3))
+						.intoArray(result, row);
+			}
+			for (; row < endRow; row++) {
+				result[row] = result[row] + scale0 * a[offset0 + row] + scale1 * a[offset1 + row]
+						+ scale2 * a[offset2 + row] + scale3 * a[offset3 + row];
+			}
+			column0 = VectorKernels.nextNonzero(x, column3 + 1, numColumns);
+		}
+	}
+
+	/**
+	 * Four columns at a time, so each vector of r is loaded once for four columns. Every
+	 * column is summed the same way as dot().
+	 */
+	@Override
+	public void gemvTranspose(double[] a, int aOffset, int numRows, int numColumns, double[] r,
+			int rOffset, double[] result, int resultOffset){
+
+		int bound = SUMS.loopBound(numRows);
+		int column = 0;
+		for (; column + 3 < numColumns; column += 4) {
+			int offset0 = aOffset + column * numRows;
+			int offset1 = offset0 + numRows;
+			int offset2 = offset1 + numRows;
+			int offset3 = offset2 + numRows;
+			DoubleVector sums0 = DoubleVector.zero(SUMS);
+			DoubleVector sums1 = sums0;
+			DoubleVector sums2 = sums0;
+			DoubleVector sums3 = sums0;
+			for (int row = 0; row < bound; row += SUMS.length()) {
+				DoubleVector value = DoubleVector.fromArray(SUMS, r, rOffset + row);
+				sums0 = sums0.add(DoubleVector.fromArray(SUMS, a, offset0 + row).mul(value));
+				sums1 = sums1.add(DoubleVector.fromArray(SUMS, a, offset1 + row).mul(value));
+				sums2 = sums2.add(DoubleVector.fromArray(SUMS, a, offset2 + row).mul(value));
+				sums3 = sums3.add(DoubleVector.fromArray(SUMS, a, offset3 + row).mul(value));
+			}
+			int tail = numRows - bound;
+			result[resultOffset + column] = finish(sums0.lane(0), sums0.lane(1), sums0.lane(2),
+					sums0.lane(3), a, offset0 + bound, r, rOffset + bound, tail);
+			result[resultOffset + column + 1] = finish(sums1.lane(0), sums1.lane(1), sums1.lane(2),
+					sums1.lane(3), a, offset1 + bound, r, rOffset + bound, tail);
+			result[resultOffset + column + 2] = finish(sums2.lane(0), sums2.lane(1), sums2.lane(2),
+					sums2.lane(3), a, offset2 + bound, r, rOffset + bound, tail);
+			result[resultOffset + column + 3] = finish(sums3.lane(0), sums3.lane(1), sums3.lane(2),
+					sums3.lane(3), a, offset3 + bound, r, rOffset + bound, tail);
+		}
+		for (; column < numColumns; column++) {
+			result[resultOffset + column] = dot(a, aOffset + column * numRows, r, rOffset, numRows);
+		}
+	}
+
+	/**
+	 * Add the values after the last whole vector to the first lane, then add up the lanes in
+	 * the same order as UNROLLED adds its partial sums. The lanes are taken out by the caller,
+	 * a vector passed to a method the JIT doesn't inline has to be put on the heap.
+	 */
+	private static double finish(double sum0, double sum1, double sum2, double sum3, double[] x,
+			int xOffset, double[] y, int yOffset, int length){
+
+		for (int index = 0; index < length; index++) {
+			sum0 += x[xOffset + index] * y[yOffset + index];
+		}
+		return (sum0 + sum1) + (sum2 + sum3);
+	}
+}